@@ -3,19 +3,18 @@ package com.threethan.launcher.adapter;
 import android.animation.ObjectAnimator;
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
-import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.OvershootInterpolator;
-import android.widget.BaseAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.FrameLayout;
@@ -23,15 +22,25 @@ import android.widget.ImageView;
 import android.widget.Switch;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.threethan.launcher.R;
+import com.threethan.launcher.browser.BrowserService;
+import com.threethan.launcher.browser.OfflineCache;
+import com.threethan.launcher.browser.WebProfile;
 import com.threethan.launcher.helper.App;
 import com.threethan.launcher.helper.Compat;
 import com.threethan.launcher.helper.Dialog;
 import com.threethan.launcher.helper.Icon;
+import com.threethan.launcher.helper.IconLoader;
 import com.threethan.launcher.helper.Launch;
+import com.threethan.launcher.helper.LauncherState;
 import com.threethan.launcher.helper.Platform;
+import com.threethan.launcher.helper.SearchDispatcher;
+import com.threethan.launcher.helper.SearchIndex;
 import com.threethan.launcher.helper.Settings;
 import com.threethan.launcher.launcher.LauncherActivity;
 import com.threethan.launcher.lib.ImageLib;
@@ -39,170 +48,318 @@ import com.threethan.launcher.lib.StringLib;
 import com.threethan.launcher.support.SettingsManager;
 
 import java.io.File;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
     AppsAdapter
 
-    The adapter for app grid views. A separate instance is used for square and banner apps, as well
-    as for each activity.
+    The adapter for the app grid (AppsGridView). One instance is used for each activity, and shows
+    banner apps, then a divider, then square apps.
 
-    Only app views matching the current search term or group filter will be shown.
-    When a view is requested for an app, it gets cached, and will be reused if displayed again.
-    This massively speeds up group-switching and makes search possible without immense lag.
+    Only apps matching the current search term or group filter will be shown. When the shown apps
+    change, DiffUtil works out which items were added, removed or moved, so only those are rebound.
+    Searches use a SearchIndex, built in the background the first time the apps are searched after
+    they change. A SearchDispatcher coalesces quick edits and runs matching (and the diff) on a
+    background thread, so only the final result is applied to the grid.
+    Views are recycled as the grid scrolls, using a pool shared by every activity (held by
+    LauncherService), so memory use depends on the number of visible rows, not installed apps.
 
     This class also handles clicking and long clicking apps, including the app settings dialog.
     It also handles displaying/updating the views of an app (hover interactions, background website)
+    Selection, running websites and the top search result are published through LauncherState,
+    and only the views of affected apps are updated.
  */
-public class AppsAdapter extends BaseAdapter{
+public class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.AppViewHolder> {
+    private static final String TAG = "AppsAdapter";
+    public static final int TYPE_SQUARE = 0;
+    public static final int TYPE_BANNER = 1;
+    public static final int TYPE_DIVIDER = 2;
+    // Rebind payload which only updates selection, running and top search result state
+    private static final Object PAYLOAD_STATE = new Object();
     private static Drawable iconDrawable;
     private static File customIconFile;
     private static String packageName;
     private LauncherActivity launcherActivity;
-    private List<ApplicationInfo> currentAppList;
-    private List<ApplicationInfo> fullAppList;
-    private final boolean isBanner;
+    private List<ApplicationInfo> fullAppListSquare;
+    private List<ApplicationInfo> fullAppListBanner;
+    // Shown apps; banner apps come first
+    private List<ApplicationInfo> currentAppsBanner = new ArrayList<>();
+    private List<ApplicationInfo> currentAppsSquare = new ArrayList<>();
     private boolean getEditMode() {
         return launcherActivity.isEditing();
     }
-    public @Nullable View firstView;
-    private boolean showTextLabels;
-    public AppsAdapter(LauncherActivity activity, boolean names, boolean banner, List<ApplicationInfo> myApps) {
+    private boolean showTextLabelsSquare;
+    private boolean showTextLabelsBanner;
+    private final LauncherState.Listener stateListener = (event, packageNames) -> notifyState(packageNames);
+    // Searches (and building their index) run in order on this thread
+    private static final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    // Index of banner apps, then square apps; null until searched after the app list changes
+    @Nullable
+    private Future<SearchIndex<ApplicationInfo>> searchIndex;
+    private int searchBannerCount;
+    // Only used on the search thread
+    @Nullable
+    private SearchIndex.Result<ApplicationInfo> lastSearch;
+    // The best match of the last search, which may be a banner or square app
+    @Nullable
+    private ApplicationInfo bestSearchMatch;
+    private final SearchDispatcher searchDispatcher = new SearchDispatcher(searchExecutor, this::prepareSearch);
+    @Nullable
+    private Runnable onSearchApplied;
+    public AppsAdapter(LauncherActivity activity, boolean namesSquare, boolean namesBanner,
+                       List<ApplicationInfo> squareApps, List<ApplicationInfo> bannerApps) {
         launcherActivity = activity;
-        showTextLabels = names;
+        showTextLabelsSquare = namesSquare;
+        showTextLabelsBanner = namesBanner;
+        fullAppListSquare = squareApps;
+        fullAppListBanner = bannerApps;
         SettingsManager settingsManager = SettingsManager.getInstance(launcherActivity);
-
-        firstView = null;
-        currentAppList = Collections.synchronizedList(settingsManager
-                .getInstalledApps(activity, settingsManager.getAppGroupsSorted(false), myApps));
-        fullAppList = myApps;
-        isBanner = banner;
+        final List<String> groups = settingsManager.getAppGroupsSorted(false);
+        currentAppsSquare = settingsManager.getInstalledApps(activity, groups, squareApps);
+        currentAppsBanner = settingsManager.getInstalledApps(activity, groups, bannerApps);
     }
-    public void setFullAppList(List<ApplicationInfo> myApps) {
-        fullAppList = myApps;
+    public void setFullAppLists(List<ApplicationInfo> squareApps, List<ApplicationInfo> bannerApps) {
+        fullAppListSquare = squareApps;
+        fullAppListBanner = bannerApps;
+        searchIndex = null;
     }
     public void updateAppList(LauncherActivity activity) {
         launcherActivity = activity;
+        searchIndex = null; // Labels or groups may have changed
+        bestSearchMatch = null;
+        searchDispatcher.cancel();
 
-        firstView = null;
         SettingsManager settingsManager = SettingsManager.getInstance(activity);
-        currentAppList = Collections.synchronizedList(settingsManager
-                .getInstalledApps(activity, settingsManager.getAppGroupsSorted(true), fullAppList));
+        final List<String> groups = settingsManager.getAppGroupsSorted(true);
+        setCurrentApps(settingsManager.getInstalledApps(activity, groups, fullAppListSquare),
+                settingsManager.getInstalledApps(activity, groups, fullAppListBanner));
     }
-    public void setShowNames(boolean names) {
-        showTextLabels = names;
-        clearViewCache();
+    public void setShowNames(boolean namesSquare, boolean namesBanner) {
+        if (namesSquare == showTextLabelsSquare && namesBanner == showTextLabelsBanner) return;
+        showTextLabelsSquare = namesSquare;
+        showTextLabelsBanner = namesBanner;
+        refreshViews();
     }
-    public synchronized void filterBy(String text) {
-        SettingsManager settingsManager = SettingsManager.getInstance(launcherActivity);
-        final List<ApplicationInfo> tempAppList =
-                settingsManager.getInstalledApps(launcherActivity, settingsManager.getAppGroupsSorted(false), fullAppList);
-
-        firstView = null;
-        currentAppList.clear();
-        for (final ApplicationInfo app : tempAppList)
-            if (StringLib.forSort(SettingsManager.getAppLabel(app)).contains(StringLib.forSort(text)))
-                currentAppList.add(app);
-
-        // Add search queries
-        if (!isBanner && !text.isEmpty() && !launcherActivity.isEditing()) {
-
-            final ApplicationInfo googleProxy = new ApplicationInfo();
-            googleProxy.packageName = StringLib.googleSearchForUrl(text);
-            currentAppList.add(googleProxy);
-
-            final ApplicationInfo youTubeProxy = new ApplicationInfo();
-            youTubeProxy.packageName = StringLib.youTubeSearchForUrl(text);
-            currentAppList.add(youTubeProxy);
-
-            final ApplicationInfo apkPureProxy = new ApplicationInfo();
-            apkPureProxy.packageName = StringLib.apkPureSearchForUrl(text);
-            currentAppList.add(apkPureProxy);
-
-            final ApplicationInfo apkMirrorProxy = new ApplicationInfo();
-            apkMirrorProxy.packageName = StringLib.apkMirrorSearchForUrl(text);
-            currentAppList.add(apkMirrorProxy);
+    // Shows only apps matching the text, then runs onApplied. Quick edits are coalesced, and
+    // matching runs in the background.
+    public void filterBy(String text, @Nullable Runnable onApplied) {
+        onSearchApplied = onApplied;
+        searchDispatcher.dispatch(text);
+    }
+    private SearchDispatcher.Matcher prepareSearch(String text, SearchDispatcher.Token token) {
+        if (searchIndex == null) {
+            // Labels are read here, since their cache is only used on the main thread
+            SettingsManager settingsManager = SettingsManager.getInstance(launcherActivity);
+            final List<String> groups = settingsManager.getAppGroupsSorted(false);
+            final List<ApplicationInfo> apps = new ArrayList<>(
+                    settingsManager.getInstalledApps(launcherActivity, groups, fullAppListBanner));
+            searchBannerCount = apps.size();
+            apps.addAll(settingsManager.getInstalledApps(launcherActivity, groups, fullAppListSquare));
+            final List<String> labels = new ArrayList<>(apps.size());
+            final List<String> packageNames = new ArrayList<>(apps.size());
+            for (ApplicationInfo app : apps) {
+                labels.add(SettingsManager.getAppLabel(app));
+                packageNames.add(app.packageName);
+            }
+            searchIndex = searchExecutor.submit(() -> new SearchIndex<>(apps, labels, packageNames));
         }
+        final Future<SearchIndex<ApplicationInfo>> indexFuture = searchIndex;
+        final int bannerCount = searchBannerCount;
+        final boolean addSearchQueries = !text.isEmpty() && !launcherActivity.isEditing();
+        final boolean fuzzy = launcherActivity.sharedPreferences
+                .getBoolean(Settings.KEY_SEARCH_FUZZY, Settings.DEFAULT_SEARCH_FUZZY);
+        final List<ApplicationInfo> oldSquare = currentAppsSquare;
+        final List<ApplicationInfo> oldBanner = currentAppsBanner;
+
+        return () -> {
+            final SearchIndex.Result<ApplicationInfo> result;
+            try {
+                result = indexFuture.get().query(text, lastSearch, fuzzy);
+            } catch (Exception e) {
+                Log.w(TAG, "Search failed", e);
+                return null;
+            }
+            lastSearch = result;
+            if (token.isCancelled()) return null;
+
+            final List<ApplicationInfo> squareApps = new ArrayList<>();
+            final List<ApplicationInfo> bannerApps = new ArrayList<>();
+            for (int i = 0; i < result.size(); i++)
+                (result.entryAt(i) < bannerCount ? bannerApps : squareApps).add(result.get(i));
+
+            // Add search queries
+            if (addSearchQueries) {
+                final ApplicationInfo googleProxy = new ApplicationInfo();
+                googleProxy.packageName = StringLib.googleSearchForUrl(text);
+                squareApps.add(googleProxy);
+
+                final ApplicationInfo youTubeProxy = new ApplicationInfo();
+                youTubeProxy.packageName = StringLib.youTubeSearchForUrl(text);
+                squareApps.add(youTubeProxy);
+
+                final ApplicationInfo apkPureProxy = new ApplicationInfo();
+                apkPureProxy.packageName = StringLib.apkPureSearchForUrl(text);
+                squareApps.add(apkPureProxy);
+
+                final ApplicationInfo apkMirrorProxy = new ApplicationInfo();
+                apkMirrorProxy.packageName = StringLib.apkMirrorSearchForUrl(text);
+                squareApps.add(apkMirrorProxy);
+            }
+            // The diff is worked out here too, against the apps shown when the search started
+            final DiffUtil.DiffResult diff = calculateDiff(oldBanner, oldSquare, bannerApps, squareApps);
+            final ApplicationInfo best = result.size() > 0 ? result.get(0) : null;
+            return () -> {
+                bestSearchMatch = best;
+                if (currentAppsSquare == oldSquare && currentAppsBanner == oldBanner) {
+                    currentAppsSquare = squareApps;
+                    currentAppsBanner = bannerApps;
+                    diff.dispatchUpdatesTo(this);
+                } else setCurrentApps(squareApps, bannerApps);
+                if (onSearchApplied != null) onSearchApplied.run();
+            };
+        };
     }
     public void setLauncherActivity(LauncherActivity val) {
         launcherActivity = val;
     }
 
-    private static class ViewHolder {
+    // Replaces the shown apps, notifying the grid of only what changed
+    private void setCurrentApps(List<ApplicationInfo> squareApps, List<ApplicationInfo> bannerApps) {
+        final DiffUtil.DiffResult diff = calculateDiff(currentAppsBanner, currentAppsSquare, bannerApps, squareApps);
+        currentAppsSquare = squareApps;
+        currentAppsBanner = bannerApps;
+        diff.dispatchUpdatesTo(this);
+    }
+    private static DiffUtil.DiffResult calculateDiff(List<ApplicationInfo> oldBanner, List<ApplicationInfo> oldSquare,
+                                                     List<ApplicationInfo> newBanner, List<ApplicationInfo> newSquare) {
+        final boolean oldDivider = hasDivider(oldBanner, oldSquare);
+        final boolean newDivider = hasDivider(newBanner, newSquare);
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldBanner.size() + (oldDivider ? 1 : 0) + oldSquare.size();
+            }
+            @Override
+            public int getNewListSize() {
+                return newBanner.size() + (newDivider ? 1 : 0) + newSquare.size();
+            }
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                final ApplicationInfo oldApp = itemAt(oldBanner, oldDivider, oldSquare, oldPosition);
+                final ApplicationInfo newApp = itemAt(newBanner, newDivider, newSquare, newPosition);
+                if (oldApp == null || newApp == null) return oldApp == newApp; // Dividers
+                return Objects.equals(oldApp.packageName, newApp.packageName)
+                        && (oldPosition < oldBanner.size()) == (newPosition < newBanner.size());
+            }
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                // Labels and icons are refreshed explicitly when they change
+                return true;
+            }
+        }, true);
+    }
+    private static boolean hasDivider(List<ApplicationInfo> bannerApps, List<ApplicationInfo> squareApps) {
+        return !bannerApps.isEmpty() && !squareApps.isEmpty();
+    }
+    private boolean hasDivider() {
+        return hasDivider(currentAppsBanner, currentAppsSquare);
+    }
+    // Gets the app at a position, or null for the divider
+    @Nullable
+    private static ApplicationInfo itemAt(List<ApplicationInfo> bannerApps, boolean divider,
+                                          List<ApplicationInfo> squareApps, int position) {
+        if (position < bannerApps.size()) return bannerApps.get(position);
+        position -= bannerApps.size();
+        if (divider && position-- == 0) return null;
+        return squareApps.get(position);
+    }
+
+    // Apps which are currently shown, in order
+    public List<ApplicationInfo> getShownApps() {
+        final List<ApplicationInfo> apps = new ArrayList<>(currentAppsBanner);
+        apps.addAll(currentAppsSquare);
+        return apps;
+    }
+    // Gets the best match of the last search, or else the first app shown
+    @Nullable
+    public ApplicationInfo getTopApp() {
+        if (bestSearchMatch != null) return bestSearchMatch;
+        if (!currentAppsBanner.isEmpty()) return currentAppsBanner.get(0);
+        if (!currentAppsSquare.isEmpty()) return currentAppsSquare.get(0);
+        return null;
+    }
+
+    public static class AppViewHolder extends RecyclerView.ViewHolder {
         View view;
         ImageView imageView;
+        // Screenshot shown in place of a website while it's discarded
+        ImageView snapshotView;
         View clip;
-        ImageView imageViewBg;
         TextView textView;
         Button moreButton;
         Button killButton;
         ApplicationInfo app;
+        // Views come from a shared pool, so they may be bound by a different activity's adapter
+        AppsAdapter adapter;
+        // Whether the view is highlighted as the top search result
+        boolean topResult = false;
+        AppViewHolder(View view) {
+            super(view);
+            this.view = view;
+        }
     }
 
     @Override
-    public int getCount() { return currentAppList.size(); }
-
-    @Override
-    public Object getItem(int position) { return currentAppList.get(position); }
-
-    @Override
-    public long getItemId(int position) {
-        return position;
+    public int getItemCount() {
+        return currentAppsBanner.size() + (hasDivider() ? 1 : 0) + currentAppsSquare.size();
     }
-
-    Map<ApplicationInfo, ViewHolder> viewCacheSquare = new ConcurrentHashMap<>();
-    Map<ApplicationInfo, ViewHolder> viewCacheBanner = new ConcurrentHashMap<>();
-    private Map<ApplicationInfo, ViewHolder> getViewCache() {
-        return isBanner ? viewCacheBanner : viewCacheSquare;
+    @Override
+    public int getItemViewType(int position) {
+        if (position < currentAppsBanner.size()) return TYPE_BANNER;
+        if (hasDivider() && position == currentAppsBanner.size()) return TYPE_DIVIDER;
+        return TYPE_SQUARE;
     }
 
-    /** @noinspection deprecation*/
+    @NonNull
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        final ApplicationInfo currentApp = currentAppList.get(position);
-
-        if (getViewCache().containsKey(currentApp)) {
-            ViewHolder holder = getViewCache().get(currentApp);
-            if (holder != null) {
-                if (firstView == null) firstView = holder.view;
-                holder.app = currentApp;
-                return holder.view;
-            }
+    public AppViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewType == TYPE_DIVIDER) {
+            View divider = new View(parent.getContext());
+            divider.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0));
+            return new AppViewHolder(divider);
         }
+        LayoutInflater layoutInflater = LayoutInflater.from(parent.getContext());
+        int layout = viewType == TYPE_BANNER ? R.layout.lv_app_wide : R.layout.lv_app_icon;
+        View view = layoutInflater.inflate(layout, parent, false);
+
+        AppViewHolder holder = new AppViewHolder(view);
+        holder.imageView = view.findViewById(R.id.imageLabel);
+        holder.snapshotView = view.findViewById(R.id.snapshotLabel);
+        holder.clip = view.findViewById(R.id.clip);
+        holder.textView = view.findViewById(R.id.textLabel);
+        holder.moreButton = view.findViewById(R.id.moreButton);
+        holder.killButton = view.findViewById(R.id.killButton);
+
+        // Set clipToOutline to true on imageView
+        holder.clip.setClipToOutline(true);
+        return holder;
+    }
 
-        ViewHolder holder;
-
-        LayoutInflater layoutInflater = (LayoutInflater) launcherActivity.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-
-        if (convertView == null) {
-            // Create a new ViewHolder and inflate the view
-            int layout = App.isBanner(launcherActivity, currentApp) ? R.layout.lv_app_wide : R.layout.lv_app_icon;
-
-            convertView = layoutInflater.inflate(layout, parent, false);
-            if (currentApp.packageName == null) return convertView;
-
-            holder = new ViewHolder();
-            holder.view = convertView;
-            holder.imageView = convertView.findViewById(R.id.imageLabel);
-            holder.clip = convertView.findViewById(R.id.clip);
-            holder.textView = convertView.findViewById(R.id.textLabel);
-            holder.moreButton = convertView.findViewById(R.id.moreButton);
-            holder.killButton = convertView.findViewById(R.id.killButton);
-            holder.app = currentApp;
-
-            // Set clipToOutline to true on imageView
-            convertView.findViewById(R.id.clip).setClipToOutline(true);
-            convertView.setTag(holder);
-            if (position == 0) launcherActivity.updateGridViews();
-
-        } else holder = (ViewHolder) convertView.getTag();
+    @Override
+    public void onBindViewHolder(@NonNull AppViewHolder holder, int position) {
+        if (holder.getItemViewType() == TYPE_DIVIDER) return;
+        final ApplicationInfo currentApp = itemAt(currentAppsBanner, hasDivider(), currentAppsSquare, position);
+        holder.app = currentApp;
+        holder.adapter = this;
 
         // set value into textview
-        if (showTextLabels) {
+        if (holder.getItemViewType() == TYPE_BANNER ? showTextLabelsBanner : showTextLabelsSquare) {
             String name = SettingsManager.getAppLabel(currentApp);
             holder.textView.setVisibility(View.VISIBLE);
             holder.textView.setText(name);
@@ -210,23 +367,72 @@ public class AppsAdapter extends BaseAdapter{
             holder.textView.setShadowLayer(6, 0, 0, Color.parseColor(launcherActivity.darkMode ? "#000000" : "#20FFFFFF"));
         } else holder.textView.setVisibility(View.GONE);
 
-        new LoadIconTask().execute(this, currentApp, launcherActivity, holder.imageView, holder.imageViewBg);
-        holder.view.post(() -> updateView(holder));
+        IconLoader.load(launcherActivity, currentApp, holder.imageView);
+        updateView(holder);
+        updateState(holder, false);
+    }
+    @Override
+    public void onBindViewHolder(@NonNull AppViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || holder.app == null) onBindViewHolder(holder, position);
+        else updateState(holder, true);
+    }
+    @Override
+    public void onViewRecycled(@NonNull AppViewHolder holder) {
+        if (holder.imageView == null) return;
+        IconLoader.cancel(holder.imageView);
+        holder.imageView.setImageDrawable(null);
+        holder.snapshotView.setImageDrawable(null);
+        holder.snapshotView.setVisibility(View.GONE);
+        holder.view.setAlpha(1f);
+        holder.moreButton.setVisibility(View.GONE);
+        if (holder.topResult) {
+            holder.topResult = false;
+            holder.imageView.setScaleX(1.005f);
+            holder.imageView.setScaleY(1.005f);
+            holder.view.setScaleX(1f);
+            holder.view.setScaleY(1f);
+            holder.clip.setElevation(4f);
+        }
+    }
 
-        getViewCache().put(currentApp, holder);
-        return convertView;
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        LauncherState.addListener(stateListener);
     }
-    public void clearViewCache() {
-        getViewCache().clear();
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        LauncherState.removeListener(stateListener);
+    }
+    // Updates the state of the views of the given packages, or of every view if null
+    private void notifyState(@Nullable Set<String> packageNames) {
+        if (packageNames == null) {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_STATE);
+            return;
+        }
+        for (int position = 0; position < getItemCount(); position++) {
+            final ApplicationInfo app = itemAt(currentAppsBanner, hasDivider(), currentAppsSquare, position);
+            if (app != null && packageNames.contains(app.packageName))
+                notifyItemChanged(position, PAYLOAD_STATE);
+        }
     }
 
-    private void updateView(ViewHolder holder) {
+    // Rebinds every view, e.g. after labels or icons changed
+    @SuppressLint("NotifyDataSetChanged")
+    public void refreshViews() {
+        notifyDataSetChanged();
+    }
+    // Rebinds the views of the given packages only
+    public void refreshViews(Set<String> packageNames) {
+        for (int position = 0; position < getItemCount(); position++) {
+            final ApplicationInfo app = itemAt(currentAppsBanner, hasDivider(), currentAppsSquare, position);
+            if (app != null && packageNames.contains(app.packageName)) notifyItemChanged(position);
+        }
+    }
+
+    private void updateView(AppViewHolder holder) {
         holder.view.setOnClickListener(view -> {
             if (getEditMode()) {
-                boolean selected = launcherActivity.selectApp(holder.app.packageName);
-                ObjectAnimator an = ObjectAnimator.ofFloat(holder.view, "alpha", selected ? 0.5F : 1.0F);
-                an.setDuration(150);
-                an.start();
+                launcherActivity.selectApp(holder.app.packageName);
             } else {
                 if (Launch.launchApp(launcherActivity, holder.app)) animateOpen(holder);
 
@@ -247,35 +453,6 @@ public class AppsAdapter extends BaseAdapter{
             return true;
         });
 
-        // A list of selected apps and background-running websites is stored in the launcher activity,
-        // then periodically checked by each app's view here.
-        Runnable periodicUpdate = new Runnable() {
-            @Override
-            public void run() {
-                holder.moreButton.setVisibility(holder.view.isHovered() || holder.moreButton.isHovered() ? View.VISIBLE : View.GONE);
-                boolean selected = launcherActivity.isSelected(holder.app.packageName);
-                if (selected != holder.view.getAlpha() < 0.9) {
-                    ObjectAnimator an = ObjectAnimator.ofFloat(holder.view, "alpha", selected ? 0.5F : 1.0F);
-                    an.setDuration(150);
-                    an.start();
-                }
-                holder.killButton.setVisibility(SettingsManager.getRunning(holder.app.packageName) ? View.VISIBLE : View.GONE);
-                // Top search result
-                if (launcherActivity.currentTopSearchResult != null &&
-                        Objects.equals(
-                            Icon.cacheName(launcherActivity.currentTopSearchResult.packageName),
-                            Icon.cacheName(holder.app.packageName))) {
-                        updateHover(holder, true);
-                } else if (launcherActivity.clearFocusPackageNames.contains(Icon.cacheName(holder.app.packageName))) {
-                    updateHover(holder, false);
-                    launcherActivity.clearFocusPackageNames.remove(Icon.cacheName(holder.app.packageName));
-                }
-                // Post self again
-                holder.view.postDelayed(this, 250);
-            }
-        };
-        periodicUpdate.run();
-
         View.OnHoverListener hoverListener = (view, event) -> {
             boolean hovered;
             if (event.getAction() == MotionEvent.ACTION_HOVER_ENTER) hovered = true;
@@ -285,6 +462,7 @@ public class AppsAdapter extends BaseAdapter{
 
                 hovered = false;
             } else return false;
+            holder.moreButton.setVisibility(hovered ? View.VISIBLE : View.GONE);
             updateHover(holder, hovered);
             return false;
         };
@@ -301,8 +479,36 @@ public class AppsAdapter extends BaseAdapter{
             SettingsManager.stopRunning(holder.app.packageName);
             view.setVisibility(View.GONE);
         });
+        // Long press to free the site's memory, without closing it
+        holder.killButton.setOnLongClickListener(view -> {
+            SettingsManager.discardRunning(holder.app.packageName);
+            return true;
+        });
+    }
+    // Shows whether the app is selected, running or discarded (websites only) or the top search result
+    private void updateState(AppViewHolder holder, boolean animate) {
+        final boolean selected = launcherActivity.isSelected(holder.app.packageName);
+        final float alpha = selected ? 0.5F : 1.0F;
+        if (!animate) holder.view.setAlpha(alpha);
+        else if (selected != holder.view.getAlpha() < 0.9) {
+            ObjectAnimator an = ObjectAnimator.ofFloat(holder.view, "alpha", alpha);
+            an.setDuration(150);
+            an.start();
+        }
+        holder.killButton.setVisibility(SettingsManager.getRunning(holder.app.packageName) ? View.VISIBLE : View.GONE);
+        final Bitmap snapshot = BrowserService.getDiscardedThumbnail(holder.app.packageName);
+        holder.snapshotView.setImageBitmap(snapshot);
+        holder.snapshotView.setVisibility(snapshot == null ? View.GONE : View.VISIBLE);
+
+        final ApplicationInfo topResult = launcherActivity.currentTopSearchResult;
+        final boolean isTopResult = topResult != null
+                && Objects.equals(topResult.packageName, holder.app.packageName);
+        if (isTopResult != holder.topResult) {
+            holder.topResult = isTopResult;
+            updateHover(holder, isTopResult);
+        }
     }
-    public void updateHover(ViewHolder holder, boolean hovered) {
+    public void updateHover(AppViewHolder holder, boolean hovered) {
         holder.killButton.setBackgroundResource(hovered ? R.drawable.ic_circ_running_kb : R.drawable.ic_running_ns);
 
         final float newScaleInner = hovered ? 1.055f : 1.005f;
@@ -384,6 +590,12 @@ public class AppsAdapter extends BaseAdapter{
         // Launch Browser Selection
         final View launchBrowserSpinner = dialog.findViewById(R.id.launchBrowserSpinner);
         final TextView launchBrowserSpinnerText = dialog.findViewById(R.id.launchBrowserSpinnerText);
+        // Website Profile Selection
+        final View webProfileSpinner = dialog.findViewById(R.id.webProfileSpinner);
+        final TextView webProfileSpinnerText = dialog.findViewById(R.id.webProfileSpinnerText);
+        // Website Offline Toggle
+        final View webOfflineSpinner = dialog.findViewById(R.id.webOfflineSpinner);
+        final TextView webOfflineSpinnerText = dialog.findViewById(R.id.webOfflineSpinnerText);
 
         // Load Icon
         PackageManager packageManager = launcherActivity.getPackageManager();
@@ -444,6 +656,32 @@ public class AppsAdapter extends BaseAdapter{
                 }
             });
 
+            // Website performance profile, used the next time the site is opened
+            if (appType == App.Type.TYPE_WEB) {
+                webProfileSpinner.setVisibility(View.VISIBLE);
+                final String webProfileKey = Settings.KEY_WEB_PROFILE + currentApp.packageName;
+                final WebProfile[] profiles = WebProfile.values();
+                final int[] webProfileSelection = {WebProfile.forSite(launcherActivity.sharedPreferences,
+                        currentApp.packageName).ordinal()};
+
+                webProfileSpinnerText.setText(profiles[webProfileSelection[0]].labelRes);
+                webProfileSpinner.setOnClickListener((view) -> {
+                    webProfileSelection[0] = (webProfileSelection[0] + 1) % profiles.length;
+                    webProfileSpinnerText.setText(profiles[webProfileSelection[0]].labelRes);
+                    launcherActivity.sharedPreferenceEditor.putInt(webProfileKey, webProfileSelection[0]).apply();
+                });
+
+                // Keep the site's start page for when there's no network
+                webOfflineSpinner.setVisibility(View.VISIBLE);
+                final boolean[] webOffline = {OfflineCache.isEnabled(launcherActivity.sharedPreferences,
+                        currentApp.packageName)};
+                webOfflineSpinnerText.setText(webOffline[0] ? R.string.web_offline_on : R.string.web_offline_off);
+                webOfflineSpinner.setOnClickListener((view) -> {
+                    webOffline[0] = !webOffline[0];
+                    webOfflineSpinnerText.setText(webOffline[0] ? R.string.web_offline_on : R.string.web_offline_off);
+                    OfflineCache.setEnabled(launcherActivity, currentApp.packageName, webOffline[0]);
+                });
+            }
             // Browser settings
             if (appType == App.Type.TYPE_WEB && Platform.isQuest(launcherActivity)) {
                 launchBrowserSpinner.setVisibility(View.VISIBLE);
@@ -536,7 +774,7 @@ public class AppsAdapter extends BaseAdapter{
         // Save Label & Reload on Confirm
         dialog.findViewById(R.id.confirm).setOnClickListener(view -> {
             SettingsManager.setAppLabel(currentApp, StringLib.setStarred(appNameEditText.getText().toString(), isStarred[0]));
-            clearViewCache();
+            refreshViews();
             launcherActivity.refreshInterfaceAll();
             dialog.dismiss();
         });
@@ -545,7 +783,7 @@ public class AppsAdapter extends BaseAdapter{
 
     // Animation
 
-    private void animateOpen(ViewHolder holder) {
+    private void animateOpen(AppViewHolder holder) {
 
         int[] l = new int[2];
         View clip = holder.view.findViewById(R.id.clip);
@@ -256,10 +256,7 @@ public class GroupsAdapter extends BaseAdapter {
     }
 
     public void setGroup(String packageName, String groupName) {
-        Map<String, String> appGroupMap = SettingsManager.getAppGroupMap();
-        appGroupMap.remove(packageName);
-        appGroupMap.put(packageName, groupName);
-        SettingsManager.setAppGroupMap(appGroupMap);
+        settingsManager.setAppGroup(packageName, groupName);
     }
 
     private void setLook(int position, View itemView, View menu) {
@@ -24,6 +24,8 @@ import com.threethan.launcher.helper.Platform;
 import com.threethan.launcher.helper.Settings;
 import com.threethan.launcher.lib.StringLib;
 
+import org.mozilla.geckoview.GeckoSession;
+
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -45,6 +47,7 @@ public class BrowserActivity extends Activity {
     TextView urlMid;
     TextView urlEnd;
     String baseUrl = null;
+    private WebProfile webProfile;
     View back;
     View forward;
     View background;
@@ -74,6 +77,8 @@ public class BrowserActivity extends Activity {
         Bundle extras = getIntent().getExtras();
         assert extras != null;
         baseUrl = Objects.requireNonNull(extras.getString("url"));
+        webProfile = WebProfile.forSite(sharedPreferences, baseUrl);
+        WebPrewarm.noteOpened(baseUrl);
 
         // Buttons
         back = findViewById(R.id.back);
@@ -181,6 +186,15 @@ public class BrowserActivity extends Activity {
     public void stopLoading() {
         loading.setVisibility(View.GONE);
     }
+    public WebProfile getWebProfile() {
+        return webProfile;
+    }
+    public void onSessionStateChange(GeckoSession.SessionState state) {
+        SessionSnapshots.save(baseUrl, state);
+    }
+    public void onFirstPaint(boolean composite) {
+        WebPrewarm.noteFirstPaint(baseUrl, composite);
+    }
 
     public void showTopBar() {
         findViewById(R.id.topBar).setVisibility(View.VISIBLE);
@@ -234,6 +248,23 @@ public class BrowserActivity extends Activity {
         super.onStart();
         // Bind to BrowserService, which will provide our WebView
         BrowserService.bind(this, connection, true);
+        if (ownsWebView()) SessionLifecycle.onShown(baseUrl);
+    }
+    @Override
+    protected void onPause() {
+        // Last chance to capture the site while its surface still exists
+        if (ownsWebView()) w.captureThumbnail();
+        super.onPause();
+    }
+    @Override
+    protected void onStop() {
+        if (ownsWebView()) SessionLifecycle.onHidden(baseUrl);
+        SessionSnapshots.flush();
+        super.onStop();
+    }
+    // The WebView moves to a newer activity if the same site is opened again
+    private boolean ownsWebView() {
+        return w != null && w.getParent() == findViewById(R.id.container);
     }
     // Defines callbacks for service binding
     private final ServiceConnection connection = new ServiceConnection() {
@@ -290,14 +321,25 @@ public class BrowserActivity extends Activity {
         updateButtonsAndUrl(url);
     }
 
-    // Sets the WebView when the service is bound
+    // Sets the WebView when the service is bound and the runtime is ready
     private void onBound() {
+        if (BrowserService.getRuntime() == null) startLoading();
+        BrowserService.startRuntime(this).accept(runtime -> {
+            if (isDestroyed() || wService == null || w != null) return;
+            attachWebView();
+        }, e -> {
+            Log.e("LightningLauncher", "Browser runtime failed to start", e);
+            stopLoading();
+        });
+    }
+    private void attachWebView() {
         w = wService.getWebView(this);
         CursorLayout container = findViewById(R.id.container);
         container.addView(w);
         container.targetView = w;
 
         updateButtonsAndUrl();
+        SessionLifecycle.onShown(baseUrl);
     }
 
     @Override
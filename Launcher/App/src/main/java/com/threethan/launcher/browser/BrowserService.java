@@ -3,21 +3,24 @@ package com.threethan.launcher.browser;
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.app.AlertDialog;
-import android.app.DownloadManager;
 import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.ActivityNotFoundException;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.os.Environment;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -32,17 +35,23 @@ import com.threethan.launcher.R;
 import com.threethan.launcher.browser.GeckoView.BrowserWebView;
 import com.threethan.launcher.browser.GeckoView.Delegate.ExtensionPromptDelegate;
 import com.threethan.launcher.helper.Dialog;
+import com.threethan.launcher.helper.LauncherState;
 import com.threethan.launcher.launcher.LauncherActivity;
 import com.threethan.launcher.lib.FileLib;
-import com.threethan.launcher.support.Updater;
 
+import org.mozilla.geckoview.GeckoResult;
 import org.mozilla.geckoview.GeckoRuntime;
 import org.mozilla.geckoview.GeckoRuntimeSettings;
+import org.mozilla.geckoview.GeckoSession;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /*
     BrowserService
@@ -58,19 +67,32 @@ import java.util.concurrent.ConcurrentHashMap;
     This lets websites play audio/record in the background through this app.
     com.oculus.permission.PLAY_AUDIO_BACKGROUND & com.oculus.permission.RECORD_AUDIO_BACKGROUND
     let the app itself play audio in the background on oculus devices without system tweaks.
+
+    The GeckoRuntime is brought up as soon as the service is created, a stage at a time on the
+    main thread, and browser activities wait for it to be ready before asking for a WebView.
  */
 public class BrowserService extends Service {
+    private static final String TAG = "BrowserService";
+    private static final String TRACE_ENSURE_BUILT_IN = "WebExtensionController.ensureBuiltIn";
     private final IBinder binder = new LocalBinder();
     private final static Map<String, BrowserWebView> webViewByBaseUrl = new ConcurrentHashMap<>();
     private final static Map<String, Activity> activityByBaseUrl = new ConcurrentHashMap<>();
 
     // Arbitrary ID for the persistent notification
     private final static int NOTIFICATION_ID = 42;
+    private final static int COST_REFRESH_MS = 30000;
+    private static final ExecutorService costExecutor = Executors.newSingleThreadExecutor();
+    private volatile List<String> costLines = Collections.emptyList();
+    private final Runnable refreshCosts = this::refreshCosts;
     private static final ExtensionPromptDelegate extensionPromptDelegate = new ExtensionPromptDelegate();
 
     @Override
     public void onCreate() {
         super.onCreate();
+        SessionSnapshots.init(this);
+        OfflineCache.init(this);
+        WebDownloads.init(this, this::onDownloaded);
+        startRuntime(this);
     }
 
     public class LocalBinder extends Binder {
@@ -79,6 +101,9 @@ public class BrowserService extends Service {
         }
     }
     public static GeckoRuntime sRuntime;
+    @Nullable
+    private static GeckoResult<GeckoRuntime> runtimeReady;
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
     public static GeckoRuntime getRuntime() {
         return sRuntime;
     }
@@ -112,105 +137,180 @@ public class BrowserService extends Service {
             }
             webView.updateActivity(activity);
         } else {
-            if (BrowserService.sRuntime == null) {
-                initRuntime();
-            }
+            WebPrewarm.noteStarting(url);
 
-            webView = new BrowserWebView(activity, activity);
+            // Adopt the pre-warmed session if it was for this site, rather than loading again
+            final boolean prewarmedLoaded = WebPrewarm.isSessionLoaded(url);
+            final GeckoSession prewarmed = WebPrewarm.takeSession(url);
+            webView = new BrowserWebView(activity, activity, prewarmed);
             webView.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
 
             webViewByBaseUrl.put(url, webView);
             activityByBaseUrl.put(url, activity);
-
-            activity.findViewById(R.id.loading).setVisibility(View.VISIBLE);
-            webView.loadUrl(url);
+            SessionLifecycle.add(url, webView);
+
+            if (!prewarmedLoaded) activity.findViewById(R.id.loading).setVisibility(View.VISIBLE);
+            if (prewarmed == null) {
+                // Pick up where the site left off, if it was running before the process died
+                final BrowserWebView newWebView = webView;
+                if (OfflineCache.isEnabled(activity.sharedPreferences, url)) {
+                    // Show the saved page first, if the site is kept offline. Online, the site then
+                    // loads over it; offline, it's shown rather than an error.
+                    final boolean online = OfflineCache.isOnline(this);
+                    OfflineCache.load(url, shell -> {
+                        if (shell == null) restoreOrLoad(newWebView, url);
+                        else if (online) newWebView.loadShellThenUrl(shell, url);
+                        else newWebView.loadShell(shell);
+                    });
+                } else restoreOrLoad(newWebView, url);
+            }
+            LauncherState.publish(LauncherState.Event.RUNNING, url);
         }
         updateStatus();
 
         return webView;
     }
 
-    private void initRuntime() {
+    private static void restoreOrLoad(BrowserWebView webView, String url) {
+        SessionSnapshots.load(url, state -> {
+            if (state != null) webView.restoreState(state);
+            else webView.loadUrl(url);
+        });
+    }
+
+    // Starts bringing up the runtime, in stages, without blocking the caller.
+    // The result completes on the main thread once sessions can be opened.
+    public static synchronized GeckoResult<GeckoRuntime> startRuntime(Context context) {
+        if (runtimeReady != null) return runtimeReady;
+        final Context appContext = context.getApplicationContext();
+        final GeckoResult<GeckoRuntime> ready = new GeckoResult<>(mainHandler);
+        runtimeReady = ready;
+        // Let the caller finish (and draw its first frame) before the runtime is created
+        mainHandler.post(() -> {
+            try {
+                createRuntime(appContext);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to create runtime", e);
+                synchronized (BrowserService.class) {
+                    runtimeReady = null;
+                }
+                ready.completeExceptionally(e);
+                return;
+            }
+            ready.complete(sRuntime);
+            // Sites can open without the extension, so it's installed afterwards
+            mainHandler.post(BrowserService::installExtensions);
+        });
+        return ready;
+    }
+    private static void createRuntime(Context context) {
         // GeckoRuntime can only be initialized once per process
-        GeckoRuntimeSettings.Builder set = new GeckoRuntimeSettings.Builder()
-                .preferredColorScheme(GeckoRuntimeSettings.COLOR_SCHEME_DARK)
-                .consoleOutput(false)
-                .loginAutofillEnabled(true)
-                .extensionsProcessEnabled(true)
-                .extensionsWebAPIEnabled(true)
-                .aboutConfigEnabled(true);
-        BrowserService.sRuntime = GeckoRuntime.create(this, set.build());
+        final long start = SystemClock.uptimeMillis();
+        Trace.beginSection("GeckoRuntime.create");
+        try {
+            GeckoRuntimeSettings.Builder set = new GeckoRuntimeSettings.Builder()
+                    .preferredColorScheme(GeckoRuntimeSettings.COLOR_SCHEME_DARK)
+                    .consoleOutput(false)
+                    .loginAutofillEnabled(true)
+                    .extensionsProcessEnabled(true)
+                    .extensionsWebAPIEnabled(true)
+                    .aboutConfigEnabled(true);
+            BrowserService.sRuntime = GeckoRuntime.create(context, set.build());
+        } finally {
+            Trace.endSection();
+        }
+        Log.v(TAG, "Created runtime in " + (SystemClock.uptimeMillis() - start) + "ms");
+    }
+    private static void installExtensions() {
+        final long start = SystemClock.uptimeMillis();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.beginAsyncSection(TRACE_ENSURE_BUILT_IN, 0);
         // Custom Fixes
         sRuntime.getWebExtensionController()
                 .ensureBuiltIn(EXTENSION_LOCATION, EXTENSION_ID)
                 .accept(
-                        extension -> Log.i("MessageDelegate", "Extension installed: " + extension),
-                        e -> Log.e("MessageDelegate", "Error registering WebExtension", e)
+                        extension -> {
+                            endExtensionTrace(start);
+                            Log.i("MessageDelegate", "Extension installed: " + extension);
+                        },
+                        e -> {
+                            endExtensionTrace(start);
+                            Log.e("MessageDelegate", "Error registering WebExtension", e);
+                        }
                 );
         // Install Prompts
         sRuntime.getWebExtensionController().setPromptDelegate(extensionPromptDelegate);
     }
+    private static void endExtensionTrace(long start) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q)
+            Trace.endAsyncSection(TRACE_ENSURE_BUILT_IN, 0);
+        Log.v(TAG, "Installed built-in extension in " + (SystemClock.uptimeMillis() - start) + "ms");
+    }
     // Downloads
-    public static Map<Long, String> downloadFilenameById = new ConcurrentHashMap<>();
-    public static Map<Long, Activity> downloadActivityById = new ConcurrentHashMap<>();
-    public BroadcastReceiver onDownloadComplete=new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            Long id = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, 0);
-            String filename = downloadFilenameById.get(id);
-            downloadFilenameById.remove(id);
-
-            if (filename == null) return;
-
-            if (filename.endsWith(".apk")) {
-                final File path = getApplicationContext().getExternalFilesDir(Updater.APK_DIR);
-                final File file = new File(path, filename);
-
-                if (Dialog.getActivityContext() == null) {
-                    // If we can't show an alert, copy AND prompt install
-                    copyToDownloads(file);
-                    promptInstallApk(file);
-                }
-                AlertDialog dialog = Dialog.build(Dialog.getActivityContext(), R.layout.dialog_downloaded_apk);
-                if (dialog == null) return;
-                dialog.findViewById(R.id.install).setOnClickListener(v -> {
-                    promptInstallApk(file);
-                    dialog.dismiss();
-                });
-                dialog.findViewById(R.id.save).setOnClickListener(v -> {
-                    copyToDownloads(file);
-                    dialog.dismiss();
-                });
-                dialog.findViewById(R.id.delete).setOnClickListener(v -> {
-                    final boolean ignored = file.delete();
-                    dialog.dismiss();
-                });
-                ((TextView) dialog.findViewById(R.id.downloadMessage)).setText(getString(R.string.web_apk_prompt_message_pre, filename));
+    private void onDownloaded(File file, String sha256) {
+        final String filename = file.getName();
+        if (filename.endsWith(".apk")) {
+            // A truncated or corrupt apk would only fail later, in the installer
+            if (getPackageManager().getPackageArchiveInfo(file.getPath(), 0) == null) {
+                Log.w(TAG, "Downloaded apk is invalid: " + filename);
+                Dialog.toast(getString(R.string.web_download_invalid_apk), filename, true);
+                final boolean ignored = file.delete();
+                return;
+            }
+            if (Dialog.getActivityContext() == null) {
+                // If we can't show an alert, copy AND prompt install
+                copyToDownloads(file);
+                promptInstallApk(file);
+                return;
+            }
+            AlertDialog dialog = Dialog.build(Dialog.getActivityContext(), R.layout.dialog_downloaded_apk);
+            if (dialog == null) return;
+            dialog.findViewById(R.id.install).setOnClickListener(v -> {
+                promptInstallApk(file);
+                dialog.dismiss();
+            });
+            dialog.findViewById(R.id.save).setOnClickListener(v -> {
+                copyToDownloads(file);
+                dialog.dismiss();
+            });
+            dialog.findViewById(R.id.delete).setOnClickListener(v -> {
+                final boolean ignored = file.delete();
+                dialog.dismiss();
+            });
+            ((TextView) dialog.findViewById(R.id.downloadMessage)).setText(getString(R.string.web_apk_prompt_message_sha, filename, sha256));
+        } else {
+            // Downloads are made privately, so they can be resumed, then moved to the downloads folder.
+            // If that can't be written, the private copy is kept and opened instead.
+            final File savedFile;
+            if (copyToDownloads(file)) {
+                final boolean deleted = file.delete();
+                savedFile = WebDownloads.getPublicFile(filename);
             } else {
-                final File path = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-                final File file = new File(path, filename);
+                Log.w(TAG, "Couldn't copy " + filename + " to downloads, keeping it at " + file);
+                savedFile = file;
+            }
 
-                // provider is already included in the imagepicker lib
-                Uri fileURI = FileProvider.getUriForFile(getBaseContext(), getApplicationContext().getPackageName() + ".imagepicker.provider", file);
+            // provider is already included in the imagepicker lib
+            Uri fileURI = FileProvider.getUriForFile(getBaseContext(), getApplicationContext().getPackageName() + ".imagepicker.provider", savedFile);
 
-                Intent openIntent = new Intent(Intent.ACTION_VIEW);
-                openIntent.setDataAndType(fileURI, getContentResolver().getType(fileURI));
-                openIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                openIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            Intent openIntent = new Intent(Intent.ACTION_VIEW);
+            openIntent.setDataAndType(fileURI, getContentResolver().getType(fileURI));
+            openIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            openIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
-                try {
-                    startActivity(openIntent);
-                } catch (ActivityNotFoundException ignored) {
-                    Dialog.toast(getString(R.string.web_download_finished), filename, true);
-                }
+            try {
+                startActivity(openIntent);
+            } catch (ActivityNotFoundException ignored) {
+                Dialog.toast(getString(R.string.web_download_finished), filename, true);
             }
         }
-    };
-    private void copyToDownloads(File file) {
-        // Copy to downloads
-        // Original file will be deleted next time the updater is called
-        File dlPath = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-        File dlFile = new File(dlPath, file.getName());
+    }
+    // Copies to downloads, returning false unless the copy is complete
+    // Original file will be deleted the next time the launcher resumes (see WebDownloads.deleteStale)
+    private boolean copyToDownloads(File file) {
+        File dlFile = WebDownloads.getPublicFile(file.getName());
         FileLib.copy(file, dlFile);
+        return dlFile.exists() && dlFile.length() == file.length();
     }
     private void promptInstallApk(File file) {
         if(!file.exists()) return;
@@ -227,15 +327,31 @@ public class BrowserService extends Service {
         startActivity(openIntent);
     }
     @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        SessionLifecycle.trimMemory(level);
+        refreshCosts();
+    }
+    @Override
     public void onDestroy() {
-        try {
-            unregisterReceiver(onDownloadComplete);
-        } catch (Exception ignored) {}
+        mainHandler.removeCallbacks(refreshCosts);
+        WebDownloads.setCallback(null);
         super.onDestroy();
     }
     public void removeActivity(BrowserActivity activity) {
         activityByBaseUrl.remove(activity.baseUrl);
     }
+    // Frees a background website's session, keeping a screenshot to show in its place
+    public void discardWebView(String url) {
+        SessionLifecycle.discard(url);
+        refreshCosts();
+    }
+    // Gets the screenshot of a discarded website, if any
+    @Nullable
+    public static Bitmap getDiscardedThumbnail(String url) {
+        final BrowserWebView webView = webViewByBaseUrl.get(url);
+        return webView != null && webView.isDiscarded() ? webView.getThumbnail() : null;
+    }
     public boolean hasWebView(String url) {
         return webViewByBaseUrl.containsKey(url);
     }
@@ -245,12 +361,15 @@ public class BrowserService extends Service {
         if (webView == null) return;
         webView.kill();
         webViewByBaseUrl.remove(url);
+        SessionLifecycle.remove(url);
+        SessionSnapshots.delete(url);
         if (activityByBaseUrl.get(url) != null) {
             Objects.requireNonNull(activityByBaseUrl.get(url)).finish();
             activityByBaseUrl.remove(url);
         }
         System.gc();
         updateStatus();
+        LauncherState.publish(LauncherState.Event.RUNNING, url);
     }
     public void killActivities() {
         for (String key : activityByBaseUrl.keySet()) {
@@ -296,6 +415,22 @@ public class BrowserService extends Service {
         notificationManager.notify(NOTIFICATION_ID, getNotification());
 
         if (webViewByBaseUrl.size() < 1) stopSelf();
+        else refreshCosts();
+    }
+    // Measures usage in the background, then shows it in the notification, and repeats while
+    // any websites are running
+    private void refreshCosts() {
+        mainHandler.removeCallbacks(refreshCosts);
+        if (webViewByBaseUrl.isEmpty()) return;
+        final Map<String, SessionLifecycle.State> stateByUrl = SessionLifecycle.getStates();
+        costExecutor.execute(() -> {
+            final List<String> lines = SessionCost.describe(this, stateByUrl);
+            if (webViewByBaseUrl.isEmpty()) return;
+            costLines = lines;
+            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.notify(NOTIFICATION_ID, getNotification());
+        });
+        mainHandler.postDelayed(refreshCosts, COST_REFRESH_MS);
     }
 
     private Notification getNotification() {
@@ -303,13 +438,18 @@ public class BrowserService extends Service {
         PendingIntent pendingIntent =
                 PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_MUTABLE);
         final int n = webViewByBaseUrl.size();
-        return new Notification.Builder(this)
+        final Notification.Builder builder = new Notification.Builder(this)
                 .setContentTitle( n == 0 ? getString(R.string.notification_title_n) :
                         (n == 1 ? getString(R.string.notification_title_s) :
                         getString(R.string.notification_title_p, n) ))
                 .setContentText(getText(R.string.notification_content))
                 .setSmallIcon(R.drawable.ic_shortcut)
                 .setContentIntent(pendingIntent)
-                .build();
+                .setOnlyAlertOnce(true);
+        // Estimated usage of each website, when expanded
+        final List<String> lines = costLines;
+        if (n > 0 && !lines.isEmpty())
+            builder.setStyle(new Notification.BigTextStyle().bigText(TextUtils.join("\n", lines)));
+        return builder.build();
     }
 }
\ No newline at end of file
@@ -2,11 +2,19 @@ package com.threethan.launcher.browser.GeckoView;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
 
 import com.threethan.launcher.browser.BrowserActivity;
 import com.threethan.launcher.browser.BrowserService;
+import com.threethan.launcher.browser.OfflineShell;
+import com.threethan.launcher.browser.WebProfile;
 import com.threethan.launcher.browser.GeckoView.Delegate.CustomContentDelegate;
 import com.threethan.launcher.browser.GeckoView.Delegate.CustomHistoryDelgate;
+import com.threethan.launcher.browser.GeckoView.Delegate.CustomMediaDelegate;
 import com.threethan.launcher.browser.GeckoView.Delegate.CustomNavigationDelegate;
 import com.threethan.launcher.browser.GeckoView.Delegate.CustomPermissionDelegate;
 import com.threethan.launcher.browser.GeckoView.Delegate.CustomProgressDelegate;
@@ -22,9 +30,12 @@ import java.util.Objects;
     BrowserWebView
 
     A customized version of GeckoView which keeps media playing in the background.
+    While in the background, its session may be suspended or discarded (see SessionLifecycle).
  */
 @SuppressLint("ViewConstructor")
 public class BrowserWebView extends GeckoView {
+    private static final String TAG = "BrowserWebView";
+    private static final int THUMBNAIL_WIDTH = 320;
     // Delegates
     private final CustomNavigationDelegate navigationDelegate;
     private final CustomHistoryDelgate historyDelegate;
@@ -32,6 +43,17 @@ public class BrowserWebView extends GeckoView {
     private final CustomPromptDelegate promptDelegate;
     private final CustomContentDelegate contentDelegate;
     private final CustomPermissionDelegate permissionDelegate;
+    private final CustomMediaDelegate mediaDelegate;
+    private final WebProfile profile;
+
+    private boolean suspended = false;
+    private boolean discarded = false;
+    @Nullable
+    private Bitmap thumbnail;
+    @Nullable
+    private GeckoSession.SessionState discardedState;
+    @Nullable
+    private String discardedUrl;
 
     // Functions
     public void goBack() {
@@ -64,30 +86,63 @@ public class BrowserWebView extends GeckoView {
 
     public void loadUrl(String url) {
         if (getSession() == null) return;
-        getSession().load(new GeckoSession.Loader().uri(url).flags(GeckoSession.LOAD_FLAGS_BYPASS_CACHE | GeckoSession.LOAD_FLAGS_FORCE_ALLOW_DATA_URI | GeckoSession.LOAD_FLAGS_BYPASS_CACHE | GeckoSession.LOAD_FLAGS_ALLOW_POPUPS));
+        load(getSession(), url, profile);
+    }
+    // Loads a page saved for offline use, in place of the site itself
+    public void loadShell(OfflineShell shell) {
+        if (getSession() == null) return;
+        getSession().load(new GeckoSession.Loader().data(shell.toDocument(), shell.getMimeType())
+                .flags(GeckoSession.LOAD_FLAGS_FORCE_ALLOW_DATA_URI));
+    }
+    // Shows a page saved for offline use straight away, then loads the site in its place.
+    // The saved page stays on screen until the site paints, and isn't kept in history.
+    public void loadShellThenUrl(OfflineShell shell, String url) {
+        if (getSession() == null) return;
+        progressDelegate.afterNextPageStop = () -> {
+            if (getSession() == null) return;
+            getSession().load(new GeckoSession.Loader().uri(url)
+                    .flags(profile.getLoadFlags() | GeckoSession.LOAD_FLAGS_REPLACE_HISTORY));
+        };
+        loadShell(shell);
+    }
+    public void restoreState(GeckoSession.SessionState state) {
+        if (getSession() == null) return;
+        getSession().restoreState(state);
     }
     public void reload() {
         if (getSession() == null) return;
         getSession().reload();
     }
     public void kill() {
-        Objects.requireNonNull(getSession()).close();
-        releaseSession();
+        final GeckoSession session = releaseSession();
+        if (session != null) session.close();
     }
 
     // Startups
 
-    public BrowserWebView(Context context, BrowserActivity mActivity) {
-        super(context);
-
+    // Opens a session with the settings for the site's profile
+    public static GeckoSession openSession(WebProfile profile) {
         GeckoSession session = new GeckoSession();
-        session.open(BrowserService.getRuntime());
+        Trace.beginSection("GeckoSession.open");
+        try {
+            session.open(BrowserService.getRuntime());
+        } finally {
+            Trace.endSection();
+        }
 
         GeckoSessionSettings sessionSettings = session.getSettings();
-        sessionSettings.setUserAgentMode(GeckoSessionSettings.USER_AGENT_MODE_DESKTOP);
         sessionSettings.setUseTrackingProtection(true);
+        profile.applyTo(sessionSettings);
+        return session;
+    }
+    public static void load(GeckoSession session, String url, WebProfile profile) {
+        session.load(new GeckoSession.Loader().uri(url).flags(profile.getLoadFlags()));
+    }
 
-        session.setPriorityHint(GeckoSession.PRIORITY_HIGH);
+    // Uses the given session if not null, which may already be open and loading (see WebPrewarm)
+    public BrowserWebView(Context context, BrowserActivity mActivity, @Nullable GeckoSession session) {
+        super(context);
+        profile = mActivity.getWebProfile();
 
         navigationDelegate = new CustomNavigationDelegate(mActivity);
         historyDelegate = new CustomHistoryDelgate(mActivity);
@@ -95,6 +150,13 @@ public class BrowserWebView extends GeckoView {
         promptDelegate = new CustomPromptDelegate(mActivity);
         contentDelegate = new CustomContentDelegate(mActivity);
         permissionDelegate = new CustomPermissionDelegate(mActivity);
+        mediaDelegate = new CustomMediaDelegate();
+        permissionDelegate.allowAutoplay = profile.autoplay;
+
+        useSession(session == null ? openSession(profile) : session);
+    }
+    private void useSession(GeckoSession session) {
+        session.setPriorityHint(GeckoSession.PRIORITY_HIGH);
 
         session.setNavigationDelegate(navigationDelegate);
         session.setHistoryDelegate(historyDelegate);
@@ -102,12 +164,77 @@ public class BrowserWebView extends GeckoView {
         session.setProgressDelegate(progressDelegate);
         session.setContentDelegate(contentDelegate);
         session.setPromptDelegate(promptDelegate);
+        session.setMediaDelegate(mediaDelegate);
+        session.setMediaSessionDelegate(mediaDelegate);
 
         setSession(session);
         Objects.requireNonNull(mSession).getCompositorController().setClearColor(0xFF2A2A2E);
         coverUntilFirstPaint(0xFF2A2A2E);
     }
-    
+
+    // Lifecycle (see SessionLifecycle)
+    public void setForeground(boolean foreground) {
+        if (getSession() == null) return;
+        getSession().setPriorityHint(foreground ? GeckoSession.PRIORITY_HIGH : GeckoSession.PRIORITY_DEFAULT);
+        if (foreground) {
+            getSession().setActive(true);
+            suspended = false;
+        }
+    }
+    public void setSuspended(boolean suspended) {
+        if (getSession() == null) return;
+        getSession().setActive(!suspended);
+        this.suspended = suspended;
+    }
+    public boolean isSuspended() {
+        return suspended;
+    }
+    public boolean mayRunInBackground() {
+        return profile.background;
+    }
+    public boolean isMediaInUse() {
+        return mediaDelegate.isInUse();
+    }
+    public boolean isDiscarded() {
+        return discarded;
+    }
+    // Closes the session to free its memory, keeping what's needed to restore it
+    public void discard() {
+        if (discarded) return;
+        discardedState = progressDelegate.sessionState;
+        discardedUrl = getUrl();
+        final GeckoSession session = releaseSession();
+        if (session != null) session.close();
+        discarded = true;
+        suspended = false;
+    }
+    public void restore() {
+        if (!discarded) return;
+        discarded = false;
+        final GeckoSession session = openSession(profile);
+        useSession(session);
+        if (discardedState != null) session.restoreState(discardedState);
+        else if (discardedUrl != null) load(session, discardedUrl, profile);
+        discardedState = null;
+        discardedUrl = null;
+    }
+
+    // Keeps a small screenshot, to show in place of the site while it's discarded.
+    // Must be called while the view is still on screen.
+    public void captureThumbnail() {
+        if (getSession() == null) return;
+        capturePixels().accept(bitmap -> {
+            if (bitmap == null || bitmap.getWidth() == 0) return;
+            final int height = Math.max(1, bitmap.getHeight() * THUMBNAIL_WIDTH / bitmap.getWidth());
+            thumbnail = Bitmap.createScaledBitmap(bitmap, THUMBNAIL_WIDTH, height, true);
+            if (thumbnail != bitmap) bitmap.recycle();
+        }, e -> Log.w(TAG, "Failed to capture thumbnail", e));
+    }
+    @Nullable
+    public Bitmap getThumbnail() {
+        return thumbnail;
+    }
+
     public void updateActivity(BrowserActivity mActivity) {
         navigationDelegate.mActivity = mActivity;
         progressDelegate.mActivity = mActivity;
@@ -0,0 +1,45 @@
+package com.threethan.launcher.browser.GeckoView.Delegate;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.geckoview.MediaSession;
+
+/*
+    CustomMediaDelegate
+
+    Keeps track of whether a session is playing media or recording, so it isn't suspended while
+    running in the background (see SessionLifecycle)
+ */
+public class CustomMediaDelegate implements MediaSession.Delegate, GeckoSession.MediaDelegate {
+    private boolean playing = false;
+    private boolean recording = false;
+
+    public boolean isInUse() {
+        return playing || recording;
+    }
+
+    @Override
+    public void onPlay(@NonNull GeckoSession session, @NonNull MediaSession mediaSession) {
+        playing = true;
+    }
+    @Override
+    public void onPause(@NonNull GeckoSession session, @NonNull MediaSession mediaSession) {
+        playing = false;
+    }
+    @Override
+    public void onStop(@NonNull GeckoSession session, @NonNull MediaSession mediaSession) {
+        playing = false;
+    }
+    @Override
+    public void onDeactivated(@NonNull GeckoSession session, @NonNull MediaSession mediaSession) {
+        playing = false;
+    }
+
+    @Override
+    public void onRecordingStatusChanged(@NonNull GeckoSession session, @NonNull RecordingDevice[] devices) {
+        recording = false;
+        for (RecordingDevice device : devices)
+            if (device.status == RecordingDevice.Status.RECORDING) recording = true;
+    }
+}
@@ -14,6 +14,7 @@ import org.mozilla.geckoview.GeckoSession;
 public class CustomPermissionDelegate implements GeckoSession.PermissionDelegate {
     public int androidPermissionRequestCode = 1;
     public Activity mActivity;
+    public boolean allowAutoplay = true;
 
     public CustomPermissionDelegate(Activity mActivity) {
         this.mActivity = mActivity;
@@ -31,6 +32,8 @@ public class CustomPermissionDelegate implements GeckoSession.PermissionDelegate
     @Nullable
     @Override
     public GeckoResult<Integer> onContentPermissionRequest(@NonNull GeckoSession session, @NonNull ContentPermission perm) {
+        if (!allowAutoplay && perm.permission == PERMISSION_AUTOPLAY_AUDIBLE)
+            return GeckoResult.fromValue(ContentPermission.VALUE_DENY);
         return GeckoResult.fromValue(ContentPermission.VALUE_ALLOW);
     }
 
@@ -1,6 +1,7 @@
 package com.threethan.launcher.browser.GeckoView.Delegate;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.threethan.launcher.browser.BrowserActivity;
 
@@ -8,6 +9,12 @@ import org.mozilla.geckoview.GeckoSession;
 
 public class CustomProgressDelegate implements GeckoSession.ProgressDelegate {
     public BrowserActivity mActivity;
+    // Latest state of the session, so it can be restored if the session is discarded
+    @Nullable
+    public GeckoSession.SessionState sessionState;
+    // Run once the page which is loading stops, then cleared
+    @Nullable
+    public Runnable afterNextPageStop;
     public CustomProgressDelegate(BrowserActivity activity) {
         super();
         this.mActivity = activity;
@@ -21,5 +28,14 @@ public class CustomProgressDelegate implements GeckoSession.ProgressDelegate {
     public void onPageStop(@NonNull GeckoSession session, boolean success) {
         GeckoSession.ProgressDelegate.super.onPageStop(session, success);
         if (mActivity != null) mActivity.stopLoading();
+        final Runnable after = afterNextPageStop;
+        afterNextPageStop = null;
+        if (after != null) after.run();
     }
-}
\ No newline at end of file
+    @Override
+    public void onSessionStateChange(@NonNull GeckoSession session, @NonNull GeckoSession.SessionState state) {
+        GeckoSession.ProgressDelegate.super.onSessionStateChange(session, state);
+        sessionState = state;
+        if (mActivity != null) mActivity.onSessionStateChange(state);
+    }
+}
@@ -0,0 +1,180 @@
+package com.threethan.launcher.browser;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.helper.Settings;
+import com.threethan.launcher.launcher.LauncherActivity;
+
+import org.mozilla.geckoview.GeckoRuntime;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.geckoview.GeckoWebExecutor;
+import org.mozilla.geckoview.WebRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+    OfflineCache
+
+    This abstract class keeps websites pinned to the launcher usable without a network, for sites
+    where the user has turned it on in the site's app details.
+
+    While the launcher is idle on an unmetered network, the start page of each such site is
+    refreshed now and then, with a conditional request, and saved as an OfflineShell. If the
+    browser is running, the page is also fetched through Gecko, so its HTTP cache is warm for the
+    next normal load. When such a site is opened, the saved page is shown straight away and the
+    site is loaded over it, so it paints from disk rather than waiting on the network. With no
+    network, the saved page is shown instead of an error.
+ */
+
+public abstract class OfflineCache {
+    private static final String TAG = "OfflineCache";
+    private static final String DIR_NAME = "offline";
+    private static final int IDLE_DELAY_MS = 10000;
+    private static final int TIMEOUT_MS = 15000;
+    private static final long REFRESH_MS = 6 * 60 * 60 * 1000L;
+
+    public interface Callback {
+        // Called on the main thread, with null if there's no saved page
+        void onLoaded(@Nullable OfflineShell shell);
+    }
+
+    private static final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static File dir;
+    private static boolean scheduled = false;
+
+    public static synchronized void init(Context context) {
+        if (dir == null) dir = new File(context.getFilesDir(), DIR_NAME);
+    }
+    public static boolean isEnabled(SharedPreferences sharedPreferences, String url) {
+        return sharedPreferences.getBoolean(Settings.KEY_WEB_OFFLINE + url, Settings.DEFAULT_WEB_OFFLINE);
+    }
+    public static void setEnabled(LauncherActivity activity, String url, boolean enabled) {
+        activity.sharedPreferenceEditor.putBoolean(Settings.KEY_WEB_OFFLINE + url, enabled).apply();
+        init(activity);
+        if (enabled) schedule(activity);
+        else ioExecutor.execute(() -> {
+            final boolean ignored = OfflineShell.fileFor(dir, url).delete();
+        });
+    }
+
+    // Refreshes saved pages once the main thread is idle, a little while from now
+    public static void schedule(LauncherActivity activity) {
+        if (scheduled) return;
+        scheduled = true;
+        activity.postDelayed(() -> Looper.myQueue().addIdleHandler(() -> {
+            scheduled = false;
+            if (!activity.isDestroyed()) precache(activity);
+            return false;
+        }), IDLE_DELAY_MS);
+    }
+    private static void precache(LauncherActivity activity) {
+        init(activity);
+        final Set<String> urls = new HashSet<>();
+        for (String url : activity.sharedPreferences.getStringSet(Settings.KEY_WEBSITE_LIST, new HashSet<>()))
+            if (isEnabled(activity.sharedPreferences, url)) urls.add(url);
+        ioExecutor.execute(() -> deleteUnused(urls));
+        if (urls.isEmpty() || !isUnmetered(activity)) return;
+
+        final String userAgent = GeckoSession.getDefaultUserAgent();
+        for (String url : urls) ioExecutor.execute(() -> refresh(url, userAgent));
+    }
+    private static void refresh(String url, String userAgent) {
+        final File file = OfflineShell.fileFor(dir, url);
+        try {
+            // Only the header is read to check the age, since most checks stop there
+            final long fetchedAt = OfflineShell.readFetchedAt(file, url);
+            if (fetchedAt >= 0 && System.currentTimeMillis() - fetchedAt < REFRESH_MS) return;
+            final OfflineShell previous = OfflineShell.read(file, url);
+            final OfflineShell shell = OfflineShell.fetch(url, previous, userAgent, TIMEOUT_MS);
+            if (!dir.exists() && !dir.mkdirs()) return;
+            shell.write(file);
+            Log.v(TAG, (previous != null && previous.body == shell.body ? "Revalidated " : "Saved ") + url);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save " + url + " for offline use", e);
+            return;
+        }
+        mainHandler.post(() -> warmHttpCache(url));
+    }
+    // Fetches the page through Gecko, if it's running, so the browser's own cache has it too
+    private static void warmHttpCache(String url) {
+        final GeckoRuntime runtime = BrowserService.getRuntime();
+        if (runtime == null) return;
+        new GeckoWebExecutor(runtime).fetch(new WebRequest.Builder(url)
+                .cacheMode(WebRequest.CACHE_MODE_RELOAD).build()).accept(response -> {
+            if (response == null || response.body == null) return;
+            final InputStream body = response.body;
+            // Only reading the whole body gets it cached
+            ioExecutor.execute(() -> {
+                try (InputStream in = body) {
+                    final byte[] buffer = new byte[16 * 1024];
+                    //noinspection StatementWithEmptyBody
+                    while (in.read(buffer) != -1);
+                } catch (IOException ignored) {}
+            });
+        }, e -> Log.w(TAG, "Failed to warm cache for " + url, e));
+    }
+    // Removes pages for sites which were removed, or no longer kept offline
+    private static void deleteUnused(Set<String> urls) {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        final Set<String> names = new HashSet<>();
+        for (String url : urls) names.add(OfflineShell.fileFor(dir, url).getName());
+        for (File file : files) if (!names.contains(file.getName())) {
+            final boolean ignored = file.delete();
+        }
+    }
+
+    public static void load(String url, Callback callback) {
+        if (dir == null) {
+            callback.onLoaded(null);
+            return;
+        }
+        ioExecutor.execute(() -> {
+            OfflineShell shell = null;
+            try {
+                shell = OfflineShell.read(OfflineShell.fileFor(dir, url), url);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read saved page for " + url, e);
+            }
+            final OfflineShell loaded = shell;
+            mainHandler.post(() -> callback.onLoaded(loaded));
+        });
+    }
+
+    public static boolean isOnline(Context context) {
+        final NetworkCapabilities capabilities = getCapabilities(context);
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+    private static boolean isUnmetered(Context context) {
+        final NetworkCapabilities capabilities = getCapabilities(context);
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+    }
+    @Nullable
+    private static NetworkCapabilities getCapabilities(Context context) {
+        final ConnectivityManager connectivityManager
+                = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) return null;
+        final Network network = connectivityManager.getActiveNetwork();
+        return network == null ? null : connectivityManager.getNetworkCapabilities(network);
+    }
+}
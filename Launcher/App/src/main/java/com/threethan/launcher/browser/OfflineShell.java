@@ -0,0 +1,179 @@
+package com.threethan.launcher.browser;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    OfflineShell
+
+    A saved copy of a website's start page, so it can be shown when there's no network
+    (see OfflineCache).
+
+    Fetching uses conditional requests (ETag / Last-Modified), so refreshing an unchanged page
+    costs a 304 and no body. Copies are saved in a small binary file per site, replaced atomically.
+    Nothing here depends on Android, so it can be run against a local HTTP server on any JVM.
+ */
+
+public class OfflineShell {
+    private static final int MAGIC = 0x4C4C4F53; // "LLOS"
+    private static final int VERSION = 1;
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_REDIRECTS = 5;
+    // Not <header>, which can come first in pages that leave out their <head>
+    private static final Pattern HEAD_TAG = Pattern.compile("<head[\\s>]", Pattern.CASE_INSENSITIVE);
+
+    public final String url;
+    // Where the page actually came from, after redirects
+    public final String finalUrl;
+    public final String contentType;
+    @Nullable
+    public final String etag;
+    @Nullable
+    public final String lastModified;
+    public final long fetchedAt;
+    public final byte[] body;
+
+    private OfflineShell(String url, String finalUrl, String contentType, @Nullable String etag,
+                         @Nullable String lastModified, long fetchedAt, byte[] body) {
+        this.url = url;
+        this.finalUrl = finalUrl;
+        this.contentType = contentType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+        this.body = body;
+    }
+
+    // Fetches the page, or confirms the previous copy is still current
+    public static OfflineShell fetch(String url, @Nullable OfflineShell previous,
+                                     @Nullable String userAgent, int timeoutMs) throws IOException {
+        String location = url;
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+            try {
+                connection.setInstanceFollowRedirects(false);
+                connection.setConnectTimeout(timeoutMs);
+                connection.setReadTimeout(timeoutMs);
+                if (userAgent != null) connection.setRequestProperty("User-Agent", userAgent);
+                if (previous != null && previous.finalUrl.equals(location)) {
+                    if (previous.etag != null) connection.setRequestProperty("If-None-Match", previous.etag);
+                    if (previous.lastModified != null) connection.setRequestProperty("If-Modified-Since", previous.lastModified);
+                }
+                final int code = connection.getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null)
+                    return new OfflineShell(url, previous.finalUrl, previous.contentType, previous.etag,
+                            previous.lastModified, System.currentTimeMillis(), previous.body);
+                if (code >= 300 && code < 400 && connection.getHeaderField("Location") != null) {
+                    location = new URL(new URL(location), connection.getHeaderField("Location")).toString();
+                    continue;
+                }
+                if (code != HttpURLConnection.HTTP_OK) throw new IOException("HTTP " + code + " for " + location);
+
+                final String contentType = connection.getContentType();
+                try (InputStream in = new BufferedInputStream(connection.getInputStream())) {
+                    return new OfflineShell(url, location, contentType == null ? "text/html" : contentType,
+                            connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+                            System.currentTimeMillis(), readLimited(in));
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+        throw new IOException("Too many redirects for " + url);
+    }
+    private static byte[] readLimited(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > MAX_BYTES) throw new IOException("Page is too large to keep offline");
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    // Gets the page as it should be loaded from memory: relative links still need to point at the
+    // site, so HTML gets a <base> tag. Bytes are kept as they are, so the page's charset still applies.
+    public byte[] toDocument() {
+        if (!contentType.toLowerCase(Locale.ROOT).startsWith("text/html")) return body;
+        final String latin = new String(body, StandardCharsets.ISO_8859_1);
+        final Matcher head = HEAD_TAG.matcher(latin);
+        final int headEnd = head.find() ? latin.indexOf('>', head.start()) : -1;
+        final String base = "<base href=\"" + finalUrl.replace("\"", "%22") + "\">";
+        final String document = headEnd < 0 ? base + latin
+                : latin.substring(0, headEnd + 1) + base + latin.substring(headEnd + 1);
+        return document.getBytes(StandardCharsets.ISO_8859_1);
+    }
+    public String getMimeType() {
+        final int separator = contentType.indexOf(';');
+        return (separator < 0 ? contentType : contentType.substring(0, separator)).trim();
+    }
+
+    public static File fileFor(File dir, String url) {
+        return new File(dir, UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)) + ".bin");
+    }
+    public void write(File file) throws IOException {
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(url);
+            out.writeUTF(finalUrl);
+            out.writeUTF(contentType);
+            out.writeUTF(etag == null ? "" : etag);
+            out.writeUTF(lastModified == null ? "" : lastModified);
+            out.writeLong(fetchedAt);
+            out.writeInt(body.length);
+            out.write(body);
+        }
+        if (!tempFile.renameTo(file)) throw new IOException("Failed to replace " + file);
+    }
+    // Reads a saved copy, or returns null if there's no usable copy for the url
+    @Nullable
+    public static OfflineShell read(File file, String url) throws IOException {
+        return read(file, url, true);
+    }
+    // Gets when the saved copy was fetched, without reading the page, or -1 if there's no usable copy
+    public static long readFetchedAt(File file, String url) throws IOException {
+        final OfflineShell header = read(file, url, false);
+        return header == null ? -1 : header.fetchedAt;
+    }
+    @Nullable
+    private static OfflineShell read(File file, String url, boolean withBody) throws IOException {
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (!url.equals(in.readUTF())) return null;
+            final String finalUrl = in.readUTF();
+            final String contentType = in.readUTF();
+            final String etag = in.readUTF();
+            final String lastModified = in.readUTF();
+            final long fetchedAt = in.readLong();
+            if (!withBody) return new OfflineShell(url, finalUrl, contentType, etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified, fetchedAt, new byte[0]);
+            final int length = in.readInt();
+            if (length < 0 || length > MAX_BYTES) return null;
+            final byte[] body = new byte[length];
+            in.readFully(body);
+            return new OfflineShell(url, finalUrl, contentType, etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified, fetchedAt, body);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.threethan.launcher.browser;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+
+import com.threethan.launcher.R;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+    SessionCost
+
+    This abstract class estimates how much memory and CPU each running website is using, to show
+    in the browser's notification.
+
+    Gecko doesn't report usage per session, and sessions share content processes, so the usage of
+    all of the browser's child processes is measured and split between sessions by their state.
+    Suspended sessions are assumed to cost a fraction of active ones, and discarded ones nothing.
+    Measuring involves IPC and reading /proc, so call it off the main thread.
+ */
+
+public abstract class SessionCost {
+    private static final float WEIGHT_ACTIVE = 1f;
+    private static final float WEIGHT_SUSPENDED = 0.2f;
+
+    private static long lastCpuTicks = -1;
+    private static long lastSampledAt;
+
+    // Gets a line describing each website's estimated usage, given each website's state
+    public static synchronized List<String> describe(Context context, Map<String, SessionLifecycle.State> stateByUrl) {
+        final List<Integer> pids = getChildPids(context);
+        long memoryKb = 0;
+        if (!pids.isEmpty()) {
+            final int[] pidArray = new int[pids.size()];
+            for (int i = 0; i < pidArray.length; i++) pidArray[i] = pids.get(i);
+            final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            for (Debug.MemoryInfo memoryInfo : activityManager.getProcessMemoryInfo(pidArray))
+                memoryKb += memoryInfo.getTotalPss();
+        }
+        final float cpuPercent = sampleCpuPercent(pids);
+
+        float totalWeight = 0;
+        for (SessionLifecycle.State state : stateByUrl.values()) totalWeight += weightOf(state);
+
+        final List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, SessionLifecycle.State> entry : stateByUrl.entrySet()) {
+            final String name = getName(entry.getKey());
+            final float share = totalWeight == 0 ? 0 : weightOf(entry.getValue()) / totalWeight;
+            if (entry.getValue() == SessionLifecycle.State.DISCARDED)
+                lines.add(context.getString(R.string.notification_session_discarded, name));
+            else if (cpuPercent < 0)
+                lines.add(context.getString(R.string.notification_session_memory, name,
+                        Math.round(memoryKb * share / 1024)));
+            else
+                lines.add(context.getString(R.string.notification_session_cost, name,
+                        Math.round(memoryKb * share / 1024), Math.round(cpuPercent * share)));
+        }
+        return lines;
+    }
+    private static float weightOf(SessionLifecycle.State state) {
+        switch (state) {
+            case DISCARDED: return 0;
+            case SUSPENDED: return WEIGHT_SUSPENDED;
+            default: return WEIGHT_ACTIVE;
+        }
+    }
+    private static String getName(String url) {
+        final String host = Uri.parse(url).getHost();
+        return host == null ? url : host.replaceFirst("^www\\.", "");
+    }
+
+    // Gecko runs content in child processes of this app (e.g. ":tab0")
+    private static List<Integer> getChildPids(Context context) {
+        final List<Integer> pids = new ArrayList<>();
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        final List<ActivityManager.RunningAppProcessInfo> processes = activityManager.getRunningAppProcesses();
+        if (processes == null) return pids;
+        final String prefix = context.getPackageName() + ":";
+        for (ActivityManager.RunningAppProcessInfo process : processes)
+            if (process.processName.startsWith(prefix)) pids.add(process.pid);
+        return pids;
+    }
+
+    // Gets CPU use since the last sample, as a percentage of one core, or -1 on the first sample
+    private static float sampleCpuPercent(List<Integer> pids) {
+        long ticks = 0;
+        for (int pid : pids) ticks += readCpuTicks(pid);
+        final long now = SystemClock.elapsedRealtime();
+        final long lastTicks = lastCpuTicks;
+        final long elapsedMs = now - lastSampledAt;
+        lastCpuTicks = ticks;
+        lastSampledAt = now;
+        // Processes may have exited since the last sample, which makes the total go down
+        if (lastTicks < 0 || elapsedMs <= 0 || ticks < lastTicks) return -1;
+        final long ticksPerSecond = Os.sysconf(OsConstants._SC_CLK_TCK);
+        return (ticks - lastTicks) * 100_000f / ticksPerSecond / elapsedMs;
+    }
+    // Reads user and system time from /proc/<pid>/stat
+    private static long readCpuTicks(int pid) {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/" + pid + "/stat"))) {
+            final String stat = reader.readLine();
+            // The process name may contain spaces, so fields are counted from after it
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.threethan.launcher.browser;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import com.threethan.launcher.browser.GeckoView.BrowserWebView;
+import com.threethan.launcher.helper.LauncherState;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    SessionLifecycle
+
+    This abstract class limits how much websites running in the background can cost.
+
+    Websites in view get high priority. The few most recently seen background websites stay active
+    at a lower priority, and any others are suspended (made inactive) until they're shown again.
+    When memory runs low, fewer are kept active, and then background sessions are discarded
+    outright, to be restored from their saved state when next shown.
+
+    Sessions playing media or recording are exempt, so background audio keeps working, unless the
+    site's profile doesn't allow it to run in the background at all (see WebProfile).
+    Everything here happens on the main thread.
+ */
+
+public abstract class SessionLifecycle {
+    private static final String TAG = "SessionLifecycle";
+    // How many background websites may stay active, normally
+    private static final int ACTIVE_BUDGET = 2;
+
+    public enum State { SHOWN, ACTIVE, SUSPENDED, DISCARDED }
+
+    // In order of when each was last shown, least recent first
+    private static final Map<String, BrowserWebView> webViewByRecency
+            = new LinkedHashMap<>(8, 0.75f, true);
+    private static final Set<String> shownUrls = new HashSet<>();
+
+    public static void add(String url, BrowserWebView webView) {
+        webViewByRecency.put(url, webView);
+    }
+    public static void remove(String url) {
+        webViewByRecency.remove(url);
+        shownUrls.remove(url);
+    }
+
+    public static void onShown(String url) {
+        final BrowserWebView webView = webViewByRecency.get(url);
+        if (webView == null) return;
+        shownUrls.add(url);
+        if (webView.isDiscarded()) {
+            Log.v(TAG, "Restoring " + url);
+            webView.restore();
+            LauncherState.publish(LauncherState.Event.RUNNING, url);
+        }
+        webView.setForeground(true);
+        enforce(ACTIVE_BUDGET, false);
+    }
+    public static void onHidden(String url) {
+        final BrowserWebView webView = webViewByRecency.get(url);
+        if (webView == null) return;
+        shownUrls.remove(url);
+        webView.setForeground(false);
+        enforce(ACTIVE_BUDGET, false);
+    }
+
+    // Discards a website's session, if it isn't in view, until it's next shown
+    public static void discard(String url) {
+        final BrowserWebView webView = webViewByRecency.get(url);
+        if (webView == null || shownUrls.contains(url) || webView.isDiscarded()) return;
+        discard(url, webView);
+    }
+    private static void discard(String url, BrowserWebView webView) {
+        Log.v(TAG, "Discarding " + url);
+        webView.discard();
+        LauncherState.publish(LauncherState.Event.RUNNING, url);
+    }
+    // Gets the state of each running website, least recently shown first
+    public static Map<String, State> getStates() {
+        final Map<String, State> stateByUrl = new LinkedHashMap<>();
+        for (Map.Entry<String, BrowserWebView> entry : webViewByRecency.entrySet()) {
+            final BrowserWebView webView = entry.getValue();
+            final State state;
+            if (webView.isDiscarded()) state = State.DISCARDED;
+            else if (shownUrls.contains(entry.getKey())) state = State.SHOWN;
+            else if (webView.isSuspended()) state = State.SUSPENDED;
+            else state = State.ACTIVE;
+            stateByUrl.put(entry.getKey(), state);
+        }
+        return stateByUrl;
+    }
+
+    public static void trimMemory(int level) {
+        // UI_HIDDEN only means the app was left, which is what background sessions are for
+        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) enforce(0, true);
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) enforce(1, false);
+    }
+
+    // Keeps the most recently seen background websites active, up to the budget,
+    // and suspends or discards the rest
+    private static void enforce(int budget, boolean discard) {
+        final List<Map.Entry<String, BrowserWebView>> entries = new ArrayList<>(webViewByRecency.entrySet());
+        int active = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final String url = entries.get(i).getKey();
+            final BrowserWebView webView = entries.get(i).getValue();
+            if (shownUrls.contains(url) || webView.isDiscarded()) continue;
+            if (!webView.mayRunInBackground()) {
+                webView.setSuspended(true);
+            } else if (webView.isMediaInUse()) {
+                webView.setSuspended(false);
+            } else if (active < budget) {
+                webView.setSuspended(false);
+                active++;
+            } else if (discard) {
+                discard(url, webView);
+            } else {
+                webView.setSuspended(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.threethan.launcher.browser;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.helper.Settings;
+
+import org.mozilla.geckoview.GeckoSession;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+    SessionSnapshots
+
+    This abstract class saves the state of each website's session (history, scroll position, form
+    data) to disk, so a website can pick up where it left off even after the process has died.
+
+    Sessions report their state often, so writes are throttled: only the latest state of each site
+    is kept in memory, and written a few seconds later in the background. Each site has its own
+    file, replaced atomically so a crash mid-write can't corrupt it. Snapshots are only read when
+    a site is opened with no session running, and are deleted when the site is closed for good.
+    Any left behind, by sites which were removed or not opened in a while, are pruned on start.
+ */
+
+public abstract class SessionSnapshots {
+    private static final String TAG = "SessionSnapshots";
+    private static final String DIR_NAME = "sessions";
+    private static final int MAGIC = 0x4C4C5353; // "LLSS"
+    private static final int VERSION = 1;
+    private static final int THROTTLE_MS = 5000;
+    // Older snapshots are probably not what the user expects to come back to
+    private static final long MAX_AGE_MS = 3 * 24 * 60 * 60 * 1000L;
+
+    public interface Callback {
+        // Called on the main thread, with null if there's no usable snapshot
+        void onLoaded(@Nullable GeckoSession.SessionState state);
+    }
+
+    private static final ScheduledExecutorService ioExecutor = Executors.newSingleThreadScheduledExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Latest state of each site that hasn't been written yet
+    private static final Map<String, String> pendingByUrl = new ConcurrentHashMap<>();
+    private static File dir;
+
+    public static synchronized void init(Context context) {
+        if (dir != null) return;
+        dir = new File(context.getFilesDir(), DIR_NAME);
+        final Set<String> urls = new HashSet<>(PreferenceManager.getDefaultSharedPreferences(context)
+                .getStringSet(Settings.KEY_WEBSITE_LIST, new HashSet<>()));
+        ioExecutor.execute(() -> prune(urls));
+    }
+    // Deletes snapshots which are too old to be used, or for sites which were removed
+    private static void prune(Set<String> urls) {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        final Set<String> names = new HashSet<>();
+        for (String url : urls) names.add(fileFor(url).getName());
+        final long now = System.currentTimeMillis();
+        for (File file : files) if (!names.contains(file.getName()) || now - file.lastModified() > MAX_AGE_MS) {
+            final boolean ignored = file.delete();
+        }
+    }
+
+    public static void save(String url, GeckoSession.SessionState state) {
+        if (dir == null) return;
+        final boolean writeScheduled = pendingByUrl.put(url, state.toString()) != null;
+        if (!writeScheduled) ioExecutor.schedule(() -> write(url), THROTTLE_MS, TimeUnit.MILLISECONDS);
+    }
+    // Writes anything pending now, e.g. before the process might be killed
+    public static void flush() {
+        for (String url : pendingByUrl.keySet()) ioExecutor.execute(() -> write(url));
+    }
+    public static void delete(String url) {
+        if (dir == null) return;
+        pendingByUrl.remove(url);
+        ioExecutor.execute(() -> {
+            final boolean ignored = fileFor(url).delete();
+        });
+    }
+    public static void load(String url, Callback callback) {
+        if (dir == null) {
+            callback.onLoaded(null);
+            return;
+        }
+        ioExecutor.execute(() -> {
+            String json = pendingByUrl.get(url);
+            if (json == null) json = read(url);
+            final GeckoSession.SessionState state = json == null ? null : GeckoSession.SessionState.fromString(json);
+            mainHandler.post(() -> callback.onLoaded(state));
+        });
+    }
+
+    private static File fileFor(String url) {
+        return new File(dir, UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)) + ".bin");
+    }
+    private static void write(String url) {
+        final String json = pendingByUrl.remove(url);
+        if (json == null) return; // Already written, or deleted
+        if (!dir.exists() && !dir.mkdirs()) return;
+        final File file = fileFor(url);
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(url);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write snapshot for " + url, e);
+            return;
+        }
+        if (!tempFile.renameTo(file)) Log.w(TAG, "Failed to replace snapshot for " + url);
+    }
+    @Nullable
+    private static String read(String url) {
+        final File file = fileFor(url);
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (!url.equals(in.readUTF())) return null;
+            if (System.currentTimeMillis() - in.readLong() > MAX_AGE_MS) {
+                Log.v(TAG, "Ignoring old snapshot for " + url);
+                return null;
+            }
+            final int length = in.readInt();
+            if (length < 0 || length > file.length()) return null;
+            final byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read snapshot for " + url, e);
+            return null;
+        }
+    }
+}
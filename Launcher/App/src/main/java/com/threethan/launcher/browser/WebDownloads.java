@@ -0,0 +1,218 @@
+package com.threethan.launcher.browser;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.R;
+import com.threethan.launcher.helper.Dialog;
+import com.threethan.launcher.lib.SegmentedDownload;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+    WebDownloads
+
+    This abstract class downloads files for the browser, in place of Android's DownloadManager.
+
+    Files are fetched over a few ranged connections at once (see SegmentedDownload), retried when
+    a connection drops, and resumed from where they left off if the process dies - the next time
+    the browser service starts. Progress is shown in a notification. If the server gave a
+    checksum, the file is checked against it before it's handed on.
+ */
+
+public abstract class WebDownloads {
+    private static final String TAG = "WebDownloads";
+    public static final String DOWNLOAD_DIR = "/Content/Downloads/";
+    private static final int MAX_SEGMENTS = 4;
+    private static final int PROGRESS_INTERVAL_MS = 500;
+    // Notifications ids are offset by this, to stay clear of the browser service's
+    private static final int NOTIFICATION_ID_BASE = 4200;
+    // Finished downloads which weren't copied to the downloads folder are kept this long
+    private static final long KEEP_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    public interface Callback {
+        // Called on the main thread once a file has finished downloading and been checked
+        void onDownloaded(File file, String sha256);
+    }
+
+    // Runs whole downloads, a couple at a time, each of which waits on its segments
+    private static final ExecutorService downloadExecutor = Executors.newFixedThreadPool(2);
+    private static final ExecutorService segmentExecutor = Executors.newFixedThreadPool(MAX_SEGMENTS * 2);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // The url of each download which is running, by file name
+    private static final Map<String, String> urlByActiveName = new ConcurrentHashMap<>();
+    private static final Map<String, Long> lastProgressAtByName = new ConcurrentHashMap<>();
+    @Nullable
+    private static Callback callback;
+    private static Context appContext;
+
+    // Sets what to do with finished downloads, and resumes any which were interrupted
+    public static void init(Context context, Callback callback) {
+        appContext = context.getApplicationContext();
+        setCallback(callback);
+        final File dir = getDir();
+        if (dir == null) return;
+        for (SegmentedDownload download : SegmentedDownload.findInterrupted(dir, MAX_SEGMENTS)) {
+            Log.v(TAG, "Resuming " + download.file.getName());
+            run(download);
+        }
+    }
+    public static void setCallback(@Nullable Callback callback) {
+        WebDownloads.callback = callback;
+    }
+    @Nullable
+    public static File getDir() {
+        return appContext == null ? null : appContext.getExternalFilesDir(DOWNLOAD_DIR);
+    }
+
+    // Gets where a finished download is copied to, in the public downloads folder
+    public static File getPublicFile(String filename) {
+        return new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), filename);
+    }
+    // Deletes finished downloads which the browser no longer uses: those which were copied to the
+    // downloads folder, and those older than KEEP_MS. Unfinished downloads are kept to be resumed.
+    public static void deleteStale(Context context) {
+        final File dir = context.getExternalFilesDir(DOWNLOAD_DIR);
+        if (dir == null) return;
+        downloadExecutor.execute(() -> {
+            final File[] files = dir.listFiles();
+            if (files == null) return;
+            final long now = System.currentTimeMillis();
+            for (File file : files) {
+                final String name = file.getName();
+                if (file.isDirectory() || urlByActiveName.containsKey(name) || SegmentedDownload.isInProgress(name)) continue;
+                if (new File(file.getPath() + SegmentedDownload.JOURNAL_SUFFIX).exists()) continue;
+                final File publicFile = getPublicFile(name);
+                final boolean copied = publicFile.exists() && publicFile.length() == file.length();
+                if (copied || now - file.lastModified() > KEEP_MS) {
+                    final boolean ignored = file.delete();
+                }
+            }
+        });
+    }
+
+    // Starts a download, returning the name of the file it's saved as, or null if the url is
+    // already downloading
+    @Nullable
+    public static String start(Context context, String url, String filename, @Nullable String expectedSha256) {
+        if (appContext == null) appContext = context.getApplicationContext();
+        final File dir = getDir();
+        if (dir == null) {
+            Log.w(TAG, "No storage for " + filename);
+            return filename;
+        }
+        if (urlByActiveName.containsValue(url)) return null;
+        final File file = getFileFor(dir, url, filename);
+        // If the same url was interrupted before, this picks up where it left off
+        run(new SegmentedDownload(url, file, expectedSha256, MAX_SEGMENTS));
+        return file.getName();
+    }
+    // Gets a file to download to, adding a number to the name if the name is taken by another
+    // download or a finished file, e.g. "download (1).apk"
+    private static File getFileFor(File dir, String url, String filename) {
+        final int dot = filename.lastIndexOf('.');
+        final String base = dot > 0 ? filename.substring(0, dot) : filename;
+        final String extension = dot > 0 ? filename.substring(dot) : "";
+        for (int i = 0; ; i++) {
+            final File file = new File(dir, i == 0 ? filename : base + " (" + i + ")" + extension);
+            if (urlByActiveName.containsKey(file.getName()) || file.exists()) continue;
+            final String interruptedUrl = SegmentedDownload.getInterruptedUrl(file);
+            if (interruptedUrl == null || interruptedUrl.equals(url)) return file;
+        }
+    }
+    private static void run(SegmentedDownload download) {
+        final String name = download.file.getName();
+        if (urlByActiveName.putIfAbsent(name, download.url) != null) return;
+        downloadExecutor.execute(() -> {
+            try {
+                download.run(segmentExecutor, WebDownloads::onProgress);
+                cancelNotification(name);
+                final String sha256 = download.getSha256();
+                mainHandler.post(() -> {
+                    if (callback != null) callback.onDownloaded(download.file, sha256);
+                    else Dialog.toast(appContext.getString(R.string.web_download_finished), name, true);
+                });
+            } catch (SegmentedDownload.ChecksumException e) {
+                Log.w(TAG, "Discarded " + name, e);
+                onFailed(name, R.string.web_download_checksum_failed);
+            } catch (IOException e) {
+                // Kept to be resumed the next time the browser starts
+                Log.w(TAG, "Failed to download " + name, e);
+                onFailed(name, R.string.web_download_failed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                urlByActiveName.remove(name);
+                lastProgressAtByName.remove(name);
+            }
+        });
+    }
+
+    private static void onProgress(SegmentedDownload download, long downloaded, long total) {
+        final String name = download.file.getName();
+        final long now = SystemClock.uptimeMillis();
+        final Long lastProgressAt = lastProgressAtByName.get(name);
+        if (lastProgressAt != null && now - lastProgressAt < PROGRESS_INTERVAL_MS) return;
+        lastProgressAtByName.put(name, now);
+
+        final Notification.Builder builder = new Notification.Builder(appContext)
+                .setContentTitle(name)
+                .setContentText(appContext.getString(R.string.web_download_started))
+                .setSmallIcon(R.drawable.ic_shortcut)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+        if (total > 0) builder.setProgress(1000, (int) (downloaded * 1000 / total), false);
+        else builder.setProgress(0, 0, true);
+        getNotificationManager().notify(getNotificationId(name), builder.build());
+    }
+    private static void onFailed(String name, int messageRes) {
+        cancelNotification(name);
+        mainHandler.post(() -> Dialog.toast(appContext.getString(messageRes), name, true));
+    }
+    private static void cancelNotification(String name) {
+        getNotificationManager().cancel(getNotificationId(name));
+    }
+    private static int getNotificationId(String name) {
+        return NOTIFICATION_ID_BASE + (name.hashCode() & 0x7fffffff) % 1000;
+    }
+    private static NotificationManager getNotificationManager() {
+        return (NotificationManager) appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+    // Gets the SHA-256 from a Digest or Repr-Digest header, as lowercase hex, if there is one
+    @Nullable
+    public static String getSha256(Map<String, String> headers) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            final String key = header.getKey().toLowerCase(Locale.ROOT);
+            if (!key.equals("digest") && !key.equals("repr-digest")) continue;
+            for (String part : header.getValue().split(",")) {
+                final String value = part.trim();
+                if (!value.toLowerCase(Locale.ROOT).startsWith("sha-256=")) continue;
+                try {
+                    final byte[] bytes = Base64.decode(value.substring(8).replace(":", ""), Base64.DEFAULT);
+                    final StringBuilder hex = new StringBuilder();
+                    for (byte b : bytes) hex.append(String.format(Locale.ROOT, "%02x", b));
+                    return hex.length() == 64 ? hex.toString() : null;
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,217 @@
+package com.threethan.launcher.browser;
+
+import android.content.ComponentCallbacks2;
+import android.content.pm.ApplicationInfo;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.browser.GeckoView.BrowserWebView;
+import com.threethan.launcher.helper.App;
+import com.threethan.launcher.helper.LaunchStats;
+import com.threethan.launcher.helper.Platform;
+import com.threethan.launcher.helper.Settings;
+import com.threethan.launcher.launcher.LauncherActivity;
+import com.threethan.launcher.support.SettingsManager;
+
+import org.mozilla.geckoview.GeckoSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    WebPrewarm
+
+    This abstract class gets the browser ready for the website the user is most likely to open
+    next, so that opening it doesn't wait on the GeckoRuntime starting up.
+
+    Once the launcher has been idle for a moment, websites are ranked by their frecency (see
+    LaunchStats). If any have been used recently, the runtime is created ahead of time. If enabled,
+    a session is also opened and the most likely website loaded in it; if that website is then
+    opened, its BrowserWebView adopts the session instead of loading it again.
+
+    The pre-warmed session is dropped when memory runs low. The runtime itself can't be released,
+    as Gecko only allows one per process.
+
+    Time to first paint is measured from the browser activity starting, and split by how warm the
+    browser was, so the effect of pre-warming can be compared in the log.
+ */
+
+public abstract class WebPrewarm {
+    private static final String TAG = "WebPrewarm";
+    private static final int IDLE_DELAY_MS = 2000;
+    // Websites less used than this (roughly one launch in the last week) aren't worth pre-warming
+    private static final float MIN_FRECENCY = 0.5f;
+
+    // How warm the browser was when a website was opened
+    private enum Start { COLD, WARM_RUNTIME, PREWARMED_SESSION }
+    private static class Pending {
+        final long openedAt = SystemClock.uptimeMillis();
+        final boolean runtimeWarm = BrowserService.getRuntime() != null;
+        Start start;
+        // An adopted session may have painted before it was shown, so wait for it to reach the screen
+        boolean untilComposite;
+    }
+    private static final Map<String, Pending> pendingByUrl = new HashMap<>();
+    private static final long[] paintTotalMs = new long[Start.values().length];
+    private static final int[] paintCount = new int[Start.values().length];
+
+    @Nullable
+    private static GeckoSession session;
+    @Nullable
+    private static String sessionUrl;
+    private static boolean sessionLoaded;
+    private static boolean sessionPainted;
+    private static boolean scheduled = false;
+
+    // Pre-warms once the main thread is idle, a little while from now
+    public static void schedule(LauncherActivity activity) {
+        if (scheduled || !isEnabled(activity)) return;
+        scheduled = true;
+        activity.postDelayed(() -> Looper.myQueue().addIdleHandler(() -> {
+            scheduled = false;
+            if (!activity.isDestroyed()) prewarm(activity);
+            return false;
+        }), IDLE_DELAY_MS);
+    }
+    public static void onSettingsChanged(LauncherActivity activity) {
+        if (!activity.sharedPreferences.getBoolean(Settings.KEY_WEB_PREWARM_SESSION, Settings.DEFAULT_WEB_PREWARM_SESSION)
+                || !isEnabled(activity)) dropSession();
+        schedule(activity);
+    }
+    private static boolean isEnabled(LauncherActivity activity) {
+        return activity.sharedPreferences.getBoolean(Settings.KEY_WEB_PREWARM, Settings.DEFAULT_WEB_PREWARM);
+    }
+
+    private static void prewarm(LauncherActivity activity) {
+        if (!isEnabled(activity)) return;
+        final List<String> likely = getLikelyWebsites(activity);
+        if (likely.isEmpty()) return;
+
+        BrowserService.startRuntime(activity).accept(runtime -> {
+            if (!activity.isDestroyed()) preloadSession(activity, likely.get(0));
+        });
+    }
+    private static void preloadSession(LauncherActivity activity, String url) {
+        if (!activity.sharedPreferences.getBoolean(Settings.KEY_WEB_PREWARM_SESSION, Settings.DEFAULT_WEB_PREWARM_SESSION)) return;
+        if (url.equals(sessionUrl) || SettingsManager.getRunning(url)) return;
+        dropSession();
+
+        final WebProfile profile = WebProfile.forSite(activity.sharedPreferences, url);
+        session = BrowserWebView.openSession(profile);
+        sessionUrl = url;
+        session.setProgressDelegate(new GeckoSession.ProgressDelegate() {
+            @Override
+            public void onPageStop(@NonNull GeckoSession s, boolean success) {
+                if (s == session) sessionLoaded = true;
+            }
+        });
+        session.setContentDelegate(new GeckoSession.ContentDelegate() {
+            @Override
+            public void onFirstContentfulPaint(@NonNull GeckoSession s) {
+                if (s == session) sessionPainted = true;
+            }
+            @Override
+            public void onKill(@NonNull GeckoSession s) {
+                if (s == session) dropSession();
+            }
+        });
+        BrowserWebView.load(session, url, profile);
+        Log.v(TAG, "Pre-loading " + url);
+    }
+
+    // Gets websites which open in the internal browser and aren't already open, most likely first
+    private static List<String> getLikelyWebsites(LauncherActivity activity) {
+        final long now = System.currentTimeMillis();
+        final Map<String, Float> frecencyByUrl = new HashMap<>();
+        final List<ApplicationInfo> apps = new ArrayList<>();
+        if (Platform.appListSquare != null) apps.addAll(Platform.appListSquare);
+        if (Platform.appListBanner != null) apps.addAll(Platform.appListBanner);
+        for (ApplicationInfo app : apps) {
+            final String url = app.packageName;
+            if (!App.isWebsite(app) || !(url.startsWith("http://") || url.startsWith("https://"))) continue;
+            if (activity.sharedPreferences.getInt(Settings.KEY_LAUNCH_BROWSER + url, 0) == 2) continue;
+            if (SettingsManager.getRunning(url)) continue;
+            final float frecency = LaunchStats.getFrecency(url, now);
+            if (frecency >= MIN_FRECENCY) frecencyByUrl.put(url, frecency);
+        }
+        final List<String> likely = new ArrayList<>(frecencyByUrl.keySet());
+        Collections.sort(likely, (a, b) -> Float.compare(frecencyByUrl.get(b), frecencyByUrl.get(a)));
+        return likely;
+    }
+
+    // Whether the pre-warmed session for the url has finished loading
+    public static boolean isSessionLoaded(String url) {
+        return url.equals(sessionUrl) && sessionLoaded;
+    }
+    // Hands over the pre-warmed session if it's for the url, otherwise returns null
+    @Nullable
+    public static GeckoSession takeSession(String url) {
+        if (session == null || !url.equals(sessionUrl)) return null;
+        final GeckoSession taken = session;
+        final Pending pending = pendingByUrl.get(url);
+        if (pending != null) {
+            pending.start = Start.PREWARMED_SESSION;
+            pending.untilComposite = sessionPainted;
+        }
+        session = null;
+        sessionUrl = null;
+        sessionLoaded = false;
+        sessionPainted = false;
+        Log.v(TAG, "Adopted pre-loaded session for " + url);
+        return taken;
+    }
+    private static void dropSession() {
+        if (session == null) return;
+        session.close();
+        session = null;
+        sessionUrl = null;
+        sessionLoaded = false;
+        sessionPainted = false;
+    }
+
+    public static void trimMemory(int level) {
+        // UI_HIDDEN is sent whenever the launcher is left, which is when the session is needed most
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            if (session != null) Log.v(TAG, "Dropping pre-loaded session due to memory pressure");
+            dropSession();
+        }
+    }
+
+    // Metrics
+    public static void noteOpened(String url) {
+        pendingByUrl.put(url, new Pending());
+    }
+    public static void noteStarting(String url) {
+        final Pending pending = pendingByUrl.get(url);
+        if (pending != null) pending.start = pending.runtimeWarm ? Start.WARM_RUNTIME : Start.COLD;
+    }
+    public static void noteFirstPaint(String url, boolean composite) {
+        final Pending pending = pendingByUrl.get(url);
+        if (pending == null || pending.start == null || pending.untilComposite != composite) return;
+        pendingByUrl.remove(url);
+        final long ms = SystemClock.uptimeMillis() - pending.openedAt;
+        paintTotalMs[pending.start.ordinal()] += ms;
+        paintCount[pending.start.ordinal()]++;
+        Log.v(TAG, "First paint of " + url + " after " + ms + "ms (" + pending.start + ")");
+    }
+    public static void logStats() {
+        StringBuilder stats = new StringBuilder("Average time to first paint:");
+        boolean any = false;
+        for (Start start : Start.values()) {
+            final int count = paintCount[start.ordinal()];
+            if (count == 0) continue;
+            any = true;
+            stats.append(' ').append(start).append(' ')
+                    .append(paintTotalMs[start.ordinal()] / count).append("ms (").append(count).append(')');
+        }
+        if (any) Log.v(TAG, stats.toString());
+    }
+}
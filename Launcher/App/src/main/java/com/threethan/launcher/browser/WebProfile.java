@@ -0,0 +1,65 @@
+package com.threethan.launcher.browser;
+
+import android.content.SharedPreferences;
+
+import com.threethan.launcher.R;
+import com.threethan.launcher.helper.Settings;
+
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.geckoview.GeckoSessionSettings;
+
+/*
+    WebProfile
+
+    A set of performance settings for a website, chosen per site in its app details.
+
+    Standard sites load from the HTTP cache when it's fresh, where they used to always bypass it.
+    Heavy sites can be kept from autoplaying or running in the background, and the lightest
+    profile turns off JavaScript and asks for the mobile version of the site.
+ */
+
+public enum WebProfile {
+    // Order of these matches the saved setting
+    STANDARD(R.string.web_profile_standard, false, true, true,
+            GeckoSessionSettings.USER_AGENT_MODE_DESKTOP, true),
+    ALWAYS_FRESH(R.string.web_profile_fresh, true, true, true,
+            GeckoSessionSettings.USER_AGENT_MODE_DESKTOP, true),
+    FOREGROUND_ONLY(R.string.web_profile_foreground, false, true, false,
+            GeckoSessionSettings.USER_AGENT_MODE_DESKTOP, false),
+    LITE(R.string.web_profile_lite, false, false, false,
+            GeckoSessionSettings.USER_AGENT_MODE_MOBILE, false);
+
+    public final int labelRes;
+    public final boolean bypassCache;
+    public final boolean javascript;
+    public final boolean autoplay;
+    public final int userAgentMode;
+    // Whether the site may keep running while it's not in view
+    public final boolean background;
+
+    WebProfile(int labelRes, boolean bypassCache, boolean javascript, boolean autoplay,
+               int userAgentMode, boolean background) {
+        this.labelRes = labelRes;
+        this.bypassCache = bypassCache;
+        this.javascript = javascript;
+        this.autoplay = autoplay;
+        this.userAgentMode = userAgentMode;
+        this.background = background;
+    }
+
+    public static WebProfile forSite(SharedPreferences sharedPreferences, String url) {
+        final int index = sharedPreferences.getInt(Settings.KEY_WEB_PROFILE + url, Settings.DEFAULT_WEB_PROFILE);
+        final WebProfile[] profiles = values();
+        return index >= 0 && index < profiles.length ? profiles[index] : STANDARD;
+    }
+
+    public void applyTo(GeckoSessionSettings sessionSettings) {
+        sessionSettings.setUserAgentMode(userAgentMode);
+        sessionSettings.setAllowJavascript(javascript);
+    }
+    public int getLoadFlags() {
+        int flags = GeckoSession.LOAD_FLAGS_FORCE_ALLOW_DATA_URI | GeckoSession.LOAD_FLAGS_ALLOW_POPUPS;
+        if (bypassCache) flags |= GeckoSession.LOAD_FLAGS_BYPASS_CACHE;
+        return flags;
+    }
+}
@@ -3,7 +3,6 @@ package com.threethan.launcher.helper;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
@@ -12,6 +11,7 @@ import com.threethan.launcher.R;
 import com.threethan.launcher.launcher.LauncherActivity;
 import com.threethan.launcher.support.SettingsManager;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,6 +27,7 @@ import java.util.Set;
 
     Functions prefixed with "check" check a property of an app using its metadata
     Functions prefixed with "is" are wrappers around "check" functions which cache values
+    Resolved types and support are also persisted in the AppIndex, so they survive restarts
  */
 
 
@@ -63,19 +64,10 @@ public abstract class App {
     protected synchronized static boolean isAppOfType
             (ApplicationInfo applicationInfo, App.Type appType, LauncherActivity launcherActivity) {
 
-            final SharedPreferences sharedPreferences = launcherActivity.sharedPreferences;
-            final SharedPreferences.Editor sharedPreferenceEditor = launcherActivity.sharedPreferenceEditor;
-
             if (!categoryIncludedApps.containsKey(appType)) {
                 // Create new hashsets for cache
                 categoryIncludedApps.put(appType, Collections.synchronizedSet(new HashSet<>()));
                 categoryExcludedApps.put(appType, Collections.synchronizedSet(new HashSet<>()));
-                Objects.requireNonNull(categoryIncludedApps.get(appType))
-                        .addAll(sharedPreferences.getStringSet(Settings.KEY_INCLUDED_SET + appType
-                                , new HashSet<>()));
-                Objects.requireNonNull(categoryExcludedApps.get(appType))
-                        .addAll(sharedPreferences.getStringSet(Settings.KEY_EXCLUDED_SET + appType
-                                , new HashSet<>()));
             }
 
             // Check cache
@@ -110,18 +102,10 @@ public abstract class App {
                     break;
             }
 
-            if (isType) {
-                Objects.requireNonNull(categoryIncludedApps.get(appType))
+            if (isType) Objects.requireNonNull(categoryIncludedApps.get(appType))
                         .add(applicationInfo.packageName);
-                sharedPreferenceEditor.putStringSet(Settings.KEY_INCLUDED_SET + appType,
-                        categoryIncludedApps.get(appType));
-            } else {
-                Objects.requireNonNull(categoryExcludedApps.get(appType))
+            else Objects.requireNonNull(categoryExcludedApps.get(appType))
                         .add(applicationInfo.packageName);
-                sharedPreferenceEditor.putStringSet(Settings.KEY_EXCLUDED_SET + appType,
-                        categoryIncludedApps.get(appType));
-            }
-            sharedPreferenceEditor.apply();
 
             return isType;
     }
@@ -141,7 +125,11 @@ public abstract class App {
     }
 
     synchronized public static boolean isSupported(ApplicationInfo app, LauncherActivity launcherActivity) {
-        return isAppOfType(app, Type.TYPE_SUPPORTED, launcherActivity);
+        final Boolean indexed = AppIndex.getSupported(app.packageName);
+        if (indexed != null) return indexed;
+        final boolean supported = isAppOfType(app, Type.TYPE_SUPPORTED, launcherActivity);
+        AppIndex.setSupported(app.packageName, supported);
+        return supported;
     }
     private static String[] unsupportedPrefixes;
     private static boolean checkSupported(ApplicationInfo app, LauncherActivity launcherActivity) {
@@ -179,16 +167,21 @@ public abstract class App {
     }
 
         // Invalidate the values caches for isBlank functions
-    public static synchronized void invalidateCaches(LauncherActivity launcherActivity) {
+    public static synchronized void invalidateCaches() {
         categoryIncludedApps = new HashMap<>();
         categoryExcludedApps = new HashMap<>();
-
-        for (App.Type type : App.Type.values())
-            launcherActivity.sharedPreferenceEditor
-                    .remove(Settings.KEY_INCLUDED_SET + type)
-                    .remove(Settings.KEY_EXCLUDED_SET + type);
-
-        launcherActivity.sharedPreferenceEditor.apply();
+        AppIndex.clearResolved();
+    }
+    // Invalidate the values caches for only the given packages, and any icons they had cached
+    public static synchronized void invalidateCachesFor(Collection<String> packageNames) {
+        for (Type type : categoryIncludedApps.keySet()) {
+            final Set<String> included = categoryIncludedApps.get(type);
+            final Set<String> excluded = categoryExcludedApps.get(type);
+            if (included == null || excluded == null) continue;
+            included.removeAll(packageNames);
+            excluded.removeAll(packageNames);
+        }
+        for (String packageName : packageNames) IconCache.remove(Icon.cacheName(packageName));
     }
     // Opens the app info settings pane
     public static void openInfo(Context context, String packageName) {
@@ -216,8 +209,13 @@ public abstract class App {
     }
 
     public static App.Type getType(LauncherActivity launcherActivity, ApplicationInfo app) {
+        final Type indexed = AppIndex.getType(app.packageName);
+        if (indexed != null) return indexed;
         for (Type type : Platform.getSupportedAppTypes(launcherActivity)) {
-            if (isAppOfType(app, type, launcherActivity)) return type;
+            if (isAppOfType(app, type, launcherActivity)) {
+                AppIndex.setType(app.packageName, type);
+                return type;
+            }
         }
         return Type.TYPE_UNSUPPORTED;
     }
@@ -0,0 +1,253 @@
+package com.threethan.launcher.helper;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+    AppIndex
+
+    This abstract class stores metadata about installed apps in a compact binary file, so that on a
+    cold start the launcher can show its grid without loading every package's metadata first.
+
+    For each installed package it stores the resolved app type, whether it's supported, its label,
+    the resource ids of its icon and banner, and its lastUpdateTime. The file is memory-mapped when
+    read. Entries are validated against the package manager (by lastUpdateTime) whenever the full
+    list of packages is reloaded, which happens in the background after a cold start.
+ */
+
+public abstract class AppIndex {
+    private static final String FILE_NAME = "app-index.bin";
+    private static final int MAGIC = 0x4C4C4149; // "LLAI"
+    private static final int VERSION = 1;
+    private static final String TAG = "AppIndex";
+
+    public static class Entry {
+        final String packageName;
+        long lastUpdateTime;
+        @Nullable App.Type type;
+        @Nullable Boolean supported;
+        @Nullable String label;
+        int icon;
+        int banner;
+        Entry(String packageName) {
+            this.packageName = packageName;
+        }
+    }
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private static boolean loaded = false;
+    private static boolean dirty = false;
+    private static File file;
+
+    // Reads the index from disk, if it hasn't already been read this process
+    public static synchronized void load(Context context) {
+        if (loaded) return;
+        loaded = true;
+        file = new File(context.getApplicationInfo().dataDir, FILE_NAME);
+        if (!file.exists()) return;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                Log.i(TAG, "Index is from an incompatible version and will be rebuilt");
+                return;
+            }
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(readString(buffer));
+                entry.lastUpdateTime = buffer.getLong();
+                final byte type = buffer.get();
+                entry.type = type < 0 ? null : App.Type.values()[type];
+                final byte supported = buffer.get();
+                entry.supported = supported < 0 ? null : supported == 1;
+                entry.label = readString(buffer);
+                entry.icon = buffer.getInt();
+                entry.banner = buffer.getInt();
+                if (entry.packageName != null) entries.put(entry.packageName, entry);
+            }
+            Log.v(TAG, "Loaded " + entries.size() + " entries");
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to read index, it will be rebuilt", e);
+            entries.clear();
+        }
+    }
+
+    // Writes the index to disk in the background, if anything changed
+    public static synchronized void saveIfDirty() {
+        if (!dirty || file == null) return;
+        dirty = false;
+        final List<Entry> toWrite = new ArrayList<>(entries.values());
+        writeExecutor.execute(() -> write(toWrite));
+    }
+    private static void write(List<Entry> toWrite) {
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(fileOut)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(toWrite.size());
+            for (Entry entry : toWrite) {
+                writeString(out, entry.packageName);
+                out.writeLong(entry.lastUpdateTime);
+                out.writeByte(entry.type == null ? -1 : entry.type.ordinal());
+                out.writeByte(entry.supported == null ? -1 : (entry.supported ? 1 : 0));
+                writeString(out, entry.label);
+                out.writeInt(entry.icon);
+                out.writeInt(entry.banner);
+            }
+            out.flush();
+            // Make sure the data is on disk before the rename, or a crash could leave an empty index
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write index", e);
+            return;
+        }
+        // Rename is atomic, so a crash mid-write can't leave a corrupt index
+        if (!tempFile.renameTo(file)) Log.w(TAG, "Failed to replace index file");
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) return null;
+        // A bad length means the index is corrupt, and shouldn't be trusted to size an allocation
+        if (length > buffer.remaining()) throw new IllegalArgumentException("Bad string length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    private static void writeString(DataOutputStream out, @Nullable String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static boolean hasEntries() {
+        return !entries.isEmpty();
+    }
+    // Builds lightweight application infos from the index, enough to show and launch apps
+    // Entries which haven't been fully resolved are skipped, since resolving them needs metadata
+    public static List<ApplicationInfo> getApps() {
+        List<ApplicationInfo> apps = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.type == null || entry.supported == null || entry.label == null) continue;
+            ApplicationInfo app = new ApplicationInfo();
+            app.packageName = entry.packageName;
+            app.icon = entry.icon;
+            app.banner = entry.banner;
+            app.enabled = true;
+            apps.add(app);
+        }
+        return apps;
+    }
+
+    // Drops entries for packages which were removed or updated, and adds entries for new ones
+    // Returns the packages whose entries were dropped, so other caches of them can be cleared
+    public static synchronized Set<String> validate(List<PackageInfo> packageInfos) {
+        Map<String, PackageInfo> found = new HashMap<>();
+        for (PackageInfo packageInfo : packageInfos) found.put(packageInfo.packageName, packageInfo);
+
+        Set<String> stale = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            final PackageInfo packageInfo = found.get(entry.packageName);
+            if (packageInfo == null || entry.lastUpdateTime != packageInfo.lastUpdateTime)
+                stale.add(entry.packageName);
+        }
+        update(stale, packageInfos);
+        return stale;
+    }
+    // Drops entries for the given stale packages, then adds entries for the given packages
+    public static synchronized void update(Collection<String> stalePackageNames,
+                                           List<PackageInfo> packageInfos) {
+        for (String packageName : stalePackageNames)
+            if (entries.remove(packageName) != null) dirty = true;
+
+        for (PackageInfo packageInfo : packageInfos) {
+            Entry entry = entries.get(packageInfo.packageName);
+            if (entry == null) {
+                entry = new Entry(packageInfo.packageName);
+                entry.lastUpdateTime = packageInfo.lastUpdateTime;
+                entries.put(entry.packageName, entry);
+                dirty = true;
+            }
+            final ApplicationInfo app = packageInfo.applicationInfo;
+            if (app != null && (entry.icon != app.icon || entry.banner != app.banner)) {
+                entry.icon = app.icon;
+                entry.banner = app.banner;
+                dirty = true;
+            }
+        }
+    }
+    public static synchronized void clearResolved() {
+        for (Entry entry : entries.values()) {
+            entry.type = null;
+            entry.supported = null;
+        }
+        dirty = true;
+    }
+
+    // Getters & setters for cached values
+    // Setters do nothing for packages which aren't installed (websites, panel apps)
+    @Nullable
+    public static App.Type getType(String packageName) {
+        final Entry entry = entries.get(packageName);
+        return entry == null ? null : entry.type;
+    }
+    public static synchronized void setType(String packageName, App.Type type) {
+        final Entry entry = entries.get(packageName);
+        if (entry == null || entry.type == type) return;
+        entry.type = type;
+        dirty = true;
+    }
+    @Nullable
+    public static Boolean getSupported(String packageName) {
+        final Entry entry = entries.get(packageName);
+        return entry == null ? null : entry.supported;
+    }
+    public static synchronized void setSupported(String packageName, boolean supported) {
+        final Entry entry = entries.get(packageName);
+        if (entry == null || Boolean.valueOf(supported).equals(entry.supported)) return;
+        entry.supported = supported;
+        dirty = true;
+    }
+    @Nullable
+    public static String getLabel(String packageName) {
+        final Entry entry = entries.get(packageName);
+        return entry == null ? null : entry.label;
+    }
+    public static synchronized void setLabel(String packageName, String label) {
+        final Entry entry = entries.get(packageName);
+        if (entry == null || label.equals(entry.label)) return;
+        entry.label = label;
+        dirty = true;
+    }
+}
@@ -30,7 +30,7 @@ import java.util.Set;
 
 public abstract class Compat {
     public static final String KEY_COMPATIBILITY_VERSION = "KEY_COMPATIBILITY_VERSION";
-    public static final int CURRENT_COMPATIBILITY_VERSION = 9;
+    public static final int CURRENT_COMPATIBILITY_VERSION = 10;
     public static final boolean DEBUG_COMPATIBILITY = false;
     private static final String TAG = "Compatibility";
 
@@ -141,6 +141,12 @@ public abstract class Compat {
                                 fromFile.delete();
                     case (9):
                         sharedPreferenceEditor.remove(Settings.KEY_EXCLUDED_SET+App.Type.TYPE_PANEL);
+                    case (10):
+                        // Resolved types are now stored in the AppIndex
+                        for (App.Type type : App.Type.values())
+                            sharedPreferenceEditor
+                                    .remove(Settings.KEY_INCLUDED_SET + type)
+                                    .remove(Settings.KEY_EXCLUDED_SET + type);
                 }
             }
             Log.i(TAG, String.format("Settings Updated from v%s to v%s (Settings versions are not the same as app versions)",
@@ -184,9 +190,13 @@ public abstract class Compat {
         SettingsManager.setAppGroupMap(updatedAppList);
     }
     public static void recheckSupported(LauncherActivity launcherActivity) {
-        final Map<String, String> appGroupMap = SettingsManager.getAppGroupMap();
         List<ApplicationInfo> apps = launcherActivity.getPackageManager().getInstalledApplications(PackageManager.GET_META_DATA);
-        App.invalidateCaches(launcherActivity);
+        App.invalidateCaches();
+        updateSupported(launcherActivity, apps);
+    }
+    // Moves apps in or out of the unsupported group, without invalidating cached values first
+    public static void updateSupported(LauncherActivity launcherActivity, List<ApplicationInfo> apps) {
+        final Map<String, String> appGroupMap = SettingsManager.getAppGroupMap();
         for (ApplicationInfo app: apps) {
             final boolean supported = App.isSupported(app, launcherActivity);
             if(!supported) appGroupMap.put(app.packageName, Settings.UNSUPPORTED_GROUP);
@@ -212,10 +222,12 @@ public abstract class Compat {
         launcherActivity.launcherService.clearAdapterCachesAll();
 
         IconRepo.downloadExemptPackages.clear();
+        IconManifest.invalidate();
         launcherActivity.sharedPreferenceEditor.putStringSet(
                 SettingsManager.DONT_DOWNLOAD_ICONS, Collections.emptySet()).apply();
 
-        Icon.cachedIcons.clear();
+        IconCache.clear();
+        IconAtlas.clear();
 
         Icon.init(launcherActivity); // Recreate folders
         storeAndReload(launcherActivity);
@@ -234,11 +246,8 @@ public abstract class Compat {
     // Clears the categorization of apps & resets everything to selected default groups
     public static void clearSort(LauncherActivity launcherActivity) {
         Log.i(TAG, "App sort is being cleared");
-        SettingsManager.getAppGroupMap().clear();
-        Set<String> appGroupsSet = launcherActivity.sharedPreferences.getStringSet(Settings.KEY_GROUPS, null);
-        if (appGroupsSet == null) return;
-        SharedPreferences.Editor editor = launcherActivity.sharedPreferenceEditor;
-        for (String groupName : appGroupsSet) editor.remove(Settings.KEY_GROUP_APP_LIST+groupName);
+        SettingsManager.clearAppGroupMap();
+        if (launcherActivity.sharedPreferences.getStringSet(Settings.KEY_GROUPS, null) == null) return;
         storeAndReload(launcherActivity);
         launcherActivity.refreshAppDisplayListsAll();
 
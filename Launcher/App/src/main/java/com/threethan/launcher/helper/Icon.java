@@ -5,6 +5,7 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -21,22 +22,20 @@ import com.threethan.launcher.lib.StringLib;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /*
     Icon
 
     This abstract class provides helper functions for getting, setting and saving icons.
-    It uses IconRepo in order to request icons from the internet, if applicable
+    It uses IconRepo in order to request icons from the internet, if applicable,
+    and IconCache to keep decoded icons in memory (or IconAtlas, if atlas mode is on)
  */
 
 public abstract class Icon {
-    private static final int ICON_MAX_HEIGHT = 256;
+    static final int ICON_MAX_HEIGHT = 256;
     private static final int ICON_QUALITY = 90;
     public static final String ICON_CACHE_FOLDER = "/icon-cache";
     public static final String ICON_CUSTOM_FOLDER = "/icon-custom";
-    public static final Map<String, Drawable> cachedIcons = new ConcurrentHashMap<>();
     public static File iconCacheFileForPackage(LauncherActivity launcherActivity, String packageName) {
         return iconFileForPackage(launcherActivity, packageName, false);
     }
@@ -59,6 +58,8 @@ public abstract class Icon {
         boolean ignored1 = cacheDir.mkdir();
         File customDir = new File(launcherActivity.getApplicationInfo().dataDir + Icon.ICON_CUSTOM_FOLDER);
         boolean ignored2 = customDir.mkdir();
+        IconCache.init(launcherActivity);
+        IconAtlas.init(launcherActivity);
     }
 
     public static String cacheName(String packageName) {
@@ -66,90 +67,90 @@ public abstract class Icon {
         else return packageName;
     }
     public static void updateIcon(File iconFile, String packageName, ImageView imageView) {
-        try {
-            Drawable newIconDrawable = Drawable.createFromPath(iconFile.getAbsolutePath());
-            if (newIconDrawable != null) {
-                cachedIcons.put(cacheName(packageName), newIconDrawable); // Success
-                if (imageView != null) imageView.setImageDrawable(newIconDrawable);
-            }
-        } catch (Exception ignored) {
-            Log.w("Icon", "Error when loading icon drawable from path "+iconFile.getAbsolutePath());
+        final String key = cacheName(packageName);
+        final Bitmap bitmap = IconCache.reload(key, iconFile);
+        if (bitmap == null) {
+            Log.w("Icon", "Error when loading icon bitmap from path "+iconFile.getAbsolutePath());
+            return;
         }
+        // Only this icon's cell of the atlas is redrawn
+        IconAtlas.pack(key, bitmap);
+        if (imageView != null && IconLoader.isShowing(imageView, packageName))
+            imageView.setImageDrawable(new BitmapDrawable(imageView.getResources(), bitmap));
     }
     @Nullable
     public static Drawable loadIcon(LauncherActivity activity, ApplicationInfo app, ImageView imageView) {
+        final String key = cacheName(app.packageName);
         // Try to load from memory
-        if (cachedIcons.containsKey(cacheName(app.packageName))) return cachedIcons.get(cacheName(app.packageName));
+        final Drawable packed = IconAtlas.getDrawable(key);
+        if (packed != null) return packed;
+        Bitmap bitmap = IconCache.getIfPresent(key);
+        if (bitmap != null) return new BitmapDrawable(activity.getResources(), bitmap);
 
-        Drawable appIcon = null;
-
-        // Try to load from custom icon file
         final File iconCustomFile = iconCustomFileForPackage(activity, app.packageName);
-        if (iconCustomFile.exists()) {
-            updateIcon(iconCustomFile, app.packageName, null);
-            appIcon = Drawable.createFromPath(iconCustomFile.getAbsolutePath());
-            if (appIcon != null) return appIcon; // No need to download if we have a custom icon
-        }
-        // Try to load from cached icon file
         final File iconCacheFile = iconCacheFileForPackage(activity, app.packageName);
-        if (iconCacheFile.exists()) {
-            updateIcon(iconCacheFile, app.packageName, null);
-            appIcon = Drawable.createFromPath(iconCacheFile.getAbsolutePath());
-        }
+        bitmap = IconCache.get(key, () -> decodeIcon(activity, app, iconCustomFile, iconCacheFile));
 
-        if (appIcon == null) {
-            // Try to load from package manager
-            if (cachedIcons.containsKey(cacheName(app.packageName)))
-                appIcon = cachedIcons.get(cacheName(app.packageName));
-            else try {
-                PackageManager packageManager = activity.getPackageManager();
-                Resources resources = packageManager.getResourcesForApplication(app.packageName);
-
-                // Check Icon
-                int iconId = app.icon;
-                // Check AndroidTV banner
-                if (app.banner != 0 && App.isBanner(activity, app)) iconId = app.banner;
-
-                if (iconId == 0) iconId = android.R.drawable.sym_def_app_icon;
-                appIcon = ResourcesCompat.getDrawableForDensity(resources, iconId,
-                        DisplayMetrics.DENSITY_XXXHIGH, null);
-
-                // Saves the drawable to a webp,
-                // which is faster to load than trying to get the drawable every time
-                saveIconDrawable(activity, appIcon, app.packageName);
-            } catch (Exception ignored) {
-            } // Fails on web apps, possibly also on invalid packages
-        }
         // Attempt to download the icon for this app from an online repo
+        // No need to download if we have a custom icon
         // Done AFTER saving the drawable version to prevent a race condition)
-        IconRepo.check(activity, app, () -> updateIcon(iconCacheFile, app.packageName, imageView));
+        if (!iconCustomFile.exists())
+            IconRepo.check(activity, app, () -> updateIcon(iconCacheFile, app.packageName, imageView));
 
-        return appIcon; // May rarely be null
+        if (bitmap == null) return null; // May rarely be null
+        // In atlas mode, the icon is moved into its atlas shortly, along with any others loading now
+        IconAtlas.pack(key, bitmap);
+        return new BitmapDrawable(activity.getResources(), bitmap);
+    }
+    // Decodes an icon which isn't in memory, trying each source in order of priority
+    @Nullable
+    private static Bitmap decodeIcon(LauncherActivity activity, ApplicationInfo app,
+                                     File iconCustomFile, File iconCacheFile) {
+        // Try to load from custom icon file, then from cached icon file
+        Bitmap bitmap = IconCache.decodeFile(iconCustomFile);
+        if (bitmap == null) bitmap = IconCache.decodeFile(iconCacheFile);
+        if (bitmap != null) return bitmap;
+
+        // Try to load from package manager
+        try {
+            PackageManager packageManager = activity.getPackageManager();
+            Resources resources = packageManager.getResourcesForApplication(app.packageName);
+
+            // Check Icon
+            int iconId = app.icon;
+            // Check AndroidTV banner
+            if (app.banner != 0 && App.isBanner(activity, app)) iconId = app.banner;
+
+            if (iconId == 0) iconId = android.R.drawable.sym_def_app_icon;
+            Drawable appIcon = ResourcesCompat.getDrawableForDensity(resources, iconId,
+                    DisplayMetrics.DENSITY_XXXHIGH, null);
+            if (appIcon == null) return null;
+
+            // Saves the bitmap to a webp,
+            // which is faster to load than trying to get the drawable every time.
+            // It's drawn at its final size, rather than drawn in full and then scaled.
+            bitmap = IconNormalizer.rasterize(appIcon);
+            compressAndSaveBitmap(iconCacheFile, bitmap);
+            Log.i("Icon", "Saved drawable bitmap for "+app.packageName);
+        } catch (Exception ignored) {
+        } // Fails on web apps, possibly also on invalid packages
+        return bitmap;
     }
 
     public static void reloadIcon(LauncherActivity activity, ApplicationInfo app, ImageView downloadImageView) {
         final boolean ignored0 = iconCustomFileForPackage(activity, app.packageName).delete();
         final File iconFile = iconCacheFileForPackage(activity, app.packageName);
-        final boolean ignored1 = iconFile.delete();
+        // A downloaded icon is kept, since it will just be revalidated
+        if (!IconHttpClient.hasValidators(iconFile)) {
+            final boolean ignored1 = iconFile.delete();
+        }
+        IconCache.remove(cacheName(app.packageName));
+        IconAtlas.remove(cacheName(app.packageName));
         downloadImageView.setImageDrawable(loadIcon(activity, app, downloadImageView));
         IconRepo.download(activity, app, () -> updateIcon(iconFile, app.packageName, downloadImageView));
         Dialog.toast(activity.getString(R.string.refreshed_icon));
     }
 
-    protected static void saveIconDrawable(LauncherActivity activity, Drawable icon, String packageName) {
-        try {
-            Bitmap bitmap = ImageLib.bitmapFromDrawable(icon);
-            if (bitmap == null)
-                Log.i("Icon", "Failed to load drawable bitmap for "+packageName);
-            else {
-                compressAndSaveBitmap(iconCacheFileForPackage(activity, packageName), bitmap);
-                Log.i("Icon", "Saved drawable bitmap for "+packageName);
-            }
-        } catch (Exception e) {
-            Log.i("AbstractPlatform", "Exception while converting file " + packageName);
-            e.printStackTrace();
-        }
-    }
     public static void saveIconDrawableExternal(Activity activity, Drawable icon, String packageName) {
         try {
             Bitmap bitmap = ImageLib.bitmapFromDrawable(icon);
@@ -0,0 +1,564 @@
+package com.threethan.launcher.helper;
+
+import android.content.ComponentCallbacks2;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.launcher.LauncherActivity;
+import com.threethan.launcher.lib.FileLib;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    IconAtlas
+
+    This abstract class optionally packs icons into a few large bitmaps (atlases), one set for
+    square icons and one for banners, which are saved to disk in the icon-atlas folder.
+    Grid cells then draw their icon as a region of an atlas, so switching to a group of 100 apps
+    costs a handful of page decodes and texture uploads instead of 100 of each.
+
+    Icon files in icon-cache and icon-custom are still the source of truth; the atlas is rebuilt
+    from them incrementally. When one icon changes, only its cell is redrawn and only its page is
+    saved again. Published pages are never modified, so they can be drawn from any thread; a
+    changed page is copied, drawn to, then swapped in. Icons which load together are packed in
+    one batch, so a page is copied once per batch rather than once per icon.
+
+    The benchmark method compares decoding every icon file against decoding the atlas pages.
+ */
+
+public abstract class IconAtlas {
+    private static final String TAG = "IconAtlas";
+    private static final String ATLAS_FOLDER = "/icon-atlas";
+    private static final int MAGIC = 0x4C4C4154;
+    private static final int VERSION = 1;
+    private static final int PAGE_SIZE = 1024;
+    private static final long SAVE_DELAY_MS = 2000;
+    private static final long PACK_DELAY_MS = 100;
+    // Icons wider than this ratio go in the banner atlas
+    private static final float BANNER_RATIO = 1.3f;
+
+    private static final Sheet squareSheet = new Sheet("square", 204, 204);
+    private static final Sheet bannerSheet = new Sheet("banner", 340, 192);
+    private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private static final ScheduledExecutorService ioExecutor
+            = Executors.newSingleThreadScheduledExecutor();
+    private static volatile boolean enabled = false;
+    private static File folder;
+    private static boolean saveScheduled = false;
+    private static boolean packScheduled = false;
+    // Icons waiting to be packed, and icons being packed right now
+    private static final Map<String, Bitmap> pendingByKey = new ConcurrentHashMap<>();
+    private static final Set<String> packingKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static final AtomicInteger packs = new AtomicInteger();
+    private static final AtomicInteger repacks = new AtomicInteger();
+    private static final AtomicLong loadMs = new AtomicLong();
+    private static final AtomicLong saveMs = new AtomicLong();
+
+    // The region of a page which holds an icon
+    private static class Slot {
+        final int index;
+        final Rect bounds;
+        Slot(int index, Rect bounds) {
+            this.index = index;
+            this.bounds = bounds;
+        }
+    }
+
+    // Gives each icon of a batch, decoded only when it's about to be drawn
+    private interface BitmapSource {
+        @Nullable
+        Bitmap get(String key);
+    }
+
+    // A set of pages with fixed size cells
+    private static class Sheet {
+        final String name;
+        final int cellWidth;
+        final int cellHeight;
+        final int columns;
+        final int cellsPerPage;
+        final ConcurrentHashMap<String, Slot> slotByKey = new ConcurrentHashMap<>();
+        // Replaced, never modified, when a page changes
+        volatile Bitmap[] pages = new Bitmap[0];
+        // The rest are guarded by IconAtlas.class
+        final ArrayDeque<Integer> freeIndices = new ArrayDeque<>();
+        final Set<Integer> dirtyPages = new HashSet<>();
+        int nextIndex = 0;
+        boolean indexDirty = false;
+        boolean loaded = false;
+
+        Sheet(String name, int cellWidth, int cellHeight) {
+            this.name = name;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            this.columns = PAGE_SIZE / cellWidth;
+            this.cellsPerPage = columns * (PAGE_SIZE / cellHeight);
+        }
+        int allocate() {
+            final Integer free = freeIndices.poll();
+            return free != null ? free : nextIndex++;
+        }
+        Rect cellFor(int index) {
+            final int cell = index % cellsPerPage;
+            final int left = (cell % columns) * cellWidth;
+            final int top = (cell / columns) * cellHeight;
+            return new Rect(left, top, left + cellWidth, top + cellHeight);
+        }
+        File pageFile(int page) {
+            return new File(folder, name + "-" + page + ".png");
+        }
+        File indexFile() {
+            return new File(folder, name + ".idx");
+        }
+        void reset() {
+            slotByKey.clear();
+            pages = new Bitmap[0];
+            freeIndices.clear();
+            dirtyPages.clear();
+            nextIndex = 0;
+            indexDirty = false;
+        }
+    }
+
+    // Draws one icon from a page of an atlas. It follows its page as other cells are repacked,
+    // but keeps the page it was created with if its own cell is removed or repacked.
+    private static class AtlasDrawable extends Drawable {
+        private final Sheet sheet;
+        private final String key;
+        private final Slot slot;
+        private Bitmap page;
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        AtlasDrawable(Sheet sheet, String key, Slot slot, Bitmap page) {
+            this.sheet = sheet;
+            this.key = key;
+            this.slot = slot;
+            this.page = page;
+        }
+        @Override
+        public void draw(@NonNull Canvas canvas) {
+            final Bitmap[] pages = sheet.pages;
+            final int pageIndex = slot.index / sheet.cellsPerPage;
+            if (sheet.slotByKey.get(key) == slot && pageIndex < pages.length) page = pages[pageIndex];
+            canvas.drawBitmap(page, slot.bounds, getBounds(), paint);
+        }
+        @Override
+        public int getIntrinsicWidth() { return slot.bounds.width(); }
+        @Override
+        public int getIntrinsicHeight() { return slot.bounds.height(); }
+        @Override
+        public void setAlpha(int alpha) {
+            paint.setAlpha(alpha);
+            invalidateSelf();
+        }
+        @Override
+        public void setColorFilter(@Nullable ColorFilter colorFilter) {
+            paint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+        @Override
+        public int getOpacity() { return PixelFormat.TRANSLUCENT; }
+    }
+
+    public static void init(LauncherActivity launcherActivity) {
+        folder = new File(launcherActivity.getApplicationInfo().dataDir + ATLAS_FOLDER);
+        enabled = launcherActivity.sharedPreferences
+                .getBoolean(Settings.KEY_ICON_ATLAS, Settings.DEFAULT_ICON_ATLAS);
+        if (enabled) ioExecutor.execute(IconAtlas::ensureLoaded);
+    }
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    // Turns atlas mode on or off. Turning it on packs every icon which is already on disk,
+    // then benchmarks it. Turning it off deletes the atlases.
+    public static void setEnabled(LauncherActivity launcherActivity, boolean value) {
+        launcherActivity.sharedPreferenceEditor.putBoolean(Settings.KEY_ICON_ATLAS, value).apply();
+        enabled = value;
+        final Collection<ApplicationInfo> apps = Platform.installedApps == null
+                ? null : new HashSet<>(Platform.installedApps);
+        if (value && apps != null) ioExecutor.execute(() -> {
+            build(launcherActivity, apps);
+            benchmark(launcherActivity, apps);
+        });
+        else if (!value) clear();
+    }
+
+    // Gets an icon from the atlas, if it's been packed. Never touches the disk.
+    @Nullable
+    public static Drawable getDrawable(String key) {
+        // A cell which is about to be replaced would show the old icon
+        if (!enabled || pendingByKey.containsKey(key) || packingKeys.contains(key)) return null;
+        for (Sheet sheet : new Sheet[]{squareSheet, bannerSheet}) {
+            final Slot slot = sheet.slotByKey.get(key);
+            final Bitmap[] pages = sheet.pages;
+            final int page = slot == null ? 0 : slot.index / sheet.cellsPerPage;
+            if (slot != null && page < pages.length) {
+                hits.incrementAndGet();
+                return new AtlasDrawable(sheet, key, slot, pages[page]);
+            }
+        }
+        return null;
+    }
+    // Queues an icon to be packed into the atlas, replacing its old cell if it had one.
+    // Icons queued within a moment of each other are packed together, once the burst is over.
+    public static void pack(String key, Bitmap bitmap) {
+        if (!enabled) return;
+        pendingByKey.put(key, bitmap);
+        synchronized (IconAtlas.class) {
+            if (packScheduled) return;
+            packScheduled = true;
+        }
+        ioExecutor.schedule(IconAtlas::packPending, PACK_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+    private static void packPending() {
+        synchronized (IconAtlas.class) {
+            packScheduled = false;
+        }
+        final Map<String, Bitmap> taken = new HashMap<>();
+        packAll(new ArrayList<>(pendingByKey.keySet()), key -> {
+            final Bitmap bitmap = pendingByKey.remove(key);
+            if (bitmap != null) taken.put(key, bitmap);
+            return bitmap;
+        });
+        // Packed icons are drawn from the atlas from now on, so needn't be kept on their own
+        for (Map.Entry<String, Bitmap> entry : taken.entrySet()) {
+            final String key = entry.getKey();
+            if (squareSheet.slotByKey.containsKey(key) || bannerSheet.slotByKey.containsKey(key))
+                IconCache.remove(key, entry.getValue());
+        }
+    }
+    // Packs a batch of icons, copying each affected page only once.
+    // Only runs on ioExecutor, the one thread which changes pages, so pages are copied and drawn
+    // to outside the lock; it's held just to allocate cells and to publish the result. Each icon
+    // is decoded, drawn, then dropped before the next, so a batch holds pages rather than icons.
+    private static void packAll(Collection<String> keys, BitmapSource source) {
+        final Map<Sheet, Bitmap[]> basePages = new HashMap<>();
+        final Map<Sheet, Map<Integer, Bitmap>> workingPages = new HashMap<>();
+        final Map<Sheet, Map<String, Slot>> newSlots = new HashMap<>();
+        final Map<String, Slot> oldSlots = new HashMap<>();
+        for (String key : keys) {
+            packingKeys.add(key);
+            final Bitmap bitmap = source.get(key);
+            if (bitmap == null) {
+                packingKeys.remove(key);
+                continue;
+            }
+            final Sheet sheet = bitmap.getWidth() > bitmap.getHeight() * BANNER_RATIO
+                    ? bannerSheet : squareSheet;
+            final Sheet otherSheet = sheet == squareSheet ? bannerSheet : squareSheet;
+            final Slot oldSlot;
+            final int index;
+            synchronized (IconAtlas.class) {
+                ensureLoaded();
+                removeLocked(otherSheet, key); // In case the icon changed shape
+                oldSlot = sheet.slotByKey.get(key);
+                index = oldSlot != null ? oldSlot.index : sheet.allocate();
+                if (!basePages.containsKey(sheet)) basePages.put(sheet, sheet.pages);
+            }
+            final int page = index / sheet.cellsPerPage;
+            Map<Integer, Bitmap> working = workingPages.get(sheet);
+            if (working == null) {
+                working = new HashMap<>();
+                workingPages.put(sheet, working);
+                newSlots.put(sheet, new HashMap<>());
+            }
+            Bitmap target = working.get(page);
+            if (target == null) {
+                final Bitmap[] pages = basePages.get(sheet);
+                target = page < pages.length
+                        ? pages[page].copy(Bitmap.Config.ARGB_8888, true)
+                        : Bitmap.createBitmap(PAGE_SIZE, PAGE_SIZE, Bitmap.Config.ARGB_8888);
+                working.put(page, target);
+            }
+
+            // Clear the cell, then draw the icon as large as it fits, at its top left
+            final Rect cell = sheet.cellFor(index);
+            final Canvas canvas = new Canvas(target);
+            canvas.save();
+            canvas.clipRect(cell);
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            canvas.restore();
+            final float scale = Math.min(1f, Math.min(
+                    (float) sheet.cellWidth / bitmap.getWidth(),
+                    (float) sheet.cellHeight / bitmap.getHeight()));
+            final Rect bounds = new Rect(cell.left, cell.top,
+                    cell.left + Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    cell.top + Math.max(1, Math.round(bitmap.getHeight() * scale)));
+            canvas.drawBitmap(bitmap, null, bounds, FILTER_PAINT);
+
+            newSlots.get(sheet).put(key, new Slot(index, bounds));
+            oldSlots.put(key, oldSlot);
+        }
+        // Publish the changed pages, along with their new cells
+        synchronized (IconAtlas.class) {
+            for (Map.Entry<Sheet, Map<Integer, Bitmap>> entry : workingPages.entrySet()) {
+                final Sheet sheet = entry.getKey();
+                final Map<String, Slot> slots = newSlots.get(sheet);
+                // Reset while packing, so the cells no longer mean anything
+                if (sheet.pages != basePages.get(sheet)) {
+                    packingKeys.removeAll(slots.keySet());
+                    continue;
+                }
+                int pageCount = sheet.pages.length;
+                for (int page : entry.getValue().keySet()) pageCount = Math.max(pageCount, page + 1);
+                final Bitmap[] pages = Arrays.copyOf(sheet.pages, pageCount);
+                for (Map.Entry<Integer, Bitmap> pageEntry : entry.getValue().entrySet()) {
+                    pages[pageEntry.getKey()] = pageEntry.getValue();
+                    sheet.dirtyPages.add(pageEntry.getKey());
+                }
+                // Pages are allocated in order, so there are no gaps
+                sheet.pages = pages;
+
+                for (Map.Entry<String, Slot> slotEntry : slots.entrySet()) {
+                    final String key = slotEntry.getKey();
+                    final Slot oldSlot = oldSlots.get(key);
+                    if (!packingKeys.remove(key)) {
+                        // Removed while it was being drawn. An old cell was already freed.
+                        if (oldSlot == null) sheet.freeIndices.add(slotEntry.getValue().index);
+                        continue;
+                    }
+                    sheet.slotByKey.put(key, slotEntry.getValue());
+                    if (oldSlot != null) repacks.incrementAndGet();
+                    else packs.incrementAndGet();
+                }
+                sheet.indexDirty = true;
+            }
+            scheduleSave();
+        }
+    }
+
+    public static synchronized void remove(String key) {
+        pendingByKey.remove(key);
+        packingKeys.remove(key);
+        removeLocked(squareSheet, key);
+        removeLocked(bannerSheet, key);
+    }
+    private static void removeLocked(Sheet sheet, String key) {
+        final Slot slot = sheet.slotByKey.remove(key);
+        if (slot == null) return;
+        // The cell's pixels are left as they are, and overwritten when it's reused
+        sheet.freeIndices.add(slot.index);
+        sheet.indexDirty = true;
+        scheduleSave();
+    }
+    // Icons which are showing keep their pages until they're replaced
+    public static void clear() {
+        pendingByKey.clear();
+        ioExecutor.execute(() -> {
+            synchronized (IconAtlas.class) {
+                squareSheet.reset();
+                bannerSheet.reset();
+                if (folder != null) FileLib.delete(folder);
+            }
+        });
+    }
+    // Atlases are reloaded from disk when next needed, unless they have unsaved changes.
+    // As with IconCache, icons which are showing keep their pages.
+    public static synchronized void trimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return;
+        for (Sheet sheet : new Sheet[]{squareSheet, bannerSheet}) {
+            if (!sheet.loaded || sheet.indexDirty || !sheet.dirtyPages.isEmpty()) continue;
+            sheet.reset();
+            sheet.loaded = false;
+        }
+    }
+
+    // Loads the atlases from disk, if they aren't already
+    private static synchronized void ensureLoaded() {
+        if (folder == null) return;
+        for (Sheet sheet : new Sheet[]{squareSheet, bannerSheet}) {
+            if (sheet.loaded) continue;
+            sheet.loaded = true;
+            final long startedAt = SystemClock.uptimeMillis();
+            if (!loadSheet(sheet)) sheet.reset();
+            loadMs.addAndGet(SystemClock.uptimeMillis() - startedAt);
+        }
+    }
+    // Index file: magic, version, cell size, page count, then each key with its index and bounds
+    private static boolean loadSheet(Sheet sheet) {
+        final File indexFile = sheet.indexFile();
+        if (!indexFile.exists()) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(indexFile))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != sheet.cellWidth || in.readInt() != sheet.cellHeight) {
+                Log.i(TAG, "Discarding incompatible " + sheet.name + " atlas");
+                return false;
+            }
+            final int pageCount = in.readInt();
+            final Bitmap[] pages = new Bitmap[pageCount];
+            for (int page = 0; page < pageCount; page++) {
+                pages[page] = BitmapFactory.decodeFile(sheet.pageFile(page).getAbsolutePath());
+                if (pages[page] == null) {
+                    Log.w(TAG, "Missing page " + page + " of " + sheet.name + " atlas");
+                    return false;
+                }
+            }
+            final int count = in.readInt();
+            final Set<Integer> used = new TreeSet<>();
+            for (int i = 0; i < count; i++) {
+                final String key = in.readUTF();
+                final int index = in.readInt();
+                final int width = in.readShort();
+                final int height = in.readShort();
+                if (index / sheet.cellsPerPage >= pageCount) continue;
+                final Rect cell = sheet.cellFor(index);
+                sheet.slotByKey.put(key, new Slot(index,
+                        new Rect(cell.left, cell.top, cell.left + width, cell.top + height)));
+                used.add(index);
+            }
+            sheet.nextIndex = pageCount * sheet.cellsPerPage;
+            for (int index = 0; index < sheet.nextIndex; index++)
+                if (!used.contains(index)) sheet.freeIndices.add(index);
+            sheet.pages = pages;
+            Log.v(TAG, "Loaded " + sheet.name + " atlas with " + count + " icons on " + pageCount + " pages");
+            return true;
+        } catch (IOException | OutOfMemoryError e) {
+            Log.w(TAG, "Failed to load " + sheet.name + " atlas", e);
+            return false;
+        }
+    }
+
+    private static synchronized void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+        ioExecutor.schedule(IconAtlas::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+    // Writes changed pages, then the index, each to a temporary file which is renamed into place
+    private static void save() {
+        final long startedAt = SystemClock.uptimeMillis();
+        for (Sheet sheet : new Sheet[]{squareSheet, bannerSheet}) {
+            final Bitmap[] pages;
+            final Set<Integer> dirtyPages;
+            final Map<String, Slot> slots;
+            synchronized (IconAtlas.class) {
+                saveScheduled = false;
+                if (!sheet.indexDirty && sheet.dirtyPages.isEmpty()) continue;
+                pages = sheet.pages;
+                dirtyPages = new HashSet<>(sheet.dirtyPages);
+                slots = new HashMap<>(sheet.slotByKey);
+                sheet.dirtyPages.clear();
+                sheet.indexDirty = false;
+            }
+            if (!folder.exists() && !folder.mkdirs()) return;
+            // Published pages are never modified, so they're safe to encode outside the lock
+            for (int page : dirtyPages) {
+                final File tempFile = new File(sheet.pageFile(page).getAbsolutePath() + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                    pages[page].compress(Bitmap.CompressFormat.PNG, 100, out);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to save page " + page + " of " + sheet.name + " atlas");
+                    continue;
+                }
+                if (!tempFile.renameTo(sheet.pageFile(page)))
+                    Log.w(TAG, "Failed to replace page " + page + " of " + sheet.name + " atlas");
+            }
+            final File tempFile = new File(sheet.indexFile().getAbsolutePath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sheet.cellWidth);
+                out.writeInt(sheet.cellHeight);
+                out.writeInt(pages.length);
+                out.writeInt(slots.size());
+                for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().index);
+                    out.writeShort(entry.getValue().bounds.width());
+                    out.writeShort(entry.getValue().bounds.height());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to save " + sheet.name + " atlas index");
+                continue;
+            }
+            if (!tempFile.renameTo(sheet.indexFile()))
+                Log.w(TAG, "Failed to replace " + sheet.name + " atlas index");
+        }
+        saveMs.addAndGet(SystemClock.uptimeMillis() - startedAt);
+    }
+
+    // Packs every icon which is already on disk but not yet in the atlas
+    private static void build(LauncherActivity launcherActivity, Collection<ApplicationInfo> apps) {
+        final long startedAt = SystemClock.uptimeMillis();
+        ensureLoaded();
+        final Map<String, ApplicationInfo> appByKey = new HashMap<>();
+        for (ApplicationInfo app : apps) {
+            final String key = Icon.cacheName(app.packageName);
+            if (!squareSheet.slotByKey.containsKey(key) && !bannerSheet.slotByKey.containsKey(key))
+                appByKey.put(key, app);
+        }
+        packAll(appByKey.keySet(), key -> decodeIconFile(launcherActivity, appByKey.get(key)));
+        Log.v(TAG, "Packed " + appByKey.size() + " icons in "
+                + (SystemClock.uptimeMillis() - startedAt) + "ms");
+    }
+    @Nullable
+    private static Bitmap decodeIconFile(LauncherActivity launcherActivity, ApplicationInfo app) {
+        final File customFile = Icon.iconCustomFileForPackage(launcherActivity, app.packageName);
+        return IconCache.decodeFile(customFile.exists() ? customFile
+                : Icon.iconCacheFileForPackage(launcherActivity, app.packageName));
+    }
+
+    // Compares the cost of loading every icon from its own file against loading the atlas pages.
+    // Each decoded bitmap is also one texture upload when first drawn.
+    private static void benchmark(LauncherActivity launcherActivity, Collection<ApplicationInfo> apps) {
+        save(); // So the pages on disk are current
+        long startedAt = SystemClock.uptimeMillis();
+        int files = 0;
+        for (ApplicationInfo app : apps) if (decodeIconFile(launcherActivity, app) != null) files++;
+        final long filesMs = SystemClock.uptimeMillis() - startedAt;
+
+        startedAt = SystemClock.uptimeMillis();
+        int pages = 0;
+        for (Sheet sheet : new Sheet[]{squareSheet, bannerSheet}) {
+            for (int page = 0; page < sheet.pages.length; page++)
+                if (BitmapFactory.decodeFile(sheet.pageFile(page).getAbsolutePath()) != null) pages++;
+        }
+        final long pagesMs = SystemClock.uptimeMillis() - startedAt;
+
+        Log.i(TAG, String.format("Benchmark: %d icon files decoded in %dms, %d atlas pages decoded in %dms",
+                files, filesMs, pages, pagesMs));
+    }
+
+    public static void logStats() {
+        if (!enabled) return;
+        Log.v(TAG, String.format(
+                "%d square and %d banner icons on %d pages, %d hits, %d packed, %d repacked, %dms loading, %dms saving",
+                squareSheet.slotByKey.size(), bannerSheet.slotByKey.size(),
+                squareSheet.pages.length + bannerSheet.pages.length,
+                hits.get(), packs.get(), repacks.get(), loadMs.get(), saveMs.get()));
+    }
+}
@@ -0,0 +1,147 @@
+package com.threethan.launcher.helper;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    IconCache
+
+    This abstract class caches decoded icon bitmaps in memory, for use by the Icon class.
+
+    The memory tier is an LRU cache with a budget in bytes, sized from the device's memory class,
+    so memory use stays flat no matter how many apps are installed. Beneath it, icons are decoded
+    from the icon-custom and icon-cache folders (the disk tier), or loaded from the package manager.
+
+    If the same icon is requested while it's already being decoded, the second caller waits for
+    the first decode rather than starting another.
+ */
+
+public abstract class IconCache {
+    private static final String TAG = "IconCache";
+    private static final int MIN_BUDGET_BYTES = 8 * 1024 * 1024;
+    // Fraction of the app's memory class which may be used for icons
+    private static final int BUDGET_DIVISOR = 8;
+
+    private static LruCache<String, Bitmap> memoryCache;
+    private static final ConcurrentHashMap<String, FutureTask<Bitmap>> inFlight = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static final AtomicInteger misses = new AtomicInteger();
+    private static final AtomicInteger coalesced = new AtomicInteger();
+    private static final AtomicInteger evictions = new AtomicInteger();
+
+    public static synchronized void init(Context context) {
+        if (memoryCache != null) return;
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        final int budget = Math.max(MIN_BUDGET_BYTES,
+                activityManager.getMemoryClass() * 1024 * 1024 / BUDGET_DIVISOR);
+        memoryCache = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (evicted) evictions.incrementAndGet();
+            }
+        };
+        Log.v(TAG, "Memory budget is " + budget / 1024 + "KB");
+    }
+
+    @Nullable
+    public static Bitmap getIfPresent(String key) {
+        if (memoryCache == null) return null;
+        final Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) hits.incrementAndGet();
+        return bitmap;
+    }
+    // Gets an icon from memory, or loads it using the given loader if it isn't cached.
+    // Only one load runs per key at a time; concurrent callers share its result.
+    @Nullable
+    public static Bitmap get(String key, Callable<Bitmap> loader) {
+        Bitmap bitmap = getIfPresent(key);
+        if (bitmap != null) return bitmap;
+        misses.incrementAndGet();
+
+        final FutureTask<Bitmap> task = new FutureTask<>(loader);
+        final FutureTask<Bitmap> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+                bitmap = task.get();
+                if (bitmap != null) put(key, bitmap);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to load icon for " + key, e);
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            coalesced.incrementAndGet();
+            try {
+                bitmap = running.get();
+            } catch (Exception ignored) {} // Already logged by the loading thread
+        }
+        return bitmap;
+    }
+    public static void put(String key, Bitmap bitmap) {
+        if (memoryCache != null) memoryCache.put(key, bitmap);
+    }
+    // Decodes an icon file, replacing whatever was cached for the key
+    @Nullable
+    public static Bitmap reload(String key, File file) {
+        final Bitmap bitmap = decodeFile(file);
+        if (bitmap != null) put(key, bitmap);
+        return bitmap;
+    }
+    public static void remove(String key) {
+        if (memoryCache != null) memoryCache.remove(key);
+    }
+    // Removes an icon, unless it's been reloaded since
+    public static void remove(String key, Bitmap bitmap) {
+        if (memoryCache != null && memoryCache.get(key) == bitmap) memoryCache.remove(key);
+    }
+    public static void clear() {
+        if (memoryCache != null) memoryCache.evictAll();
+    }
+    // Called when the system is low on memory
+    public static void trimMemory(int level) {
+        if (memoryCache == null) return;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) memoryCache.evictAll();
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            memoryCache.trimToSize(memoryCache.maxSize() / 2);
+    }
+
+    // Disk tier
+    @Nullable
+    public static Bitmap decodeFile(File file) {
+        if (!file.exists()) return null;
+        try {
+            return BitmapFactory.decodeFile(file.getAbsolutePath());
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory when decoding " + file.getAbsolutePath());
+            clear();
+            return null;
+        }
+    }
+
+    public static void logStats() {
+        if (memoryCache == null) return;
+        Log.v(TAG, String.format("%d hits, %d misses, %d coalesced, %d evictions, %dKB of %dKB used",
+                hits.get(), misses.get(), coalesced.get(), evictions.get(),
+                memoryCache.size() / 1024, memoryCache.maxSize() / 1024));
+    }
+}
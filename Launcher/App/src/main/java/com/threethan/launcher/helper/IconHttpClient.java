@@ -0,0 +1,185 @@
+package com.threethan.launcher.helper;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/*
+    IconHttpClient
+
+    This abstract class handles HTTP requests for icons and icon indexes.
+
+    Connections use timeouts, and their streams are always read to the end and closed (rather than
+    disconnected) so that the underlying connection is kept alive and reused for the same host.
+    Each host allows only a few requests at once, so downloads are spread across hosts.
+
+    Downloaded files are written to a temporary file, checked, then atomically renamed into place.
+    Their ETag and Last-Modified headers are kept in a small file alongside, so that the next
+    request for the same file is conditional and costs almost nothing if it hasn't changed.
+ */
+
+public abstract class IconHttpClient {
+    private static final String TAG = "IconHttpClient";
+    private static final int MAX_REQUESTS_PER_HOST = 2;
+    private static final String VALIDATORS_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static int connectTimeoutMs = 10000;
+    private static int readTimeoutMs = 15000;
+    private static final ConcurrentHashMap<String, Semaphore> permitsByHost = new ConcurrentHashMap<>();
+
+    public enum Result { DOWNLOADED, NOT_MODIFIED, MISSING, FAILED }
+
+    // Checks (and may modify) a freshly downloaded temporary file before it replaces the real one
+    public interface FileCheck {
+        boolean accept(File tempFile);
+    }
+
+    public static void setTimeouts(int connectMs, int readMs) {
+        connectTimeoutMs = connectMs;
+        readTimeoutMs = readMs;
+    }
+
+    public static HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        connection.setUseCaches(false);
+        return connection;
+    }
+    // Finishes with a connection, leaving it open to be reused
+    public static void release(HttpURLConnection connection) {
+        try {
+            InputStream stream = connection.getResponseCode() < 400
+                    ? connection.getInputStream() : connection.getErrorStream();
+            if (stream != null) {
+                drain(stream);
+                stream.close();
+            }
+        } catch (IOException ignored) {}
+    }
+    private static void drain(InputStream stream) throws IOException {
+        byte[] buffer = new byte[8192];
+        //noinspection StatementWithEmptyBody
+        while (stream.read(buffer) > 0);
+    }
+
+    // Limits the number of requests which may be made to one host at a time
+    public static void acquireHost(String url) throws InterruptedException {
+        getPermits(url).acquire();
+    }
+    public static void releaseHost(String url) {
+        getPermits(url).release();
+    }
+    private static Semaphore getPermits(String url) {
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (IOException e) {
+            host = "";
+        }
+        Semaphore permits = permitsByHost.get(host);
+        if (permits == null) {
+            permitsByHost.putIfAbsent(host, new Semaphore(MAX_REQUESTS_PER_HOST, true));
+            permits = permitsByHost.get(host);
+        }
+        return permits;
+    }
+
+    // Downloads the url to the file, if it changed since the file was last downloaded from it
+    public static Result fetch(String url, File file, FileCheck check) {
+        final File validatorsFile = new File(file.getAbsolutePath() + VALIDATORS_SUFFIX);
+        final File tempFile = new File(file.getAbsolutePath() + TEMP_SUFFIX);
+        final String[] validators = file.exists() ? readValidators(validatorsFile, url) : null;
+
+        HttpURLConnection connection = null;
+        try {
+            acquireHost(url);
+        } catch (InterruptedException e) {
+            return Result.FAILED;
+        }
+        try {
+            connection = openConnection(url);
+            if (validators != null) {
+                if (validators[0] != null) connection.setRequestProperty("If-None-Match", validators[0]);
+                if (validators[1] != null) connection.setRequestProperty("If-Modified-Since", validators[1]);
+            }
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) return Result.NOT_MODIFIED;
+            if (code != HttpURLConnection.HTTP_OK) return Result.MISSING;
+
+            try (InputStream inputStream = connection.getInputStream();
+                 FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+                byte[] buffer = new byte[65536];
+                int length;
+                while ((length = inputStream.read(buffer)) > 0) outputStream.write(buffer, 0, length);
+            }
+            if (!check.accept(tempFile) || !tempFile.renameTo(file)) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                return Result.FAILED;
+            }
+            writeValidators(validatorsFile, url,
+                    connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+            return Result.DOWNLOADED;
+        } catch (IOException e) {
+            Log.i(TAG, "Failed to fetch " + url + ": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return Result.FAILED;
+        } finally {
+            if (connection != null) release(connection);
+            releaseHost(url);
+        }
+    }
+
+    // True if the file was downloaded with validators, so it can be cheaply revalidated
+    public static boolean hasValidators(File file) {
+        return file.exists() && new File(file.getAbsolutePath() + VALIDATORS_SUFFIX).exists();
+    }
+    // Validators file: the url, then the ETag, then Last-Modified (either may be empty)
+    @Nullable
+    private static String[] readValidators(File validatorsFile, String url) {
+        if (!validatorsFile.exists()) return null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(validatorsFile))) {
+            if (!url.equals(reader.readLine())) return null; // Validators are for another url
+            final String etag = reader.readLine();
+            final String lastModified = reader.readLine();
+            return new String[]{
+                    etag == null || etag.isEmpty() ? null : etag,
+                    lastModified == null || lastModified.isEmpty() ? null : lastModified};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    private static void writeValidators(File validatorsFile, String url,
+                                        @Nullable String etag, @Nullable String lastModified) {
+        if (etag == null && lastModified == null) {
+            //noinspection ResultOfMethodCallIgnored
+            validatorsFile.delete();
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(validatorsFile))) {
+            writer.write(url);
+            writer.newLine();
+            writer.write(etag == null ? "" : etag);
+            writer.newLine();
+            writer.write(lastModified == null ? "" : lastModified);
+            writer.newLine();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write validators for " + url);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.threethan.launcher.helper;
+
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.threethan.launcher.launcher.LauncherActivity;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    IconLoader
+
+    This abstract class schedules the loading of icons onto a fixed number of threads, so that
+    showing (or reloading) a large library can't start hundreds of threads at once.
+
+    Icons are decoded on a small pool, in order of priority: icons which are on screen go first,
+    followed by the rest in the order they were requested. When the launcher scrolls, icons which
+    came into view are moved to the front. If an image view is given a new icon before its last one
+    loaded, the old request is cancelled.
+
+    Downloads (from IconRepo) run on a separate pool, so that slow network requests never hold up
+    icons which are already on disk.
+ */
+
+public abstract class IconLoader {
+    private static final String TAG = "IconLoader";
+    private static final int DECODE_THREADS
+            = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int NETWORK_THREADS = 3;
+
+    private static final PriorityBlockingQueue<Runnable> decodeQueue = new PriorityBlockingQueue<>();
+    private static final ThreadPoolExecutor decodeExecutor = new ThreadPoolExecutor(
+            DECODE_THREADS, DECODE_THREADS, 0, TimeUnit.SECONDS, decodeQueue);
+    private static final ThreadPoolExecutor networkExecutor = new ThreadPoolExecutor(
+            NETWORK_THREADS, NETWORK_THREADS, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Only accessed from the main thread
+    private static final Map<ImageView, DecodeTask> taskByView = new WeakHashMap<>();
+    // The app each image view was last given, or "" once it's been recycled
+    private static final Map<ImageView, String> packageByView = new WeakHashMap<>();
+    private static final AtomicLong sequence = new AtomicLong();
+
+    // Metrics
+    private static final AtomicInteger decodesDone = new AtomicInteger();
+    private static final AtomicInteger decodesCancelled = new AtomicInteger();
+    private static final AtomicLong decodeWaitMs = new AtomicLong();
+    private static final AtomicLong decodeWaitMaxMs = new AtomicLong();
+    private static final AtomicLong decodeRunMs = new AtomicLong();
+    private static final AtomicInteger downloadsDone = new AtomicInteger();
+    private static final AtomicLong downloadWaitMs = new AtomicLong();
+    private static final AtomicLong downloadRunMs = new AtomicLong();
+
+    private static class DecodeTask implements Runnable, Comparable<DecodeTask> {
+        final long order = sequence.getAndIncrement();
+        final long queuedAt = SystemClock.uptimeMillis();
+        final LauncherActivity activity;
+        final ApplicationInfo app;
+        final WeakReference<ImageView> imageViewRef;
+        // Only changed while the task is out of the queue, since it affects the queue's order
+        boolean visible;
+        volatile boolean cancelled;
+
+        DecodeTask(LauncherActivity activity, ApplicationInfo app, ImageView imageView) {
+            this.activity = activity;
+            this.app = app;
+            this.imageViewRef = new WeakReference<>(imageView);
+        }
+        @Override
+        public int compareTo(DecodeTask other) {
+            if (visible != other.visible) return visible ? -1 : 1;
+            return Long.compare(order, other.order);
+        }
+        @Override
+        public void run() {
+            final ImageView imageView = imageViewRef.get();
+            if (cancelled || imageView == null) return;
+            final long startedAt = SystemClock.uptimeMillis();
+            recordWait(startedAt - queuedAt);
+
+            final Drawable appIcon = Icon.loadIcon(activity, app, imageView);
+
+            decodeRunMs.addAndGet(SystemClock.uptimeMillis() - startedAt);
+            decodesDone.incrementAndGet();
+            mainHandler.post(() -> {
+                if (cancelled || taskByView.get(imageView) != this) return;
+                taskByView.remove(imageView);
+                imageView.setImageDrawable(appIcon);
+            });
+        }
+    }
+
+    // Sets the icon of the app to the image view, right away if it's in memory
+    public static void load(LauncherActivity activity, ApplicationInfo app, ImageView imageView) {
+        cancel(imageView);
+        packageByView.put(imageView, app.packageName);
+        final Drawable packed = IconAtlas.getDrawable(Icon.cacheName(app.packageName));
+        if (packed != null) {
+            imageView.setImageDrawable(packed);
+            return;
+        }
+        final Bitmap cached = IconCache.getIfPresent(Icon.cacheName(app.packageName));
+        if (cached != null) {
+            imageView.setImageDrawable(new BitmapDrawable(imageView.getResources(), cached));
+            return;
+        }
+        DecodeTask task = new DecodeTask(activity, app, imageView);
+        task.visible = isOnScreen(imageView);
+        taskByView.put(imageView, task);
+        decodeExecutor.execute(task);
+    }
+    // Cancels the icon which was queued for the image view, if any
+    public static void cancel(ImageView imageView) {
+        if (packageByView.containsKey(imageView)) packageByView.put(imageView, "");
+        final DecodeTask task = taskByView.remove(imageView);
+        if (task == null) return;
+        task.cancelled = true;
+        if (decodeQueue.remove(task)) decodesCancelled.incrementAndGet();
+    }
+    // Checks that an image view still shows the given app, so a late download can't set its icon
+    // on a view which has since been reused. Views not loaded through here (e.g. dialogs) always do.
+    public static boolean isShowing(ImageView imageView, String packageName) {
+        final String shown = packageByView.get(imageView);
+        return shown == null || shown.equals(packageName);
+    }
+    // Moves queued icons which have come on screen to the front of the queue
+    public static void reprioritize() {
+        if (decodeQueue.isEmpty()) return;
+        for (DecodeTask task : new ArrayList<>(taskByView.values())) {
+            if (task.visible) continue;
+            final ImageView imageView = task.imageViewRef.get();
+            if (imageView == null || !isOnScreen(imageView)) continue;
+            if (decodeQueue.remove(task)) {
+                task.visible = true;
+                decodeQueue.add(task);
+            }
+        }
+    }
+    private static boolean isOnScreen(ImageView imageView) {
+        return imageView.isShown() && imageView.getGlobalVisibleRect(new Rect());
+    }
+
+    // Runs a download on the network pool
+    public static void download(Runnable runnable) {
+        final long queuedAt = SystemClock.uptimeMillis();
+        networkExecutor.execute(() -> {
+            final long startedAt = SystemClock.uptimeMillis();
+            downloadWaitMs.addAndGet(startedAt - queuedAt);
+            try {
+                runnable.run();
+            } finally {
+                downloadRunMs.addAndGet(SystemClock.uptimeMillis() - startedAt);
+                downloadsDone.incrementAndGet();
+            }
+        });
+    }
+
+    private static void recordWait(long waitMs) {
+        decodeWaitMs.addAndGet(waitMs);
+        long max;
+        do max = decodeWaitMaxMs.get();
+        while (waitMs > max && !decodeWaitMaxMs.compareAndSet(max, waitMs));
+    }
+    public static void logStats() {
+        final int decodes = Math.max(1, decodesDone.get());
+        final int downloads = Math.max(1, downloadsDone.get());
+        Log.v(TAG, String.format(
+                "Decode: %d queued, %d done, %d cancelled, %dms avg wait (%dms max), %dms avg run",
+                decodeQueue.size(), decodesDone.get(), decodesCancelled.get(),
+                decodeWaitMs.get() / decodes, decodeWaitMaxMs.get(), decodeRunMs.get() / decodes));
+        Log.v(TAG, String.format("Download: %d queued, %d done, %dms avg wait, %dms avg run",
+                networkExecutor.getQueue().size(), downloadsDone.get(),
+                downloadWaitMs.get() / downloads, downloadRunMs.get() / downloads));
+    }
+}
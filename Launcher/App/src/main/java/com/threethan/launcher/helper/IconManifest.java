@@ -0,0 +1,274 @@
+package com.threethan.launcher.helper;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    IconManifest
+
+    This abstract class resolves which icon repository has an icon for a given package, so that
+    IconRepo can fetch it with a single request instead of probing every repository in turn.
+
+    For each repository it downloads one index (the git tree, listing every file) and caches it on
+    disk along with its ETag, so it's only revalidated once a day and rarely downloaded in full.
+    If a repository's index can't be fetched, its icons are probed individually, as before. Very
+    large repositories give a truncated index; that's cached too, and only icons missing from it
+    are probed.
+
+    The hosts can be replaced with setHosts, e.g. to point at a local server serving a fake repo.
+ */
+
+public abstract class IconManifest {
+    private static final String TAG = "IconManifest";
+    private static final String MANIFEST_FOLDER = "/icon-manifest";
+    private static final long REFRESH_INTERVAL_MS = 24 * 60 * 60 * 1000;
+    private static final long RETRY_INTERVAL_MS = 10 * 60 * 1000;
+    private static String apiHost = "https://api.github.com";
+    private static String rawHost = "https://raw.githubusercontent.com";
+
+    // A directory of icons within a repository, each named after its package
+    public static class Source {
+        final String repository; // owner/name
+        final String branch;
+        final String directory;
+        final String extension;
+        public Source(String repository, String branch, String directory, String extension) {
+            this.repository = repository;
+            this.branch = branch;
+            this.directory = directory;
+            this.extension = extension;
+        }
+        String pathFor(String name) {
+            return directory + "/" + name + extension;
+        }
+        String urlFor(String name) {
+            return rawHost + "/" + repository + "/" + branch + "/" + pathFor(name);
+        }
+    }
+
+    // The files listed for a repository. If truncated, files which aren't listed may still exist.
+    static class Index {
+        final Set<String> paths;
+        final boolean truncated;
+        Index(Set<String> paths, boolean truncated) {
+            this.paths = paths;
+            this.truncated = truncated;
+        }
+    }
+
+    private static final Map<String, Index> indexByRepository = new ConcurrentHashMap<>();
+    private static final Map<String, Long> failedAtByRepository = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private static volatile long invalidatedAt = 0;
+
+    public static void setHosts(String newApiHost, String newRawHost) {
+        apiHost = newApiHost;
+        rawHost = newRawHost;
+        indexByRepository.clear();
+        failedAtByRepository.clear();
+    }
+
+    // Returns the URLs which may have an icon for the name, in order of the given sources.
+    // Stops at the first source whose index lists the icon, and skips sources whose index doesn't.
+    public static List<String> resolve(Context context, Source[] sources, String name) {
+        return resolve(new File(context.getApplicationInfo().dataDir + MANIFEST_FOLDER), sources, name);
+    }
+    static List<String> resolve(File dir, Source[] sources, String name) {
+        List<String> urls = new ArrayList<>();
+        for (Source source : sources) {
+            final Index index = getIndex(dir, source);
+            if (index == null) urls.add(source.urlFor(name)); // Unknown, so probe it
+            else if (index.paths.contains(source.pathFor(name))) {
+                urls.add(source.urlFor(name));
+                break;
+            } else if (index.truncated) urls.add(source.urlFor(name)); // May not be listed
+        }
+        return urls;
+    }
+
+    // Gets the index of a repository, from memory, disk or network, or null if it's unavailable
+    @Nullable
+    private static Index getIndex(File dir, Source source) {
+        final String repository = source.repository;
+        Index index = indexByRepository.get(repository);
+        if (index != null) return index;
+
+        Object lock = locks.get(repository);
+        if (lock == null) {
+            locks.putIfAbsent(repository, new Object());
+            lock = locks.get(repository);
+        }
+        synchronized (lock) {
+            // Another thread may have loaded it while we waited
+            index = indexByRepository.get(repository);
+            if (index != null) return index;
+            final Long failedAt = failedAtByRepository.get(repository);
+            if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_INTERVAL_MS)
+                return null;
+
+            index = loadIndex(dir, source);
+            if (index == null) failedAtByRepository.put(repository, System.currentTimeMillis());
+            else indexByRepository.put(repository, index);
+            return index;
+        }
+    }
+
+    @Nullable
+    private static Index loadIndex(File dir, Source source) {
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        final File file = new File(dir, source.repository.replace('/', '_') + ".txt");
+        final CachedIndex cached = readCached(file);
+        if (cached != null && cached.fetchedAt > invalidatedAt
+                && System.currentTimeMillis() - cached.fetchedAt < REFRESH_INTERVAL_MS)
+            return cached.index;
+
+        final String url = apiHost + "/repos/" + source.repository
+                + "/git/trees/" + source.branch + "?recursive=1";
+        try {
+            IconHttpClient.acquireHost(url);
+        } catch (InterruptedException e) {
+            return cached == null ? null : cached.index;
+        }
+        HttpURLConnection connection = null;
+        try {
+            connection = IconHttpClient.openConnection(url);
+            connection.setRequestProperty("Accept", "application/vnd.github+json");
+            if (cached != null && cached.etag != null)
+                connection.setRequestProperty("If-None-Match", cached.etag);
+
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                writeCached(file, cached.etag, cached.index);
+                Log.v(TAG, "Index for " + source.repository + " is unchanged");
+                return cached.index;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                Log.w(TAG, "Failed to fetch index for " + source.repository + ", code " + code);
+                return cached == null ? null : cached.index;
+            }
+            final Index index;
+            try (InputStream inputStream = connection.getInputStream()) {
+                index = parseTree(inputStream);
+            }
+            if (index.truncated)
+                Log.w(TAG, "Index for " + source.repository + " is truncated, unlisted icons will be probed");
+            writeCached(file, connection.getHeaderField("ETag"), index);
+            Log.v(TAG, "Fetched index for " + source.repository + " with " + index.paths.size() + " files");
+            return index;
+        } catch (IOException | IllegalStateException e) {
+            Log.w(TAG, "Failed to fetch index for " + source.repository, e);
+            return cached == null ? null : cached.index; // Stale is better than nothing
+        } finally {
+            if (connection != null) IconHttpClient.release(connection);
+            IconHttpClient.releaseHost(url);
+        }
+    }
+    // Reads the paths of files from a git tree response, which may be incomplete
+    private static Index parseTree(InputStream inputStream) throws IOException {
+        final Set<String> paths = new HashSet<>();
+        boolean truncated = false;
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String key = reader.nextName();
+                if (key.equals("truncated")) truncated = reader.nextBoolean();
+                else if (key.equals("tree")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String path = null;
+                        String type = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            final String field = reader.nextName();
+                            if (field.equals("path")) path = reader.nextString();
+                            else if (field.equals("type")) type = reader.nextString();
+                            else reader.skipValue();
+                        }
+                        reader.endObject();
+                        if (path != null && "blob".equals(type)) paths.add(path);
+                    }
+                    reader.endArray();
+                } else reader.skipValue();
+            }
+            reader.endObject();
+        }
+        return new Index(paths, truncated);
+    }
+
+    // Disk cache: the first line is the ETag, the second is when it was fetched (followed by
+    // " truncated" if the index is incomplete), then one path per line
+    private static final String TRUNCATED_SUFFIX = " truncated";
+    private static class CachedIndex {
+        String etag;
+        long fetchedAt;
+        Index index;
+    }
+    @Nullable
+    private static CachedIndex readCached(File file) {
+        if (!file.exists()) return null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            CachedIndex cached = new CachedIndex();
+            cached.etag = reader.readLine();
+            if (cached.etag != null && cached.etag.isEmpty()) cached.etag = null;
+            String line = reader.readLine();
+            if (line == null) return null;
+            final boolean truncated = line.endsWith(TRUNCATED_SUFFIX);
+            if (truncated) line = line.substring(0, line.length() - TRUNCATED_SUFFIX.length());
+            cached.fetchedAt = Long.parseLong(line);
+            final Set<String> paths = new HashSet<>();
+            while ((line = reader.readLine()) != null) paths.add(line);
+            cached.index = new Index(paths, truncated);
+            return cached;
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Failed to read cached index " + file.getName());
+            return null;
+        }
+    }
+    private static void writeCached(File file, @Nullable String etag, Index index) {
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+            writer.write(etag == null ? "" : etag);
+            writer.newLine();
+            writer.write(System.currentTimeMillis() + (index.truncated ? TRUNCATED_SUFFIX : ""));
+            writer.newLine();
+            for (String path : index.paths) {
+                writer.write(path);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache index " + file.getName());
+            return;
+        }
+        if (!tempFile.renameTo(file)) Log.w(TAG, "Failed to replace cached index " + file.getName());
+    }
+
+    // Makes every index be revalidated the next time it's used, e.g. when icons are cleared
+    public static void invalidate() {
+        invalidatedAt = System.currentTimeMillis();
+        indexByRepository.clear();
+        failedAtByRepository.clear();
+    }
+}
@@ -0,0 +1,127 @@
+package com.threethan.launcher.helper;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    IconNormalizer
+
+    This abstract class turns downloaded images and package manager drawables into icon files which
+    are no taller than Icon.ICON_MAX_HEIGHT, doing as little work as possible.
+
+    Downloaded images which are already small enough, in a format we can decode, are kept exactly
+    as downloaded. Larger images are downsampled while decoding, rather than decoded in full and
+    then scaled, and drawables are drawn straight to a bitmap of the final size.
+
+    It counts files kept, re-encoded and rejected, bytes in and out, and time spent, so the savings
+    can be measured.
+ */
+
+public abstract class IconNormalizer {
+    private static final String TAG = "IconNormalizer";
+    private static final Set<String> KEEPABLE_TYPES
+            = new HashSet<>(Arrays.asList("image/webp", "image/png", "image/jpeg"));
+
+    private static final AtomicInteger kept = new AtomicInteger();
+    private static final AtomicInteger encoded = new AtomicInteger();
+    private static final AtomicInteger rejected = new AtomicInteger();
+    private static final AtomicInteger rasterized = new AtomicInteger();
+    private static final AtomicLong bytesIn = new AtomicLong();
+    private static final AtomicLong bytesOut = new AtomicLong();
+    private static final AtomicLong timeMs = new AtomicLong();
+
+    // Makes a downloaded image file fit as an icon, in place. Returns false if it isn't an image.
+    public static boolean normalizeFile(File file) {
+        final long startedAt = SystemClock.uptimeMillis();
+        final long sizeIn = file.length();
+        try {
+            final String path = file.getAbsolutePath();
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                Log.i(TAG, "Failed to validate image file: " + path);
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (bounds.outHeight <= Icon.ICON_MAX_HEIGHT && KEEPABLE_TYPES.contains(bounds.outMimeType)) {
+                kept.incrementAndGet();
+                bytesIn.addAndGet(sizeIn);
+                bytesOut.addAndGet(sizeIn);
+                return true;
+            }
+
+            final Bitmap bitmap = decodeSampled(path, bounds.outHeight);
+            if (bitmap == null) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            Icon.compressAndSaveBitmap(file, bitmap);
+            encoded.incrementAndGet();
+            bytesIn.addAndGet(sizeIn);
+            bytesOut.addAndGet(file.length());
+            return true;
+        } finally {
+            timeMs.addAndGet(SystemClock.uptimeMillis() - startedAt);
+        }
+    }
+    // Decodes an image at (or just above) the max height, without decoding it at full size first
+    @Nullable
+    private static Bitmap decodeSampled(String path, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int sampleSize = 1;
+        while (height / (sampleSize * 2) >= Icon.ICON_MAX_HEIGHT) sampleSize *= 2;
+        options.inSampleSize = sampleSize;
+        // The decoder scales the rest of the way, so no intermediate bitmap is needed
+        if (height / sampleSize > Icon.ICON_MAX_HEIGHT) {
+            options.inScaled = true;
+            options.inDensity = height / sampleSize;
+            options.inTargetDensity = Icon.ICON_MAX_HEIGHT;
+        }
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory when decoding " + path);
+            return null;
+        }
+    }
+
+    // Draws a drawable straight to a bitmap no taller than the max height
+    public static Bitmap rasterize(Drawable drawable) {
+        final long startedAt = SystemClock.uptimeMillis();
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) width = height = Icon.ICON_MAX_HEIGHT;
+        if (height > Icon.ICON_MAX_HEIGHT) {
+            width = Math.max(1, Math.round(width * (float) Icon.ICON_MAX_HEIGHT / height));
+            height = Icon.ICON_MAX_HEIGHT;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        rasterized.incrementAndGet();
+        timeMs.addAndGet(SystemClock.uptimeMillis() - startedAt);
+        return bitmap;
+    }
+
+    public static void logStats() {
+        Log.v(TAG, String.format(
+                "%d kept, %d re-encoded, %d rejected, %d rasterized, %dKB in, %dKB out, %dms",
+                kept.get(), encoded.get(), rejected.get(), rasterized.get(),
+                bytesIn.get() / 1024, bytesOut.get() / 1024, timeMs.get()));
+    }
+}
@@ -1,25 +1,19 @@
 package com.threethan.launcher.helper;
 
-import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.Log;
 
 import com.threethan.launcher.launcher.LauncherActivity;
-import com.threethan.launcher.lib.ImageLib;
 import com.threethan.launcher.lib.StringLib;
 import com.threethan.launcher.support.SettingsManager;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Objects;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,21 +26,21 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 
 public abstract class IconRepo {
-    // Repository URLs:
-    // Each URL will be tried in order: the first with a file matching the package name will be used
-    private static final String[] ICON_URLS_SQUARE = {
-            "https://raw.githubusercontent.com/threethan/QuestLauncherImages/main/icon/%s.jpg",
-            "https://raw.githubusercontent.com/veticia/binaries/main/icons/%s.png",
-            "https://raw.githubusercontent.com/basti564/LauncherIcons/main/oculus_square/%s.jpg",
-            "https://raw.githubusercontent.com/basti564/LauncherIcons/main/pico_square/%s.jpg",
-            "https://raw.githubusercontent.com/basti564/LauncherIcons/main/viveport_square/%s.jpg"
+    // Repository sources:
+    // Each source will be checked in order: the first with a file matching the package name will be used
+    private static final IconManifest.Source[] ICON_SOURCES_SQUARE = {
+            new IconManifest.Source("threethan/QuestLauncherImages", "main", "icon", ".jpg"),
+            new IconManifest.Source("veticia/binaries", "main", "icons", ".png"),
+            new IconManifest.Source("basti564/LauncherIcons", "main", "oculus_square", ".jpg"),
+            new IconManifest.Source("basti564/LauncherIcons", "main", "pico_square", ".jpg"),
+            new IconManifest.Source("basti564/LauncherIcons", "main", "viveport_square", ".jpg")
     };
-    private static final String[] ICON_URLS_BANNER = {
-            "https://raw.githubusercontent.com/threethan/QuestLauncherImages/main/banner/%s.jpg",
-            "https://raw.githubusercontent.com/veticia/binaries/main/banners/%s.png",
-            "https://raw.githubusercontent.com/basti564/LauncherIcons/main/oculus_landscape/%s.jpg",
-            "https://raw.githubusercontent.com/basti564/LauncherIcons/main/pico_landscape/%s.jpg",
-            "https://raw.githubusercontent.com/basti564/LauncherIcons/main/viveport_landscape/%s.jpg"
+    private static final IconManifest.Source[] ICON_SOURCES_BANNER = {
+            new IconManifest.Source("threethan/QuestLauncherImages", "main", "banner", ".jpg"),
+            new IconManifest.Source("veticia/binaries", "main", "banners", ".png"),
+            new IconManifest.Source("basti564/LauncherIcons", "main", "oculus_landscape", ".jpg"),
+            new IconManifest.Source("basti564/LauncherIcons", "main", "pico_landscape", ".jpg"),
+            new IconManifest.Source("basti564/LauncherIcons", "main", "viveport_landscape", ".jpg")
     };
     // Instead of matching a package name, websites match their TLD
     private static final String[] ICON_URLS_WEB = {
@@ -57,7 +51,8 @@ public abstract class IconRepo {
     // If a download finishes, regardless of whether an icon is found, the app will be added to this
     // list, and will not be downloaded again unless manually requested.
     protected static Set<String> downloadExemptPackages = Collections.synchronizedSet(new HashSet<>());
-    private static final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    // Callbacks waiting on each download which is in progress, so a package is only fetched once
+    private static final ConcurrentHashMap<String, List<Runnable>> callbacksByDownload = new ConcurrentHashMap<>();
 
     // Helper functions
     public static void check(final LauncherActivity activity, ApplicationInfo app, final Runnable callback) {
@@ -93,99 +88,66 @@ public abstract class IconRepo {
         final boolean isWide = App.isBanner(activity, app);
         final File iconFile = Icon.iconCacheFileForPackage(activity, pkgName);
 
-        new Thread(() -> {
-            Object lock = locks.putIfAbsent(pkgName, new Object());
-            if (lock == null) {
-                lock = locks.get(pkgName);
-            }
-            synchronized (Objects.requireNonNull(lock)) {
-                try {
-                    for (final String url : App.isWebsite(app) ? ICON_URLS_WEB : (isWide ? ICON_URLS_BANNER : ICON_URLS_SQUARE)) {
-                        final String urlTLD = App.isWebsite(app) ?
-                                StringLib.baseUrlWithScheme(pkgName) :
-                                pkgName.replace("://","").replace(PanelApp.packagePrefix, "");
-                        if (downloadIconFromUrl(activity, String.format(url, urlTLD), iconFile)) {
-                            activity.runOnUiThread(callback);
-                            break;
-                        }
+        // If this package is already downloading, just wait for that download
+        final List<Runnable> callbacks = Collections.synchronizedList(new ArrayList<>());
+        callbacks.add(callback);
+        final List<Runnable> existing = callbacksByDownload.putIfAbsent(pkgName, callbacks);
+        if (existing != null) {
+            existing.add(callback);
+            return;
+        }
+
+        IconLoader.download(() -> {
+            boolean success = false;
+            try {
+                final List<String> urls = new ArrayList<>();
+                if (App.isWebsite(app)) {
+                    final String urlTLD = StringLib.baseUrlWithScheme(pkgName);
+                    for (String url : ICON_URLS_WEB) urls.add(String.format(url, urlTLD));
+                } else {
+                    // Only repositories which list an icon for this package are requested
+                    final String name = pkgName.replace("://","").replace(PanelApp.packagePrefix, "");
+                    urls.addAll(IconManifest.resolve(activity,
+                            isWide ? ICON_SOURCES_BANNER : ICON_SOURCES_SQUARE, name));
+                }
+                for (final String url : urls) {
+                    if (downloadIconFromUrl(url, iconFile)) {
+                        success = true;
+                        break;
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } finally {
-                    // Set the icon to now download if we either successfully downloaded it, or the download tried and failed
-                    locks.remove(pkgName);
-                    // ..and if we have internet
-                    dontDownloadIconFor(activity, pkgName);
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                // Set the icon to now download if we either successfully downloaded it, or the download tried and failed
+                callbacksByDownload.remove(pkgName);
+                // ..and if we have internet
+                dontDownloadIconFor(activity, pkgName);
             }
-        }).start();
+            if (success) activity.runOnUiThread(() -> {
+                synchronized (callbacks) {
+                    for (Runnable waitingCallback : callbacks) waitingCallback.run();
+                }
+            });
+        });
     }
 
-    private static boolean downloadIconFromUrl(Context context, String url, File iconFile) {
-        try {
-            InputStream inputStream = new URL(url).openStream();
-            if (saveStream(context, inputStream, iconFile)) {
-                inputStream.close();
-                return true;
-            } else inputStream.close();
-        } catch (IOException ignored) {}
-        return false;
+    // Downloads an icon, or checks that the one we already downloaded from this url is current
+    private static boolean downloadIconFromUrl(String url, File iconFile) {
+        final IconHttpClient.Result result = IconHttpClient.fetch(url, iconFile,
+                IconRepo::prepareDownloadedFile);
+        return result == IconHttpClient.Result.DOWNLOADED || result == IconHttpClient.Result.NOT_MODIFIED;
     }
 
-    // Turns the downloaded bitmap into an actual file, and applies webp compression
-    private static boolean saveStream(Context context, InputStream inputStream, File outputFile) {
+    // Checks the downloaded image, and shrinks it if it's too large to use as is
+    private static boolean prepareDownloadedFile(File outputFile) {
         try {
-            DataInputStream dataInputStream = new DataInputStream(inputStream);
-
-            int length;
-            byte[] buffer = new byte[65536];
-            FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
-            while ((length = dataInputStream.read(buffer)) > 0) {
-                fileOutputStream.write(buffer, 0, length);
-            }
-            fileOutputStream.flush();
-            fileOutputStream.close();
-
-            if (!isImageFileComplete(context, outputFile)) {
-                Log.i("IconRepo", "Image file not complete" + outputFile.getAbsolutePath());
-                return false;
-            }
-
-            Bitmap bitmap = ImageLib.bitmapFromFile(context, outputFile);
-
-            if (bitmap != null) {
-                Icon.compressAndSaveBitmap(outputFile, bitmap);
-                return true;
-            }
-            return false;
-
+            return IconNormalizer.normalizeFile(outputFile);
         } catch (Exception e) {
             Log.i("AbstractPlatform", "Exception while converting file " + outputFile.getAbsolutePath());
             e.printStackTrace();
             return false;
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException ignored) {}
-            }
-        }
-    }
-
-    // This usually returns true, but may fail if the download was interrupted or corrupt
-    private static boolean isImageFileComplete(Context context, File imageFile) {
-        boolean success = false;
-        if (imageFile.length() > 0) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            if (ImageLib.bitmapFromFile(context, imageFile, options) == null) {
-                Log.i("IconRepo", "Failed to get valid bitmap from "+imageFile.getAbsolutePath());
-            }
-            success = (options.outWidth > 0 && options.outHeight > 0);
         }
-
-        if (!success) Log.e("AbstractPlatform", "Failed to validate image file: " + imageFile);
-        return success;
     }
 
     public static Boolean hasInternet = false;
@@ -208,10 +170,10 @@ public abstract class IconRepo {
     }
     private static boolean checkInternet() {
         try {
-            InputStream inputStream = new URL(TEST_URL).openStream();
-            if (inputStream == null) return false;
-            inputStream.close();
-            return true;
+            HttpURLConnection connection = IconHttpClient.openConnection(TEST_URL);
+            final boolean connected = connection.getResponseCode() > 0;
+            IconHttpClient.release(connection);
+            return connected;
         } catch (IOException e) {
             return false;
         }
@@ -47,6 +47,7 @@ public abstract class Launch {
             launcherActivity.reloadPackages();
             return false;
         }
+        LaunchStats.noteLaunched(app.packageName);
 
         final App.Type appType = App.getType(launcherActivity, app);
         if (SettingsManager.
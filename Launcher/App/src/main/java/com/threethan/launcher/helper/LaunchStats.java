@@ -0,0 +1,179 @@
+package com.threethan.launcher.helper;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+    LaunchStats
+
+    This abstract class counts how often, and how recently, each app is launched, so that apps can
+    be sorted by use and search results ranked by it.
+
+    Each package has a launch count, the time it was last launched, and a time-decayed count
+    (which halves every week) used as its frecency. Launches only update memory; the stats are
+    written to a small binary file in the background a few seconds later, or when the launcher
+    stops, so launching never waits on I/O. Only the most used packages are kept, so the file
+    stays small however many apps are installed and removed over time.
+ */
+
+public abstract class LaunchStats {
+    private static final String TAG = "LaunchStats";
+    private static final String FILE_NAME = "launch-stats.bin";
+    private static final int MAGIC = 0x4C4C4C53; // "LLLS"
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 500;
+    private static final int MAX_KEY_LENGTH = 2048;
+    private static final long HALF_LIFE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final int SAVE_DELAY_S = 5;
+
+    // Order of these matches the sort mode setting
+    public enum SortMode { NAME, MOST_USED, RECENTLY_USED, FRECENCY }
+
+    private static class Stat {
+        int count;
+        long lastLaunched;
+        float decayed; // As of lastLaunched
+        float frecency(long now) {
+            final long age = Math.max(0, now - lastLaunched);
+            return (float) (decayed * Math.pow(0.5, (double) age / HALF_LIFE_MS));
+        }
+    }
+
+    private static final Map<String, Stat> stats = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService ioExecutor = Executors.newSingleThreadScheduledExecutor();
+    private static boolean loaded = false;
+    private static boolean dirty = false;
+    private static boolean saveScheduled = false;
+    private static File file;
+
+    // Reads the stats from disk, if they haven't already been read this process
+    public static synchronized void load(Context context) {
+        if (loaded) return;
+        loaded = true;
+        SearchIndex.setUsage(key -> getFrecency(key, System.currentTimeMillis()));
+        file = new File(context.getApplicationInfo().dataDir, FILE_NAME);
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.i(TAG, "Stats are from an incompatible version and will be reset");
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String packageName = in.readUTF();
+                Stat stat = new Stat();
+                stat.count = in.readInt();
+                stat.lastLaunched = in.readLong();
+                stat.decayed = in.readFloat();
+                stats.put(packageName, stat);
+            }
+            Log.v(TAG, "Loaded stats for " + stats.size() + " packages");
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read stats, they will be reset", e);
+            stats.clear();
+        }
+    }
+
+    public static void noteLaunched(String packageName) {
+        final long now = System.currentTimeMillis();
+        Stat stat = stats.get(packageName);
+        if (stat == null) {
+            stat = new Stat();
+            stats.put(packageName, stat);
+            if (stats.size() > MAX_ENTRIES) evictLeastUsed(now, packageName);
+        }
+        stat.decayed = stat.frecency(now) + 1;
+        stat.count++;
+        stat.lastLaunched = now;
+        scheduleSave();
+    }
+    private static void evictLeastUsed(long now, String keep) {
+        String leastUsed = null;
+        float leastFrecency = Float.MAX_VALUE;
+        for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+            if (entry.getKey().equals(keep)) continue;
+            final float frecency = entry.getValue().frecency(now);
+            if (frecency < leastFrecency) {
+                leastFrecency = frecency;
+                leastUsed = entry.getKey();
+            }
+        }
+        if (leastUsed != null) stats.remove(leastUsed);
+    }
+
+    public static int getCount(String packageName) {
+        final Stat stat = stats.get(packageName);
+        return stat == null ? 0 : stat.count;
+    }
+    public static long getLastLaunched(String packageName) {
+        final Stat stat = stats.get(packageName);
+        return stat == null ? 0 : stat.lastLaunched;
+    }
+    public static float getFrecency(String packageName, long now) {
+        final Stat stat = stats.get(packageName);
+        return stat == null ? 0 : stat.frecency(now);
+    }
+    // Gets the value apps are sorted by (descending) in the given mode
+    public static double getSortValue(SortMode mode, String packageName, long now) {
+        switch (mode) {
+            case MOST_USED: return getCount(packageName);
+            case RECENTLY_USED: return getLastLaunched(packageName);
+            case FRECENCY: return getFrecency(packageName, now);
+            default: return 0;
+        }
+    }
+
+    // Batches writes, so many launches in a row only write once
+    private static synchronized void scheduleSave() {
+        dirty = true;
+        if (saveScheduled || file == null) return;
+        saveScheduled = true;
+        ioExecutor.schedule(LaunchStats::saveIfDirty, SAVE_DELAY_S, TimeUnit.SECONDS);
+    }
+    // Writes the stats to disk in the background, if anything changed
+    public static synchronized void saveIfDirty() {
+        saveScheduled = false;
+        if (!dirty || file == null) return;
+        dirty = false;
+        final List<Map.Entry<String, Stat>> toWrite = new ArrayList<>();
+        for (Map.Entry<String, Stat> entry : stats.entrySet())
+            if (entry.getKey().length() <= MAX_KEY_LENGTH) toWrite.add(entry); // e.g. json shortcuts
+        ioExecutor.execute(() -> write(toWrite));
+    }
+    private static void write(List<Map.Entry<String, Stat>> toWrite) {
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(toWrite.size());
+            for (Map.Entry<String, Stat> entry : toWrite) {
+                final Stat stat = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(stat.count);
+                out.writeLong(stat.lastLaunched);
+                out.writeFloat(stat.decayed);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write stats", e);
+            return;
+        }
+        if (!tempFile.renameTo(file)) Log.w(TAG, "Failed to replace stats file");
+    }
+}
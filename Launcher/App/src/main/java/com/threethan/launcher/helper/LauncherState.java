@@ -0,0 +1,51 @@
+package com.threethan.launcher.helper;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/*
+    LauncherState
+
+    This abstract class passes changes to the state shown on app views (selection, running
+    websites and the top search result) to anything displaying them, usually an AppsAdapter.
+
+    Whatever changes the state publishes an event, naming the packages affected, and listeners
+    update only the views of those packages. Listeners are always called on the main thread.
+ */
+
+public abstract class LauncherState {
+    public enum Event { SELECTION, RUNNING, TOP_SEARCH_RESULT }
+
+    public interface Listener {
+        // A null set of package names means any package may have changed
+        void onStateChanged(Event event, @Nullable Set<String> packageNames);
+    }
+
+    private static final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public static void publish(Event event, String packageName) {
+        publish(event, Collections.singleton(packageName));
+    }
+    public static void publish(Event event, @Nullable Set<String> packageNames) {
+        if (listeners.isEmpty()) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) dispatch(event, packageNames);
+        else mainHandler.post(() -> dispatch(event, packageNames));
+    }
+    private static void dispatch(Event event, @Nullable Set<String> packageNames) {
+        for (Listener listener : listeners) listener.onStateChanged(event, packageNames);
+    }
+}
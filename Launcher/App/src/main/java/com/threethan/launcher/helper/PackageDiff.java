@@ -0,0 +1,105 @@
+package com.threethan.launcher.helper;
+
+import android.content.pm.PackageInfo;
+
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    PackageDiff
+
+    This abstract class keeps a snapshot of the installed packages, keyed by package name and
+    stamped with each package's lastUpdateTime and versionCode.
+
+    A fresh list of packages can be compared against the snapshot to find which packages were
+    added, removed or updated. This lets the launcher patch its app lists in place, rather than
+    reloading every package (with metadata) whenever anything changes.
+ */
+
+public abstract class PackageDiff {
+    private static Map<String, Stamp> snapshot = Collections.emptyMap();
+
+    // The parts of a package which, if changed, mean its ApplicationInfo must be reloaded
+    private static class Stamp {
+        final long lastUpdateTime;
+        final long versionCode;
+        Stamp(PackageInfo packageInfo) {
+            lastUpdateTime = packageInfo.lastUpdateTime;
+            versionCode = PackageInfoCompat.getLongVersionCode(packageInfo);
+        }
+        boolean matches(Stamp other) {
+            return other != null
+                    && lastUpdateTime == other.lastUpdateTime
+                    && versionCode == other.versionCode;
+        }
+    }
+
+    public static class Result {
+        public final Set<String> added = new HashSet<>();
+        public final Set<String> removed = new HashSet<>();
+        public final Set<String> updated = new HashSet<>();
+        private final Map<String, Stamp> newSnapshot;
+        private Result(Map<String, Stamp> newSnapshot) {
+            this.newSnapshot = newSnapshot;
+        }
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+        }
+        // Packages which need their ApplicationInfo (re)loaded
+        public Set<String> getChanged() {
+            Set<String> changed = new HashSet<>(added);
+            changed.addAll(updated);
+            return changed;
+        }
+        // Packages for which any cached data is now stale
+        public Set<String> getAffected() {
+            Set<String> affected = getChanged();
+            affected.addAll(removed);
+            return affected;
+        }
+        @Override
+        public String toString() {
+            return "+" + added.size() + " -" + removed.size() + " ~" + updated.size();
+        }
+    }
+
+    public static boolean hasSnapshot() {
+        return !snapshot.isEmpty();
+    }
+    // Replaces the snapshot outright, used after a full reload of packages
+    public static synchronized void setSnapshot(List<PackageInfo> packageInfos) {
+        snapshot = stampAll(packageInfos);
+    }
+    // Works out what changed between the snapshot and a fresh list of packages
+    // Does not modify the snapshot; call apply() once the change has been handled
+    public static synchronized Result diff(List<PackageInfo> packageInfos) {
+        final Map<String, Stamp> found = stampAll(packageInfos);
+        final Result result = new Result(found);
+
+        for (Map.Entry<String, Stamp> entry : found.entrySet()) {
+            final Stamp known = snapshot.get(entry.getKey());
+            if (known == null) result.added.add(entry.getKey());
+            else if (!known.matches(entry.getValue())) result.updated.add(entry.getKey());
+        }
+        for (String packageName : snapshot.keySet())
+            if (!found.containsKey(packageName)) result.removed.add(packageName);
+
+        return result;
+    }
+    public static synchronized void apply(Result result) {
+        snapshot = result.newSnapshot;
+    }
+
+    private static Map<String, Stamp> stampAll(List<PackageInfo> packageInfos) {
+        final Map<String, Stamp> stamps = new HashMap<>();
+        for (PackageInfo packageInfo : packageInfos)
+            stamps.put(packageInfo.packageName, new Stamp(packageInfo));
+        return stamps;
+    }
+}
@@ -14,6 +14,7 @@ import com.threethan.launcher.support.SettingsManager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -29,8 +30,25 @@ public abstract class Platform {
     public static List<ApplicationInfo> appListBanner;
     public static List<ApplicationInfo> appListSquare;
     public static int changeIndex = 0; //Used to track changes, specifically adding websites
-    public static void clearPackageLists(LauncherActivity launcherActivity) {
-        App.invalidateCaches(launcherActivity);
+    // Removes stale packages from the lists in place, then adds their reloaded versions
+    public static void patchPackageLists(LauncherActivity launcherActivity,
+                                         Set<String> stalePackageNames,
+                                         List<ApplicationInfo> changedApps) {
+        removePackages(installedApps, stalePackageNames);
+        removePackages(appListSquare, stalePackageNames);
+        removePackages(appListBanner, stalePackageNames);
+        for (ApplicationInfo app : changedApps) {
+            installedApps.add(app);
+            (App.isBanner(launcherActivity, app) ? appListBanner : appListSquare).add(app);
+        }
+    }
+    private static void removePackages(List<ApplicationInfo> apps, Set<String> packageNames) {
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (apps) {
+            Iterator<ApplicationInfo> iterator = apps.iterator();
+            while (iterator.hasNext())
+                if (packageNames.contains(iterator.next().packageName)) iterator.remove();
+        }
     }
     public static String findWebsite(SharedPreferences sharedPreferences, String url) {
         url = StringLib.fixUrl(url);
@@ -0,0 +1,88 @@
+package com.threethan.launcher.helper;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    SearchDispatcher
+
+    Runs searches off the main thread as the search text changes, coalescing quick edits.
+
+    Each change restarts a short window; only once the text has been still for that long is the
+    search prepared (on the main thread) and matched (on the search thread). Each dispatch gets a
+    new generation, and a search whose generation is no longer current is cancelled: it may stop
+    matching early, and its result is never applied. This way, typing quickly only applies the
+    result of the final text, once.
+ */
+
+public class SearchDispatcher {
+    private static final int COALESCE_MS = 75;
+
+    public interface Search {
+        // Called on the main thread once the text settles, to gather what matching needs
+        Matcher prepare(String text, Token token);
+    }
+    public interface Matcher {
+        // Called on the search thread. Returns what to run on the main thread to apply the
+        // result, or null if there's nothing to apply (e.g. if the token was cancelled)
+        @Nullable Runnable match();
+    }
+    public class Token {
+        private final int generation;
+        private Token(int generation) {
+            this.generation = generation;
+        }
+        public boolean isCancelled() {
+            return generation != SearchDispatcher.this.generation.get();
+        }
+    }
+
+    private final Executor executor;
+    private final Search search;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    @Nullable
+    private String pendingText;
+    private final Runnable fire = () -> {
+        final String text = pendingText;
+        pendingText = null;
+        if (text != null) start(text);
+    };
+
+    public SearchDispatcher(Executor executor, Search search) {
+        this.executor = executor;
+        this.search = search;
+    }
+
+    // Searches for the text once it stops changing. Call from the main thread.
+    public void dispatch(String text) {
+        generation.incrementAndGet(); // Anything in progress is now stale
+        pendingText = text;
+        handler.removeCallbacks(fire);
+        handler.postDelayed(fire, COALESCE_MS);
+    }
+    // Drops any pending or running search, e.g. when the apps shown are reset
+    public void cancel() {
+        generation.incrementAndGet();
+        pendingText = null;
+        handler.removeCallbacks(fire);
+    }
+
+    private void start(String text) {
+        final Token token = new Token(generation.incrementAndGet());
+        final Matcher matcher = search.prepare(text, token);
+        executor.execute(() -> {
+            if (token.isCancelled()) return;
+            final Runnable apply = matcher.match();
+            if (apply == null || token.isCancelled()) return;
+            handler.post(() -> {
+                if (!token.isCancelled()) apply.run();
+            });
+        });
+    }
+}
@@ -0,0 +1,312 @@
+package com.threethan.launcher.helper;
+
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.lib.StringLib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+    SearchIndex
+
+    An index of apps to search, built once each time the list of apps changes, rather than
+    re-sorting and re-normalising every label on every keystroke.
+
+    Each entry holds its normalised label, package name (key) and the positions where words in its
+    label start. Every three-character sequence in labels and keys has a posting list of the
+    entries containing it, so a query only checks entries from its rarest trigram's list.
+    When a query extends the previous one, only the previous matches are checked.
+
+    Matches are ranked by: label prefix, then word start, then anywhere in the label, then package
+    name only. Within those, starred apps come first, then frequently and recently launched apps
+    (see LaunchStats), then the original order. Items are generic, so the index can run outside of Android.
+
+    Fuzzy queries also match labels by acronym ("bs" for Beat Saber), by a word start within a
+    small edit distance ("saver"), or by subsequence ("bsaber"), ranked below substring matches.
+    Fuzzy queries check every entry, so the data they need is precomputed, and scoring them
+    doesn't allocate. Because of this, an index must not be queried by two threads at once.
+ */
+
+public class SearchIndex<T> {
+    private static final int SCORE_PREFIX = 3000;
+    private static final int SCORE_WORD_START = 2000;
+    private static final int SCORE_LABEL = 1000;
+    private static final int SCORE_KEY = 0;
+    private static final int SCORE_ACRONYM = 900;
+    private static final int SCORE_EDIT = 700; // Less 100 per edit
+    private static final int SCORE_SUBSEQUENCE_MAX = 499;
+    private static final int SCORE_STARRED = 500;
+    private static final int SCORE_USAGE_MAX = 499;
+    private static final int[] EMPTY = new int[0];
+
+    // Gives a usage score (e.g. a decayed launch count) for a key, or 0 if it's never been used
+    public interface Usage {
+        float scoreFor(String key);
+    }
+    @Nullable
+    private static Usage usage;
+
+    private final List<T> items;
+    private final String[] labels;
+    private final String[] keys;
+    private final String[] rawKeys;
+    private final boolean[] starred;
+    private final int[][] wordStarts;
+    private final String[] acronyms;
+    // Rows for edit distance, reused between queries
+    private int[] editRow = new int[16];
+    private int[] editPrevRow = new int[16];
+    private final Map<Long, int[]> postings;
+    private final int[] all;
+
+    // The matches of a query, in ranked order
+    public static class Result<T> {
+        public final String query;
+        public final boolean fuzzy;
+        private final SearchIndex<T> index;
+        private final int[] matches; // Sorted by entry, for narrowing
+        private final int[] ranked;
+        private Result(SearchIndex<T> index, String query, boolean fuzzy, int[] matches, int[] ranked) {
+            this.index = index;
+            this.query = query;
+            this.fuzzy = fuzzy;
+            this.matches = matches;
+            this.ranked = ranked;
+        }
+        public int size() {
+            return ranked.length;
+        }
+        // Gets the entry number (in the order items were given) of the nth best match
+        public int entryAt(int position) {
+            return ranked[position];
+        }
+        public T get(int position) {
+            return index.items.get(ranked[position]);
+        }
+    }
+
+    // Labels and keys must be in the same order as the items
+    public SearchIndex(List<T> items, List<String> labels, List<String> keys) {
+        final int size = items.size();
+        this.items = new ArrayList<>(items);
+        this.labels = new String[size];
+        this.keys = new String[size];
+        this.rawKeys = new String[size];
+        this.starred = new boolean[size];
+        this.wordStarts = new int[size][];
+        this.acronyms = new String[size];
+        this.all = new int[size];
+
+        final Map<Long, List<Integer>> building = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            final String label = labels.get(i) == null ? "" : labels.get(i);
+            starred[i] = StringLib.hasStar(label);
+            this.labels[i] = StringLib.forSort(label).trim();
+            rawKeys[i] = keys.get(i) == null ? "" : keys.get(i);
+            this.keys[i] = rawKeys[i].toLowerCase(Locale.ROOT);
+            wordStarts[i] = findWordStarts(this.labels[i]);
+            final StringBuilder acronym = new StringBuilder();
+            for (int start : wordStarts[i]) acronym.append(this.labels[i].charAt(start));
+            acronyms[i] = acronym.toString();
+            all[i] = i;
+            addTrigrams(building, this.labels[i], i);
+            addTrigrams(building, this.keys[i], i);
+        }
+        postings = new HashMap<>(building.size());
+        for (Map.Entry<Long, List<Integer>> entry : building.entrySet()) {
+            final List<Integer> list = entry.getValue();
+            final int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+            postings.put(entry.getKey(), array);
+        }
+    }
+    private static void addTrigrams(Map<Long, List<Integer>> building, String string, int entry) {
+        for (int i = 0; i + 3 <= string.length(); i++) {
+            final long trigram = trigramAt(string, i);
+            List<Integer> list = building.get(trigram);
+            if (list == null) {
+                list = new ArrayList<>();
+                building.put(trigram, list);
+            }
+            // Entries are added in order, so a duplicate can only be the last one
+            if (list.isEmpty() || list.get(list.size() - 1) != entry) list.add(entry);
+        }
+    }
+    private static long trigramAt(String string, int i) {
+        return ((long) string.charAt(i) << 32) | ((long) string.charAt(i+1) << 16) | string.charAt(i+2);
+    }
+    private static int[] findWordStarts(String label) {
+        int count = 0;
+        for (int i = 0; i < label.length(); i++) if (isWordStart(label, i)) count++;
+        final int[] starts = new int[count];
+        count = 0;
+        for (int i = 0; i < label.length(); i++) if (isWordStart(label, i)) starts[count++] = i;
+        return starts;
+    }
+    private static boolean isWordStart(String label, int i) {
+        if (!Character.isLetterOrDigit(label.charAt(i))) return false;
+        return i == 0 || !Character.isLetterOrDigit(label.charAt(i - 1));
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public static void setUsage(@Nullable Usage value) {
+        usage = value;
+    }
+
+    // Finds entries matching the text. If the previous result (from this index) was for a prefix
+    // of the text, only its matches are checked. Fuzzy matches can't be narrowed this way, since a
+    // longer query may be allowed more edits.
+    public Result<T> query(String text, @Nullable Result<T> previous, boolean fuzzy) {
+        final String query = StringLib.forSort(text);
+        if (query.isEmpty()) return new Result<>(this, query, fuzzy, all, all);
+
+        final int[] candidates;
+        if (fuzzy) candidates = all;
+        else if (previous != null && previous.index == this && !previous.fuzzy
+                && query.startsWith(previous.query))
+            candidates = previous.matches;
+        else candidates = query.length() >= 3 ? rarestPostings(query) : all;
+
+        final int[] matches = new int[candidates.length];
+        final int[] scores = new int[candidates.length];
+        int count = 0;
+        for (int entry : candidates) {
+            final int score = score(entry, query, fuzzy);
+            if (score < 0) continue;
+            matches[count] = entry;
+            scores[count] = score;
+            count++;
+        }
+
+        // Sort by score, then entry, by packing both into one long
+        final long[] sortKeys = new long[count];
+        for (int i = 0; i < count; i++)
+            sortKeys[i] = ((long) (Integer.MAX_VALUE - scores[i]) << 32) | matches[i];
+        Arrays.sort(sortKeys);
+        final int[] ranked = new int[count];
+        for (int i = 0; i < count; i++) ranked[i] = (int) sortKeys[i];
+
+        return new Result<>(this, query, fuzzy, Arrays.copyOf(matches, count), ranked);
+    }
+    private int[] rarestPostings(String query) {
+        int[] rarest = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            final int[] list = postings.get(trigramAt(query, i));
+            if (list == null) return EMPTY;
+            if (rarest == null || list.length < rarest.length) rarest = list;
+        }
+        return rarest == null ? all : rarest;
+    }
+    // Scores an entry for a query, or returns -1 if it doesn't match
+    private int score(int entry, String query, boolean fuzzy) {
+        final String label = labels[entry];
+        int score;
+        if (label.startsWith(query)) score = SCORE_PREFIX;
+        else if (startsAnyWord(entry, query)) score = SCORE_WORD_START;
+        else if (label.contains(query)) score = SCORE_LABEL;
+        else if (!fuzzy) {
+            if (keys[entry].contains(query)) score = SCORE_KEY;
+            else return -1;
+        } else if (query.length() >= 2 && acronyms[entry].startsWith(query)) score = SCORE_ACRONYM;
+        else {
+            final int edits = wordStartEdits(entry, query);
+            if (edits >= 0) score = SCORE_EDIT - 100 * edits;
+            else {
+                final int subsequence = subsequenceScore(label, query);
+                if (subsequence >= 0) score = subsequence;
+                else if (keys[entry].contains(query)) score = SCORE_KEY;
+                else return -1;
+            }
+        }
+
+        if (starred[entry]) score += SCORE_STARRED;
+        final Usage currentUsage = usage;
+        if (currentUsage != null) {
+            final float used = currentUsage.scoreFor(rawKeys[entry]);
+            if (used > 0) score += (int) (SCORE_USAGE_MAX * used / (used + 1));
+        }
+        return score;
+    }
+    private boolean startsAnyWord(int entry, String query) {
+        for (int start : wordStarts[entry])
+            if (labels[entry].startsWith(query, start)) return true;
+        return false;
+    }
+
+    // Gets the fewest edits to make the query the start of the label from any word start, or -1
+    // if it needs more than the query's length allows
+    private int wordStartEdits(int entry, String query) {
+        final int queryLength = query.length();
+        final int maxEdits = queryLength >= 6 ? 2 : queryLength >= 4 ? 1 : 0;
+        if (maxEdits == 0) return -1;
+        if (editRow.length <= queryLength) {
+            editRow = new int[queryLength * 2];
+            editPrevRow = new int[queryLength * 2];
+        }
+        final String label = labels[entry];
+        int best = -1;
+        for (int start : wordStarts[entry]) {
+            final int edits = prefixEdits(query, label, start, maxEdits);
+            if (edits >= 0 && (best < 0 || edits < best)) best = edits;
+            if (best == 1) break; // 0 would have been a word start match
+        }
+        return best;
+    }
+    // Levenshtein distance from the query to the closest prefix of the label from start,
+    // computed one label character at a time, stopping once every path exceeds maxEdits
+    private int prefixEdits(String query, String label, int start, int maxEdits) {
+        final int queryLength = query.length();
+        int[] prev = editPrevRow;
+        int[] row = editRow;
+        for (int i = 0; i <= queryLength; i++) prev[i] = i;
+        int best = prev[queryLength];
+        final int end = Math.min(label.length(), start + queryLength + maxEdits);
+        for (int j = start; j < end; j++) {
+            row[0] = j - start + 1;
+            int rowMin = row[0];
+            final char c = label.charAt(j);
+            for (int i = 1; i <= queryLength; i++) {
+                final int substitute = prev[i-1] + (query.charAt(i-1) == c ? 0 : 1);
+                row[i] = Math.min(substitute, Math.min(prev[i], row[i-1]) + 1);
+                if (row[i] < rowMin) rowMin = row[i];
+            }
+            best = Math.min(best, row[queryLength]);
+            if (rowMin > maxEdits) break;
+            final int[] swap = prev;
+            prev = row;
+            row = swap;
+        }
+        return best <= maxEdits ? best : -1;
+    }
+    // Scores the query's characters appearing in order in the label, or returns -1 if they don't.
+    // Spaces in the query are skipped. Characters at word starts or right after the previous match
+    // score higher, so "bsaber" ranks Beat Saber above labels where the letters are scattered.
+    private static int subsequenceScore(String label, String query) {
+        int position = 0;
+        int previous = -2;
+        int points = 0;
+        int matched = 0;
+        for (int i = 0; i < query.length(); i++) {
+            final char c = query.charAt(i);
+            if (c == ' ') continue;
+            position = label.indexOf(c, position);
+            if (position < 0) return -1;
+            if (position == previous + 1) points += 2;
+            else if (isWordStart(label, position)) points += 2;
+            else points -= 1;
+            previous = position++;
+            matched++;
+        }
+        if (matched == 0) return -1;
+        // Map from [-matched, 2*matched] onto [1, max]
+        return 1 + (SCORE_SUBSEQUENCE_MAX - 1) * (points + matched) / (3 * matched);
+    }
+}
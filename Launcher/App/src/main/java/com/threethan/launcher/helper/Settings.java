@@ -124,11 +124,32 @@ public abstract class Settings {
     public static final String KEY_WEBSITE_LIST = "prefWebAppNames";
     public static final String KEY_LAUNCH_SIZE = "prefLaunchSize";
     public static final String KEY_LAUNCH_BROWSER = "prefLaunchBrowser";
+    public static final String KEY_WEB_PROFILE = "prefWebProfile";
+    public static final int DEFAULT_WEB_PROFILE = 0; // WebProfile.STANDARD
+    public static final String KEY_WEB_OFFLINE = "prefWebOffline";
+    public static final boolean DEFAULT_WEB_OFFLINE = false;
 
     public static final String KEY_DEFAULT_LAUNCH_OUT = "KEY_DEFAULT_LAUNCH_OUT";
     public static final boolean DEFAULT_DEFAULT_LAUNCH_OUT = false;
     public static final String KEY_ADVANCED_SIZING = "KEY_ADVANCED_SIZING";
     public static final boolean DEFAULT_ADVANCED_SIZING = false;
+    public static final String KEY_ICON_ATLAS = "KEY_ICON_ATLAS";
+    public static final boolean DEFAULT_ICON_ATLAS = false;
+    public static final String KEY_SEARCH_FUZZY = "KEY_SEARCH_FUZZY";
+    public static final boolean DEFAULT_SEARCH_FUZZY = true;
+    public static final String KEY_WEB_PREWARM = "KEY_WEB_PREWARM";
+    public static final boolean DEFAULT_WEB_PREWARM = true;
+    public static final String KEY_WEB_PREWARM_SESSION = "KEY_WEB_PREWARM_SESSION";
+    public static final boolean DEFAULT_WEB_PREWARM_SESSION = false;
+    public static final String KEY_SORT_MODE = "KEY_SORT_MODE";
+    public static final int DEFAULT_SORT_MODE = 0; // LaunchStats.SortMode.NAME
+    // In order of LaunchStats.SortMode
+    public static final int[] sortModeStrings = {
+            R.string.sort_name,
+            R.string.sort_most_used,
+            R.string.sort_recently_used,
+            R.string.sort_frecency
+    };
     public static final int[] launchSizeStrings = {
             R.string.size_none,
             R.string.size_own,
@@ -9,6 +9,7 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
@@ -27,22 +28,32 @@ import android.view.ViewOutlineProvider;
 import android.widget.FrameLayout;
 import android.widget.GridView;
 import android.widget.ImageView;
-import android.widget.ScrollView;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.esafirm.imagepicker.features.ImagePicker;
 import com.esafirm.imagepicker.model.Image;
 import com.threethan.launcher.R;
 import com.threethan.launcher.adapter.AppsAdapter;
 import com.threethan.launcher.adapter.GroupsAdapter;
+import com.threethan.launcher.browser.OfflineCache;
+import com.threethan.launcher.browser.WebPrewarm;
 import com.threethan.launcher.helper.App;
 import com.threethan.launcher.helper.AppData;
+import com.threethan.launcher.helper.AppIndex;
 import com.threethan.launcher.helper.Compat;
 import com.threethan.launcher.helper.Dialog;
 import com.threethan.launcher.helper.Icon;
+import com.threethan.launcher.helper.IconAtlas;
+import com.threethan.launcher.helper.IconCache;
+import com.threethan.launcher.helper.IconLoader;
+import com.threethan.launcher.helper.IconNormalizer;
 import com.threethan.launcher.helper.IconRepo;
 import com.threethan.launcher.helper.Keyboard;
+import com.threethan.launcher.helper.LaunchStats;
+import com.threethan.launcher.helper.PackageDiff;
 import com.threethan.launcher.helper.Platform;
 import com.threethan.launcher.helper.Settings;
 import com.threethan.launcher.lib.ImageLib;
@@ -50,7 +61,7 @@ import com.threethan.launcher.support.SafeSharedPreferenceEditor;
 import com.threethan.launcher.support.SettingsDialog;
 import com.threethan.launcher.support.SettingsManager;
 import com.threethan.launcher.support.Updater;
-import com.threethan.launcher.view.DynamicHeightGridView;
+import com.threethan.launcher.view.AppsGridView;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -78,11 +89,8 @@ import eightbitlab.com.blurview.RenderScriptBlur;
 public class LauncherActivity extends Activity {
     public boolean darkMode = true;
     public boolean groupsEnabled = true;
-    DynamicHeightGridView appGridViewSquare;
-    DynamicHeightGridView appGridViewBanner;
-    ScrollView scrollView;
+    AppsGridView appsView;
     public ApplicationInfo currentTopSearchResult = null;
-    public Set<String> clearFocusPackageNames = new HashSet<>();
     GridView groupGridView;
     public SharedPreferences sharedPreferences;
     public SafeSharedPreferenceEditor sharedPreferenceEditor;
@@ -119,9 +127,24 @@ public class LauncherActivity extends Activity {
     @Override
     protected void onStop() {
         isKillable = true;
+        AppIndex.saveIfDirty();
+        LaunchStats.saveIfDirty();
+        IconCache.logStats();
+        IconLoader.logStats();
+        IconNormalizer.logStats();
+        IconAtlas.logStats();
+        WebPrewarm.logStats();
         super.onStop();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        IconCache.trimMemory(level);
+        WebPrewarm.trimMemory(level);
+        IconAtlas.trimMemory(level);
+    }
+
     @SuppressLint("UnspecifiedRegisterReceiverFlag") // Can't be fixed on this android API
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -154,15 +177,23 @@ public class LauncherActivity extends Activity {
         init();
         Compat.checkCompatibilityUpdate(this);
 
-        reloadPackages();
+        final List<ApplicationInfo> indexedApps = AppIndex.getApps();
+        if (indexedApps.isEmpty()) reloadPackages();
+        else {
+            // Show apps from the index right away, then check it against the package manager
+            Platform.installedApps = Collections.synchronizedList(indexedApps);
+            refreshAppDisplayListsAll();
+            new ReloadPackagesTask().execute(this);
+        }
+        seenPlatformChangeIndex = Platform.changeIndex; // Websites were just loaded too
         // Load Interface
         refreshBackground();
         refreshInterface();
 
         // Animate in the apps
-        ValueAnimator an = android.animation.ObjectAnimator.ofFloat(scrollView, "alpha", 1f);
+        ValueAnimator an = android.animation.ObjectAnimator.ofFloat(appsView, "alpha", 1f);
         an.setDuration(150);
-        scrollView.post(an::start);
+        appsView.post(an::start);
     }
     protected void startWithExistingActivity() {
         Log.v(TAG, "Starting with existing view");
@@ -174,11 +205,10 @@ public class LauncherActivity extends Activity {
         try {
             init();
 
-            scrollView.setAlpha(1f); // Just in case the app was closed before it faded in
+            appsView.setAlpha(1f); // Just in case the app was closed before it faded in
 
             // Take ownership of adapters (which are currently referencing a dead activity)
-            Objects.requireNonNull(getAdapterSquare()).setLauncherActivity(this);
-            Objects.requireNonNull(getAdapterBanner()).setLauncherActivity(this);
+            Objects.requireNonNull(getAppsAdapter()).setLauncherActivity(this);
             Objects.requireNonNull(getAdapterGroups()).setLauncherActivity(this);
             recheckPackages(); // Just check, don't force it
 
@@ -197,13 +227,21 @@ public class LauncherActivity extends Activity {
 
     protected void init() {
         sharedPreferenceEditor = new SafeSharedPreferenceEditor(sharedPreferences.edit());
+        AppIndex.load(this);
+        LaunchStats.load(this);
         settingsManager = SettingsManager.getInstance(this);
 
         mainView = rootView.findViewById(R.id.mainLayout);
         mainView.addOnLayoutChangeListener(this::onLayoutChaged);
-        appGridViewSquare = rootView.findViewById(R.id.appsViewSquare);
-        appGridViewBanner = rootView.findViewById(R.id.appsViewBanner);
-        scrollView = rootView.findViewById(R.id.mainScrollView);
+        appsView = rootView.findViewById(R.id.appsView);
+        appsView.setRecycledViewPool(launcherService.getAppViewPool());
+        appsView.clearOnScrollListeners();
+        appsView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                IconLoader.reprioritize();
+            }
+        });
         groupGridView = rootView.findViewById(R.id.groupsView);
 
         // Set logo button
@@ -236,7 +274,7 @@ public class LauncherActivity extends Activity {
             refreshInterface();
             return false;
         } else {
-            recheckPackages();
+            recheckPackagesIfChanged();
             return isEditing() && !Objects.equals(group, Settings.HIDDEN_GROUP);
         }
     }
@@ -294,29 +332,76 @@ public class LauncherActivity extends Activity {
 
         Dialog.setActivityContext(this);
 
-        post(this::recheckPackages);
-        postDelayed(this::recheckPackages, 1000);
+        post(this::recheckPackagesIfChanged);
+        postDelayed(this::recheckPackagesIfChanged, 1000);
 
         postDelayed(() -> new Updater(this).checkForAppUpdate(), 1000);
-
+        WebPrewarm.schedule(this);
+        OfflineCache.schedule(this);
     }
 
     public void reloadPackages() {
         if (sharedPreferenceEditor == null) return;
-
+        // Packages (rather than applications) also give us the stamps needed for PackageDiff
+        applyPackages(getPackageManager().getInstalledPackages(PackageManager.GET_META_DATA));
+    }
+    // Replaces the list of installed packages, only clearing cached values of stale packages
+    void applyPackages(List<PackageInfo> packageInfos) {
+        if (sharedPreferenceEditor == null) return;
         sharedPreferenceEditor.apply();
-        Platform.clearPackageLists(this);
-        PackageManager packageManager = getPackageManager();
-        Platform.installedApps = packageManager.getInstalledApplications(PackageManager.GET_META_DATA);
-        Platform.installedApps = Collections.synchronizedList(Platform.installedApps);
-        Compat.recheckSupported(this);
+
+        List<ApplicationInfo> apps = new ArrayList<>();
+        for (PackageInfo packageInfo : packageInfos)
+            if (packageInfo.applicationInfo != null) apps.add(packageInfo.applicationInfo);
+        App.invalidateCachesFor(AppIndex.validate(packageInfos));
+        Platform.installedApps = Collections.synchronizedList(apps);
+        PackageDiff.setSnapshot(packageInfos);
+        Compat.updateSupported(this, apps);
         refreshAppDisplayListsAll();
+        AppIndex.saveIfDirty();
     }
 
+    // Patches the lists of packages in place, given the diff and the metadata of the packages
+    // which were added or updated (see RecheckPackagesTask)
+    public void applyPackageDiff(PackageDiff.Result diff, List<PackageInfo> changedPackageInfos) {
+        if (sharedPreferenceEditor == null) return;
+        if (Platform.installedApps == null || Platform.appListSquare == null
+                || Platform.appListBanner == null) {
+            reloadPackages();
+            return;
+        }
+        sharedPreferenceEditor.apply();
+
+        List<PackageInfo> changedPackages = new ArrayList<>();
+        List<ApplicationInfo> changedApps = new ArrayList<>();
+        for (PackageInfo packageInfo : changedPackageInfos) {
+            if (packageInfo.applicationInfo == null) continue;
+            changedPackages.add(packageInfo);
+            changedApps.add(packageInfo.applicationInfo);
+        }
+
+        App.invalidateCachesFor(diff.getAffected());
+        AppIndex.update(diff.getAffected(), changedPackages);
+        Platform.patchPackageLists(this, diff.getAffected(), changedApps);
+        SettingsManager.removeAppsFromGroups(diff.removed);
+        PackageDiff.apply(diff);
+        AppIndex.saveIfDirty();
+
+        try {
+            launcherService.packagesChangedAll(diff);
+        } catch (Exception ignored) {
+            Log.w(TAG, "Failed to call packagesChanged on service!");
+        }
+    }
+    // Called on every launcher activity after the shared package lists have been patched
+    public void onPackagesChanged(PackageDiff.Result diff) {
+        if (getAppsAdapter() != null) getAppsAdapter().refreshViews(diff.getAffected());
+        refreshInterface();
+    }
+
+    // Diffs the installed packages against the last snapshot, off the main thread
     public void recheckPackages() {
-        int myPlatformChangeIndex = 0;
-        if (Platform.changeIndex > myPlatformChangeIndex) reloadPackages();
-        else try {
+        try {
             new RecheckPackagesTask().execute(this);
         } catch (Exception ignore) {
             reloadPackages();
@@ -324,6 +409,25 @@ public class LauncherActivity extends Activity {
         }
     }
 
+    // Skips the check if the launcher service is already watching for package changes.
+    // Websites added elsewhere (e.g. from the browser) aren't package events, so those still count.
+    private int seenPlatformChangeIndex = -1;
+    public void recheckPackagesIfChanged() {
+        final boolean websitesChanged = Platform.changeIndex != seenPlatformChangeIndex;
+        seenPlatformChangeIndex = Platform.changeIndex;
+        if (websitesChanged) {
+            // The lists of apps are rebuilt along with the websites, off the main thread
+            try {
+                new ReloadPackagesTask().execute(this);
+            } catch (Exception ignore) {
+                reloadPackages();
+            }
+            return;
+        }
+        if (launcherService != null && !launcherService.shouldRecheckPackages()) return;
+        recheckPackages();
+    }
+
     private String selectedPackageName;
     private ImageView selectedImageView;
     public void setSelectedIconImage(ImageView imageView, String packageName) {
@@ -335,14 +439,14 @@ public class LauncherActivity extends Activity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == Settings.PICK_ICON_CODE) {
-            if (getAdapterSquare() == null) return;
+            if (getAppsAdapter() == null) return;
             if (resultCode == RESULT_OK) {
                 for (Image image : ImagePicker.getImages(data)) {
                     IconRepo.dontDownloadIconFor(this, selectedPackageName);
-                    getAdapterSquare().onImageSelected(image.getPath(), selectedImageView);
+                    getAppsAdapter().onImageSelected(image.getPath(), selectedImageView);
                     break;
                 }
-            } else getAdapterSquare().onImageSelected(null, selectedImageView);
+            } else getAppsAdapter().onImageSelected(null, selectedImageView);
         } else if (requestCode == Settings.PICK_WALLPAPER_CODE) {
             if (resultCode == RESULT_OK) {
                 for (Image image : ImagePicker.getImages(data)) {
@@ -449,8 +553,7 @@ public class LauncherActivity extends Activity {
         boolean namesSquare = sharedPreferences.getBoolean(Settings.KEY_SHOW_NAMES_SQUARE, Settings.DEFAULT_SHOW_NAMES_SQUARE);
         boolean namesBanner = sharedPreferences.getBoolean(Settings.KEY_SHOW_NAMES_BANNER, Settings.DEFAULT_SHOW_NAMES_BANNER);
 
-        appGridViewSquare.setMargin(marginPx, namesSquare, dp(22));
-        appGridViewBanner.setMargin(marginPx, namesBanner, dp(22));
+        appsView.setMargin(marginPx, namesSquare, namesBanner, dp(22));
 
         setAdapters(namesSquare, namesBanner);
 
@@ -462,23 +565,16 @@ public class LauncherActivity extends Activity {
         post(this::updateToolBars);
     }
     protected void resetScroll() {
-        scrollView.scrollTo(0,0); // Reset scroll
-        scrollView.smoothScrollTo(0,0); // Cancel inertia
+        appsView.stopScroll(); // Cancel inertia
+        appsView.scrollToPosition(0); // Reset scroll
     }
     protected void setAdapters(boolean namesSquare, boolean namesBanner) {
-        if (getAdapterSquare() == null)
-            appGridViewSquare.setAdapter(
-                    new AppsAdapter(this, namesSquare, false, Platform.appListSquare));
+        if (getAppsAdapter() == null)
+            appsView.setAdapter(new AppsAdapter(this, namesSquare, namesBanner,
+                    Platform.appListSquare, Platform.appListBanner));
         else {
-            getAdapterSquare().updateAppList(this);
-            appGridViewSquare.setAdapter(appGridViewSquare.getAdapter());
-        }
-        if (getAdapterBanner() == null)
-            appGridViewBanner.setAdapter(
-                    new AppsAdapter(this, namesBanner, true, Platform.appListBanner));
-        else {
-            getAdapterBanner().updateAppList(this);
-            appGridViewBanner.setAdapter(appGridViewBanner.getAdapter());
+            getAppsAdapter().setShowNames(namesSquare, namesBanner);
+            getAppsAdapter().updateAppList(this);
         }
     }
 
@@ -511,8 +607,8 @@ public class LauncherActivity extends Activity {
 
         int targetSizePx = dp(sharedPreferences.getInt(Settings.KEY_SCALE, Settings.DEFAULT_SCALE));
         int estimatedWidth = prevViewWidth;
-        appGridViewSquare.setNumColumns((int) Math.round((double) estimatedWidth/targetSizePx));
-        appGridViewBanner.setNumColumns((int) Math.round((double) estimatedWidth/targetSizePx/2));
+        appsView.setColumns((int) Math.round((double) estimatedWidth/targetSizePx),
+                (int) Math.round((double) estimatedWidth/targetSizePx/2));
         groupGridView.post(() -> groupGridView.setVisibility(View.VISIBLE));
     }
 
@@ -528,18 +624,13 @@ public class LauncherActivity extends Activity {
         final int topAdd = groupsVisible ? dp(23 + 22) + groupHeight : 0;
         final int bottomAdd = groupsVisible ? getBottomBarHeight() : marginPx/2+getBottomBarHeight();
 
-        appGridViewBanner.setPadding(
-                marginPx,
-                Math.max(0,marginPx+(groupsVisible ? 0 : dp(22)))+topAdd,
+        appsView.setGridPadding(
                 marginPx,
-                0);
-        appGridViewSquare.setPadding(
-                marginPx,
-                dp(5), // Margin top is -5dp
+                Math.max(0,marginPx+(groupsVisible ? 0 : dp(22))-dp(22)+topAdd),
                 marginPx,
                 bottomAdd);
 
-        scrollView.setFadingEdgeLength(groupsVisible ? dp(23 + 22) + groupHeight : 0);
+        appsView.setFadingEdgeLength(groupsVisible ? dp(23 + 22) + groupHeight : 0);
     }
     // Accounts for the height of the edit mode footer when visible, actual function in child class
     protected int getBottomBarHeight() {
@@ -605,10 +696,8 @@ public class LauncherActivity extends Activity {
             }
         }
 
-        if (getAdapterSquare() != null)
-            getAdapterSquare().setFullAppList(Platform.appListSquare);
-        if (getAdapterBanner() != null)
-            getAdapterBanner().setFullAppList(Platform.appListBanner);
+        if (getAppsAdapter() != null)
+            getAppsAdapter().setFullAppLists(Platform.appListSquare, Platform.appListBanner);
     }
 
     // Utility functions
@@ -625,11 +714,8 @@ public class LauncherActivity extends Activity {
         return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dip, getResources().getDisplayMetrics());
     }
 
-    public @Nullable AppsAdapter getAdapterSquare() {
-        return (AppsAdapter) appGridViewSquare.getAdapter();
-    }
-    public @Nullable AppsAdapter getAdapterBanner() {
-        return (AppsAdapter) appGridViewBanner.getAdapter();
+    public @Nullable AppsAdapter getAppsAdapter() {
+        return (AppsAdapter) appsView.getAdapter();
     }
     public @Nullable GroupsAdapter getAdapterGroups() {
         return (GroupsAdapter) groupGridView.getAdapter();
@@ -679,8 +765,7 @@ public class LauncherActivity extends Activity {
     };
 
     public void clearAdapterCaches() {
-        if (getAdapterSquare() != null) getAdapterSquare().clearViewCache();
-        if (getAdapterBanner() != null) getAdapterBanner().clearViewCache();
+        if (getAppsAdapter() != null) getAppsAdapter().refreshViews();
     }
 
     // Edit mode stubs, to be overridden by child
@@ -9,7 +9,6 @@ import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Adapter;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -18,14 +17,14 @@ import androidx.annotation.Nullable;
 
 import com.threethan.launcher.R;
 import com.threethan.launcher.adapter.AppsAdapter;
-import com.threethan.launcher.adapter.GroupsAdapter;
 import com.threethan.launcher.helper.App;
 import com.threethan.launcher.helper.Dialog;
+import com.threethan.launcher.helper.LauncherState;
+import com.threethan.launcher.helper.PackageDiff;
 import com.threethan.launcher.helper.Platform;
 import com.threethan.launcher.helper.Settings;
 import com.threethan.launcher.lib.StringLib;
 import com.threethan.launcher.support.SettingsDialog;
-import com.threethan.launcher.support.SettingsManager;
 
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
@@ -90,17 +89,14 @@ public class LauncherActivityEditable extends LauncherActivity {
 
             selectionHintText.setOnClickListener((view) -> {
                 if (currentSelectedApps.isEmpty()) {
-                    final Adapter adapterSquare = getAdapterSquare();
-                    if (adapterSquare != null)
-                        for (int i=0; i<adapterSquare.getCount(); i++)
-                            currentSelectedApps.add(((ApplicationInfo) adapterSquare.getItem(i)).packageName);
-                    final Adapter adapterBanner = getAdapterBanner();
-                    if (adapterBanner != null)
-                        for (int i=0; i<adapterBanner.getCount(); i++)
-                            currentSelectedApps.add(((ApplicationInfo) adapterBanner.getItem(i)).packageName);
+                    final AppsAdapter appsAdapter = getAppsAdapter();
+                    if (appsAdapter != null)
+                        for (ApplicationInfo app : appsAdapter.getShownApps())
+                            currentSelectedApps.add(app.packageName);
+                    LauncherState.publish(LauncherState.Event.SELECTION, new HashSet<>(currentSelectedApps));
                     selectionHintText.setText(R.string.selection_hint_all);
                 } else {
-                    currentSelectedApps.clear();
+                    clearSelection();
                     selectionHintText.setText(R.string.selection_hint_cleared);
                 }
                 selectionHintText.postDelayed(this::updateSelectionHint, 2000);
@@ -108,17 +104,14 @@ public class LauncherActivityEditable extends LauncherActivity {
             });
             selectionHintText.setOnClickListener((view) -> {
                 if (currentSelectedApps.isEmpty()) {
-                    final Adapter adapterSquare = getAdapterSquare();
-                    if (adapterSquare != null)
-                        for (int i=0; i<adapterSquare.getCount(); i++)
-                            currentSelectedApps.add(((ApplicationInfo) adapterSquare.getItem(i)).packageName);
-                    final Adapter adapterBanner = getAdapterBanner();
-                    if (adapterBanner != null)
-                        for (int i=0; i<adapterBanner.getCount(); i++)
-                            currentSelectedApps.add(((ApplicationInfo) adapterBanner.getItem(i)).packageName);
+                    final AppsAdapter appsAdapter = getAppsAdapter();
+                    if (appsAdapter != null)
+                        for (ApplicationInfo app : appsAdapter.getShownApps())
+                            currentSelectedApps.add(app.packageName);
+                    LauncherState.publish(LauncherState.Event.SELECTION, new HashSet<>(currentSelectedApps));
                     selectionHintText.setText(R.string.selection_hint_all);
                 } else {
-                    currentSelectedApps.clear();
+                    clearSelection();
                     selectionHintText.setText(R.string.selection_hint_cleared);
                 }
                 selectionHintText.postDelayed(this::updateSelectionHint, 2000);
@@ -144,7 +137,7 @@ public class LauncherActivityEditable extends LauncherActivity {
         }, 200);
 
         if (!editMode) {
-            currentSelectedApps.clear();
+            clearSelection();
             updateSelectionHint();
         }
     }
@@ -166,10 +159,7 @@ public class LauncherActivityEditable extends LauncherActivity {
 
         // Move apps if any are selected
         if (!currentSelectedApps.isEmpty()) {
-            GroupsAdapter groupsAdapter = getAdapterGroups();
-            if (groupsAdapter != null)
-                for (String app : currentSelectedApps)
-                    groupsAdapter.setGroup(app, group);
+            settingsManager.moveAppsToGroup(currentSelectedApps, group);
 
             TextView selectionHintText = rootView.findViewById(R.id.selectionHintText);
             selectionHintText.setText( currentSelectedApps.size()==1 ?
@@ -179,9 +169,8 @@ public class LauncherActivityEditable extends LauncherActivity {
             rootView.findViewById(R.id.uninstallBulk).setVisibility(View.GONE);
             selectionHintText.postDelayed(this::updateSelectionHint, 2000);
 
-            currentSelectedApps.clear();
+            clearSelection();
 
-            SettingsManager.writeValues();
             refreshInterface();
             return false;
         } else return super.clickGroup(position);
@@ -191,7 +180,7 @@ public class LauncherActivityEditable extends LauncherActivity {
     @Override
     public void setEditMode(boolean value) {
         editMode = value;
-        if (!editMode) currentSelectedApps.clear();
+        if (!editMode) clearSelection();
         if (sharedPreferenceEditor == null) return;
         sharedPreferenceEditor.putBoolean(Settings.KEY_EDIT_MODE, editMode);
         final View focused = getCurrentFocus();
@@ -206,14 +195,22 @@ public class LauncherActivityEditable extends LauncherActivity {
     public boolean selectApp(String app) {
         if (currentSelectedApps.contains(app)) {
             currentSelectedApps.remove(app);
+            LauncherState.publish(LauncherState.Event.SELECTION, app);
             updateSelectionHint();
             return false;
         } else {
             currentSelectedApps.add(app);
+            LauncherState.publish(LauncherState.Event.SELECTION, app);
             updateSelectionHint();
             return true;
         }
     }
+    private void clearSelection() {
+        if (currentSelectedApps.isEmpty()) return;
+        final Set<String> cleared = new HashSet<>(currentSelectedApps);
+        currentSelectedApps.clear();
+        LauncherState.publish(LauncherState.Event.SELECTION, cleared);
+    }
 
     @Override
     protected void startWithExistingActivity() {
@@ -238,6 +235,13 @@ public class LauncherActivityEditable extends LauncherActivity {
         updateSelectionHint();
     }
 
+    @Override
+    public void onPackagesChanged(PackageDiff.Result diff) {
+        currentSelectedApps.removeAll(diff.removed);
+        updateSelectionHint();
+        super.onPackagesChanged(diff);
+    }
+
     @Override
     public boolean isSelected(String app) { return currentSelectedApps.contains(app); }
     @Override
@@ -18,9 +18,14 @@ import com.threethan.launcher.R;
 import com.threethan.launcher.adapter.AppsAdapter;
 import com.threethan.launcher.helper.Keyboard;
 import com.threethan.launcher.helper.Launch;
+import com.threethan.launcher.helper.LauncherState;
 import com.threethan.launcher.helper.Platform;
 import com.threethan.launcher.view.EditTextWatched;
 
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
 import eightbitlab.com.blurview.BlurView;
 import eightbitlab.com.blurview.RenderScriptBlur;
 
@@ -38,18 +43,11 @@ import eightbitlab.com.blurview.RenderScriptBlur;
 public class LauncherActivitySearchable extends LauncherActivityEditable {
     private boolean searching = false;
     protected void searchFor(String text) {
-        final AppsAdapter squareAdapter = getAdapterSquare();
-        final AppsAdapter bannerAdapter = getAdapterBanner();
-        if (squareAdapter != null) {
-            squareAdapter.filterBy(text);
-            appGridViewSquare.setAdapter(squareAdapter);
-        }
-        if (bannerAdapter != null) {
-            bannerAdapter.filterBy(text);
-            appGridViewBanner.setAdapter(bannerAdapter);
-        }
-        updateTopSearchResult();
-        resetScroll();
+        final AppsAdapter appsAdapter = getAppsAdapter();
+        if (appsAdapter != null) appsAdapter.filterBy(text, () -> {
+            updateTopSearchResult();
+            resetScroll();
+        });
     }
     ObjectAnimator alphaIn;
     ObjectAnimator alphaOut;
@@ -121,12 +119,11 @@ public class LauncherActivitySearchable extends LauncherActivityEditable {
 
 
             if (groupsEnabled) updatePadding();
-            View scrollInterior = findViewById(R.id.mainScrollInterior);
-            ValueAnimator padAnimator = ValueAnimator.ofInt(scrollInterior.getPaddingTop(), dp(64));
+            ValueAnimator padAnimator = ValueAnimator.ofInt(appsView.getExtraPaddingTop(), dp(64));
             padAnimator.setDuration(200);
             padAnimator.setInterpolator(new DecelerateInterpolator());
             padAnimator.addUpdateListener(animation -> {
-                scrollInterior.setPadding(0, (Integer) animation.getAnimatedValue(), 0,0);
+                appsView.setExtraPaddingTop((Integer) animation.getAnimatedValue());
                 resetScroll();
             });
             padAnimator.start();
@@ -158,12 +155,11 @@ public class LauncherActivitySearchable extends LauncherActivityEditable {
             topBar.setVisibility(View.VISIBLE);
             refreshAdapters();
 
-            View scrollInterior = findViewById(R.id.mainScrollInterior);
-            ValueAnimator padAnimator = ValueAnimator.ofInt(scrollInterior.getPaddingTop(), 0);
+            ValueAnimator padAnimator = ValueAnimator.ofInt(appsView.getExtraPaddingTop(), 0);
             padAnimator.setDuration(groupsEnabled ? 0 : 300);
             padAnimator.setInterpolator(new DecelerateInterpolator());
             padAnimator.addUpdateListener(animation ->
-                    scrollInterior.setPadding(0, (Integer) animation.getAnimatedValue(), 0,0));
+                    appsView.setExtraPaddingTop((Integer) animation.getAnimatedValue()));
 
             padAnimator.start();
 
@@ -181,9 +177,8 @@ public class LauncherActivitySearchable extends LauncherActivityEditable {
             topBar.setVisibility(!searching ? View.VISIBLE : View.GONE);
             searchBar.setAlpha(searching ? 1F : 0F);
             topBar.post(() -> topBar.setAlpha(1F)); // Prevent flicker on start
-            View scrollInterior = findViewById(R.id.mainScrollInterior);
-            scrollInterior.setPadding(0, searching ? dp(64):0, 0, 0);
-            scrollInterior.post(this::resetScroll);
+            appsView.setExtraPaddingTop(searching ? dp(64) : 0);
+            appsView.post(this::resetScroll);
         } catch (NullPointerException ignored) {}
     }
 
@@ -260,22 +255,25 @@ public class LauncherActivitySearchable extends LauncherActivityEditable {
         else if (searchText.getText().toString().isEmpty()) clearTopSearchResult();
         else {
             // Highlight top result
-            if (getAdapterBanner() != null && getAdapterBanner().getCount() > 0)
-                changeTopSearchResult((ApplicationInfo) getAdapterBanner().getItem(0));
-            else if (getAdapterSquare() != null && getAdapterSquare().getCount() > 0)
-                changeTopSearchResult((ApplicationInfo) getAdapterSquare().getItem(0));
+            final ApplicationInfo topApp = getAppsAdapter() == null ? null : getAppsAdapter().getTopApp();
+            if (topApp != null) changeTopSearchResult(topApp);
             else clearTopSearchResult();
         }
     }
     private void clearTopSearchResult() {
         if (currentTopSearchResult == null) return;
-        clearFocusPackageNames.add(currentTopSearchResult.packageName);
+        final String oldPackageName = currentTopSearchResult.packageName;
         currentTopSearchResult = null;
+        LauncherState.publish(LauncherState.Event.TOP_SEARCH_RESULT, oldPackageName);
     }
     private void changeTopSearchResult(ApplicationInfo val) {
-        if (currentTopSearchResult != null)
-            clearFocusPackageNames.add(currentTopSearchResult.packageName);
+        if (currentTopSearchResult != null
+                && Objects.equals(currentTopSearchResult.packageName, val.packageName)) return;
+        final Set<String> changed = new HashSet<>();
+        if (currentTopSearchResult != null) changed.add(currentTopSearchResult.packageName);
+        changed.add(val.packageName);
         currentTopSearchResult = val;
+        LauncherState.publish(LauncherState.Event.TOP_SEARCH_RESULT, changed);
     }
     @Override
     protected void postRefresh() {
@@ -2,17 +2,25 @@ package com.threethan.launcher.launcher;
 
 import android.app.Activity;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.content.pm.LauncherApps;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.UserHandle;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.threethan.launcher.R;
+import com.threethan.launcher.adapter.AppsAdapter;
 import com.threethan.launcher.browser.BrowserActivitySeparate;
+import com.threethan.launcher.helper.PackageDiff;
 import com.threethan.launcher.launcher.chainload.ChainLoadActivity;
 
 import java.lang.ref.WeakReference;
@@ -31,6 +39,12 @@ import java.util.concurrent.ConcurrentHashMap;
     meaning if the activity is finished and reopened, it may re-use the same preloaded view.
 
     It also provides a number of helper functions that enable this & help with multitasking
+
+    It holds the pool of recycled app views, which is shared by every activity's app grid.
+
+    It listens for package changes through LauncherApps, coalescing bursts of events (such as bulk
+    installs) into a single recheck. This means activities don't need to query the package manager
+    on every resume just in case something changed.
  */
 
 public class LauncherService extends Service {
@@ -43,6 +57,45 @@ public class LauncherService extends Service {
         }
     }
     private static final Map<LauncherActivity, Integer> activityByIndex = Collections.synchronizedMap(new HashMap<>());
+    private static final String TAG = "LauncherService";
+
+    // Enough to fill a screen of each type, so switching activities doesn't inflate new views
+    private static final int MAX_POOLED_SQUARE_VIEWS = 48;
+    private static final int MAX_POOLED_BANNER_VIEWS = 24;
+    private final RecyclerView.RecycledViewPool appViewPool = new RecyclerView.RecycledViewPool();
+
+    // Package change events
+    private static final int PACKAGE_EVENT_DEBOUNCE_MS = 750;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private LauncherApps launcherApps;
+    private boolean watchingPackages = false;
+    // Changes made before the service was created are unknown, so the first check must go through
+    private boolean packagesChanged = true;
+    private int packageEventCount = 0;
+    private int packageRecheckCount = 0;
+    private int avoidedRecheckCount = 0;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        appViewPool.setMaxRecycledViews(AppsAdapter.TYPE_SQUARE, MAX_POOLED_SQUARE_VIEWS);
+        appViewPool.setMaxRecycledViews(AppsAdapter.TYPE_BANNER, MAX_POOLED_BANNER_VIEWS);
+        launcherApps = (LauncherApps) getSystemService(Context.LAUNCHER_APPS_SERVICE);
+        try {
+            launcherApps.registerCallback(packageCallback, handler);
+            watchingPackages = true;
+        } catch (Exception e) {
+            // Activities will fall back to checking packages themselves
+            Log.w(TAG, "Failed to register package callback", e);
+        }
+    }
+    @Override
+    public void onDestroy() {
+        if (watchingPackages) launcherApps.unregisterCallback(packageCallback);
+        watchingPackages = false;
+        handler.removeCallbacks(dispatchPackageChanges);
+        super.onDestroy();
+    }
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -67,6 +120,9 @@ public class LauncherService extends Service {
         activityByIndex.put(activity, index);
         return view;
     }
+    public RecyclerView.RecycledViewPool getAppViewPool() {
+        return appViewPool;
+    }
     public boolean checkForExistingView() {
         return viewByIndex.containsKey(getNewActivityIndex());
     }
@@ -75,6 +131,53 @@ public class LauncherService extends Service {
         while(activityByIndex.containsValue(i)) i++;
         return i;
     }
+    // Package changes
+    private final LauncherApps.Callback packageCallback = new LauncherApps.Callback() {
+        @Override
+        public void onPackageRemoved(String packageName, UserHandle user) { onPackageEvent(); }
+        @Override
+        public void onPackageAdded(String packageName, UserHandle user) { onPackageEvent(); }
+        @Override
+        public void onPackageChanged(String packageName, UserHandle user) { onPackageEvent(); }
+        @Override
+        public void onPackagesAvailable(String[] packageNames, UserHandle user, boolean replacing) { onPackageEvent(); }
+        @Override
+        public void onPackagesUnavailable(String[] packageNames, UserHandle user, boolean replacing) { onPackageEvent(); }
+    };
+    // Restarts the debounce window, so a burst of events only causes one recheck
+    private void onPackageEvent() {
+        packageEventCount++;
+        packagesChanged = true;
+        handler.removeCallbacks(dispatchPackageChanges);
+        handler.postDelayed(dispatchPackageChanges, PACKAGE_EVENT_DEBOUNCE_MS);
+    }
+    // A single recheck is enough, since the resulting diff is pushed to every activity
+    private final Runnable dispatchPackageChanges = () -> {
+        LauncherActivity activity = null;
+        for (LauncherActivity candidate : activityByIndex.keySet())
+            if (candidate.sharedPreferenceEditor != null) activity = candidate;
+        if (activity == null) return; // Stays pending until an activity resumes
+
+        packagesChanged = false;
+        packageRecheckCount++;
+        activity.recheckPackages();
+        Log.v(TAG, String.format("Package events: %s, rechecks: %s, rechecks avoided: %s",
+                packageEventCount, packageRecheckCount, avoidedRecheckCount));
+    };
+    // Returns true if the caller still needs to check packages itself
+    public boolean shouldRecheckPackages() {
+        if (!watchingPackages) return true;
+        if (packagesChanged) {
+            handler.removeCallbacks(dispatchPackageChanges);
+            handler.post(dispatchPackageChanges);
+        } else {
+            avoidedRecheckCount++;
+            Log.v(TAG, String.format("Package events: %s, rechecks: %s, rechecks avoided: %s",
+                    packageEventCount, packageRecheckCount, avoidedRecheckCount));
+        }
+        return false;
+    }
+
     public void destroyed(LauncherActivity activity) {
         activityByIndex.remove(activity);
     }
@@ -98,6 +201,10 @@ public class LauncherService extends Service {
         for (LauncherActivity activity: activityByIndex.keySet()) activity.refreshAppDisplayLists();
         clearViewsWithoutActiveActivities();
     }
+    public void packagesChangedAll(PackageDiff.Result diff) {
+        for (LauncherActivity activity: activityByIndex.keySet()) activity.onPackagesChanged(diff);
+        clearViewsWithoutActiveActivities();
+    }
     public void refreshBackgroundAll() {
         for (LauncherActivity activity: activityByIndex.keySet()) activity.refreshBackground();
         clearViewsWithoutActiveActivities();
@@ -112,7 +219,7 @@ public class LauncherService extends Service {
         for (int index: viewByIndex.keySet())
             if (!activityByIndex.containsValue(index)) {
                 viewByIndex.remove(index);
-                Log.v("LauncherService", "Removed inactive view with index: "+index);
+                Log.v(TAG, "Removed inactive view with index: "+index);
             } else {
                 LauncherActivity activity = keyByValue(activityByIndex, index);
                 if (activity == null) continue;
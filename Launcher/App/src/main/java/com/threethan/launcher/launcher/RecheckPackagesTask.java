@@ -1,47 +1,66 @@
 package com.threethan.launcher.launcher;
 
-import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.AsyncTask;
+import android.util.Log;
 
+import com.threethan.launcher.helper.PackageDiff;
 import com.threethan.launcher.helper.Platform;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
 
 /*
     RecheckPackagesTask
 
-    This task checks a list of installed packages asynchronously, then check if it differs from
-    those known by the LauncherActivity which calls it. If so (package installed/uninstalled),
-    it tells the LauncherActivity to reload it's list of packages with metadata.
+    This task checks a list of installed packages asynchronously, then diffs it against the
+    snapshot kept by PackageDiff. If any packages were added, removed or updated, it fetches the
+    metadata of the changed ones, then tells the LauncherActivity which called it to patch its
+    lists of packages in place.
+
+    If there is no snapshot yet, it falls back to a full reload of packages with metadata.
  */
 
 /** @noinspection deprecation */
 class RecheckPackagesTask extends AsyncTask<Object, Void, Object> {
-    List<ApplicationInfo> foundApps;
+    PackageDiff.Result diff;
+    // Metadata for the added and updated packages, fetched here rather than on the main thread
+    final List<PackageInfo> changedPackages = new ArrayList<>();
     WeakReference<LauncherActivity> ownerRef;
-    boolean changeFound;
+    boolean needsFullReload;
 
     @Override
     protected Object doInBackground(Object[] objects) {
         LauncherActivity owner = (LauncherActivity) objects[0];
 
         PackageManager packageManager = owner.getPackageManager();
-        foundApps = packageManager.getInstalledApplications(0);
-
-        changeFound = Platform.installedApps == null ||
-                Platform.installedApps.size() != foundApps.size();
+        List<PackageInfo> foundPackages = packageManager.getInstalledPackages(0);
 
+        needsFullReload = Platform.installedApps == null || !PackageDiff.hasSnapshot();
+        if (!needsFullReload) {
+            diff = PackageDiff.diff(foundPackages);
+            for (String packageName : diff.getChanged()) {
+                try {
+                    changedPackages.add(packageManager.getPackageInfo(packageName, PackageManager.GET_META_DATA));
+                } catch (PackageManager.NameNotFoundException ignored) {} // Uninstalled since the diff
+            }
+        }
 
         ownerRef = new WeakReference<>(owner);
         return null;
     }
     @Override
     protected void onPostExecute(Object _n) {
-        if (changeFound && ownerRef.get() != null) {
-            ownerRef.get().reloadPackages();
-            ownerRef.get().refreshInterface();
+        LauncherActivity owner = ownerRef.get();
+        if (owner == null) return;
+        if (needsFullReload) {
+            owner.reloadPackages();
+            owner.refreshInterface();
+        } else if (!diff.isEmpty()) {
+            Log.v("LightningLauncher", "Packages changed: " + diff);
+            owner.applyPackageDiff(diff, changedPackages);
         }
     }
-}
\ No newline at end of file
+}
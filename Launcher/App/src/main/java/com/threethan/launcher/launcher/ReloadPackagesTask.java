@@ -0,0 +1,42 @@
+package com.threethan.launcher.launcher;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.AsyncTask;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/*
+    ReloadPackagesTask
+
+    This task loads the full list of installed packages (with metadata) asynchronously, then gives
+    it to the LauncherActivity which called it.
+
+    It's used after a cold start, when the launcher has already shown apps from the AppIndex, to
+    check the index against the package manager without blocking the first frame.
+ */
+
+/** @noinspection deprecation */
+class ReloadPackagesTask extends AsyncTask<Object, Void, Object> {
+    List<PackageInfo> foundPackages;
+    WeakReference<LauncherActivity> ownerRef;
+
+    @Override
+    protected Object doInBackground(Object[] objects) {
+        LauncherActivity owner = (LauncherActivity) objects[0];
+
+        PackageManager packageManager = owner.getPackageManager();
+        foundPackages = packageManager.getInstalledPackages(PackageManager.GET_META_DATA);
+
+        ownerRef = new WeakReference<>(owner);
+        return null;
+    }
+    @Override
+    protected void onPostExecute(Object _n) {
+        LauncherActivity owner = ownerRef.get();
+        if (owner == null) return;
+        owner.applyPackages(foundPackages);
+        owner.refreshInterface();
+    }
+}
@@ -0,0 +1,379 @@
+package com.threethan.launcher.lib;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+    SegmentedDownload
+
+    Downloads a file over several ranged connections at once, and can resume where it left off.
+    Progress is kept in a small journal file next to the partial file, so a download can be resumed
+    even after the process has died. Doesn't depend on Android.
+ */
+
+public class SegmentedDownload {
+    private static final int MAGIC = 0x4C4C444A; // "LLDJ"
+    private static final int VERSION = 1;
+    public static final String PART_SUFFIX = ".part";
+    public static final String JOURNAL_SUFFIX = ".journal";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Smaller files aren't worth splitting
+    private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long JOURNAL_INTERVAL_BYTES = 512 * 1024;
+    private static final int TIMEOUT_MS = 15000;
+
+    public interface Listener {
+        // Called from download threads. Total is -1 if the size isn't known.
+        void onProgress(SegmentedDownload download, long downloaded, long total);
+    }
+    // Thrown if the finished file doesn't match the expected checksum. The file is deleted.
+    public static class ChecksumException extends IOException {
+        private static final long serialVersionUID = 1L;
+        public ChecksumException(String message) {
+            super(message);
+        }
+    }
+    // The file changed on the server since the download started
+    private static class ChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+        ChangedException(String message) {
+            super(message);
+        }
+    }
+
+    public final String url;
+    public final File file;
+    private final File partFile;
+    private final File journalFile;
+    @Nullable
+    private final String expectedSha256;
+    private final int maxSegments;
+    private volatile boolean cancelled = false;
+    @Nullable
+    private String sha256;
+
+    // ETag or Last-Modified of the file, to make sure resumed ranges come from the same file
+    private String validator = "";
+    private long length = -1;
+    // Each segment covers start to end, inclusive. If the server doesn't support ranges, there's
+    // one segment with an end of -1, which can't be resumed.
+    private long[] starts = new long[0];
+    private long[] ends = new long[0];
+    private long[] done = new long[0];
+
+    public SegmentedDownload(String url, File file, @Nullable String expectedSha256, int maxSegments) {
+        this.url = url;
+        this.file = file;
+        this.partFile = new File(file.getPath() + PART_SUFFIX);
+        this.journalFile = new File(file.getPath() + JOURNAL_SUFFIX);
+        this.expectedSha256 = expectedSha256 == null ? null : expectedSha256.toLowerCase(Locale.ROOT);
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    // Whether a file is part of a download which hasn't finished: its partial file, its journal,
+    // or a journal being written
+    public static boolean isInProgress(String name) {
+        return name.endsWith(PART_SUFFIX) || name.endsWith(JOURNAL_SUFFIX) || name.endsWith(TEMP_SUFFIX);
+    }
+    // Finds downloads in a directory which were interrupted, so they can be resumed
+    public static List<SegmentedDownload> findInterrupted(File dir, int maxSegments) {
+        final List<SegmentedDownload> downloads = new ArrayList<>();
+        final File[] files = dir.listFiles();
+        if (files == null) return downloads;
+        for (File journal : files) {
+            if (!journal.getName().endsWith(JOURNAL_SUFFIX)) continue;
+            final String path = journal.getPath();
+            final File file = new File(path.substring(0, path.length() - JOURNAL_SUFFIX.length()));
+            final String[] header = readJournalHeader(journal);
+            if (header != null) downloads.add(new SegmentedDownload(header[0], file,
+                    header[1].isEmpty() ? null : header[1], maxSegments));
+        }
+        return downloads;
+    }
+    // Gets the url an interrupted download of the file was fetching, if there is one
+    @Nullable
+    public static String getInterruptedUrl(File file) {
+        final String[] header = readJournalHeader(new File(file.getPath() + JOURNAL_SUFFIX));
+        return header == null ? null : header[0];
+    }
+    // Reads the url and expected checksum from the start of a journal
+    @Nullable
+    private static String[] readJournalHeader(File journal) {
+        if (!journal.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            return new String[]{in.readUTF(), in.readUTF()};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Downloads the file, blocking until it's done. Segments run on the executor, which must not
+    // be the one this is called from. If this fails, calling it again resumes the download.
+    public void run(ExecutorService executor, Listener listener) throws IOException, InterruptedException {
+        cancelled = false;
+        if (!partFile.exists() || !readJournal()) plan();
+        try {
+            runSegments(executor, listener);
+        } catch (ChangedException e) {
+            // Start over, once, with the new version of the file
+            plan();
+            runSegments(executor, listener);
+        }
+        if (length >= 0 && partFile.length() != length)
+            throw new IOException("Downloaded " + partFile.length() + " of " + length + " bytes");
+
+        sha256 = digest(partFile);
+        if (expectedSha256 != null && !expectedSha256.equals(sha256)) {
+            delete();
+            throw new ChecksumException("Checksum mismatch for " + file.getName());
+        }
+        if (file.exists() && !file.delete()) throw new IOException("Failed to replace " + file);
+        if (!partFile.renameTo(file)) throw new IOException("Failed to rename " + partFile);
+        final boolean ignored = journalFile.delete();
+    }
+    // Stops the download soon, keeping what's been downloaded so it can be resumed
+    public void cancel() {
+        cancelled = true;
+    }
+    // Deletes the partial file and journal
+    public void delete() {
+        final boolean ignored = partFile.delete() | journalFile.delete();
+    }
+    // Gets the SHA-256 of the finished file, as lowercase hex
+    @Nullable
+    public String getSha256() {
+        return sha256;
+    }
+
+    // Finds out the file's size and whether the server supports ranges, and splits it up
+    private void plan() throws IOException {
+        final HttpURLConnection connection = open();
+        long total = -1;
+        try {
+            connection.setRequestProperty("Range", "bytes=0-0");
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                final String range = connection.getHeaderField("Content-Range");
+                if (range != null && range.contains("/")) total = parseLong(range.substring(range.lastIndexOf('/') + 1));
+            } else if (code != HttpURLConnection.HTTP_OK) throw new IOException("HTTP " + code + " for " + url);
+            final String etag = connection.getHeaderField("ETag");
+            final String lastModified = connection.getHeaderField("Last-Modified");
+            // Weak ETags can't be used with If-Range
+            validator = etag != null && !etag.startsWith("W/") ? etag : lastModified != null ? lastModified : "";
+            if (code == HttpURLConnection.HTTP_OK) length = parseLong(connection.getHeaderField("Content-Length"));
+            else length = total;
+        } finally {
+            connection.disconnect();
+        }
+
+        final boolean ranged = total > 0;
+        final int segments = ranged ? (int) Math.max(1, Math.min(maxSegments, length / MIN_SEGMENT_BYTES)) : 1;
+        starts = new long[segments];
+        ends = new long[segments];
+        done = new long[segments];
+        for (int i = 0; i < segments; i++) {
+            starts[i] = ranged ? length * i / segments : 0;
+            ends[i] = ranged ? length * (i + 1) / segments - 1 : -1;
+        }
+        try (RandomAccessFile part = new RandomAccessFile(partFile, "rw")) {
+            part.setLength(Math.max(length, 0));
+        }
+        writeJournal();
+    }
+    private static long parseLong(@Nullable String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void runSegments(ExecutorService executor, Listener listener) throws IOException, InterruptedException {
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            if (isDone(i)) continue;
+            final int segment = i;
+            futures.add(executor.submit(() -> {
+                fetchSegment(segment, listener);
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // Stop the other segments, keeping their progress
+                cancelled = true;
+                if (failure == null || e.getCause() instanceof ChangedException)
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        writeJournal();
+        if (failure != null) {
+            cancelled = false;
+            throw failure;
+        }
+    }
+    private synchronized boolean isDone(int segment) {
+        return ends[segment] >= 0 && done[segment] >= ends[segment] - starts[segment] + 1;
+    }
+
+    private void fetchSegment(int segment, Listener listener) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                fetchSegmentOnce(segment, listener);
+                return;
+            } catch (ChangedException | InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS || cancelled) throw e;
+                writeJournal();
+                Thread.sleep(1000L << attempt);
+            }
+        }
+    }
+    private void fetchSegmentOnce(int segment, Listener listener) throws IOException {
+        final boolean ranged = ends[segment] >= 0;
+        // Without ranges, there's no way to pick up part way through
+        if (!ranged) synchronized (this) {
+            done[segment] = 0;
+        }
+        final long offset = starts[segment] + done[segment];
+        final HttpURLConnection connection = open();
+        try {
+            if (ranged) {
+                connection.setRequestProperty("Range", "bytes=" + offset + "-" + ends[segment]);
+                if (!validator.isEmpty()) connection.setRequestProperty("If-Range", validator);
+            }
+            final int code = connection.getResponseCode();
+            if (ranged && (code == HttpURLConnection.HTTP_OK || code == 416))
+                throw new ChangedException(url + " changed on the server");
+            if (code != (ranged ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK))
+                throw new IOException("HTTP " + code + " for " + url);
+
+            try (InputStream in = connection.getInputStream();
+                 RandomAccessFile part = new RandomAccessFile(partFile, "rw")) {
+                part.seek(offset);
+                if (!ranged) part.setLength(0);
+                final byte[] buffer = new byte[64 * 1024];
+                long sinceJournal = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (cancelled) throw new InterruptedIOException("Cancelled");
+                    part.write(buffer, 0, read);
+                    synchronized (this) {
+                        done[segment] += read;
+                    }
+                    sinceJournal += read;
+                    if (sinceJournal >= JOURNAL_INTERVAL_BYTES) {
+                        sinceJournal = 0;
+                        writeJournal();
+                    }
+                    listener.onProgress(this, getDownloaded(), length);
+                }
+            }
+            if (ranged && !isDone(segment)) throw new IOException("Connection closed early for " + url);
+        } finally {
+            connection.disconnect();
+        }
+    }
+    private HttpURLConnection open() throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setUseCaches(false);
+        // Ranges are of the file itself, so it mustn't be compressed in transit
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+    public synchronized long getDownloaded() {
+        long downloaded = 0;
+        for (long segmentDone : done) downloaded += segmentDone;
+        return downloaded;
+    }
+
+    // The journal only counts bytes already written to the partial file, so it's safe to resume
+    // from after the process dies (though not necessarily after the device loses power)
+    private synchronized void writeJournal() throws IOException {
+        final File tempFile = new File(journalFile.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(url);
+            out.writeUTF(expectedSha256 == null ? "" : expectedSha256);
+            out.writeUTF(validator);
+            out.writeLong(length);
+            out.writeInt(starts.length);
+            for (int i = 0; i < starts.length; i++) {
+                out.writeLong(starts[i]);
+                out.writeLong(ends[i]);
+                out.writeLong(done[i]);
+            }
+        }
+        if (!tempFile.renameTo(journalFile)) throw new IOException("Failed to replace " + journalFile);
+    }
+    private synchronized boolean readJournal() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+            if (!url.equals(in.readUTF())) return false;
+            in.readUTF(); // Expected checksum, only needed by findInterrupted
+            validator = in.readUTF();
+            length = in.readLong();
+            final int segments = in.readInt();
+            if (segments < 1 || segments > 64) return false;
+            starts = new long[segments];
+            ends = new long[segments];
+            done = new long[segments];
+            for (int i = 0; i < segments; i++) {
+                starts[i] = in.readLong();
+                ends[i] = in.readLong();
+                done[i] = in.readLong();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String digest(File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format(Locale.ROOT, "%02x", b));
+        return hex.toString();
+    }
+}
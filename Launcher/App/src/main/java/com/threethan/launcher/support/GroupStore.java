@@ -0,0 +1,241 @@
+package com.threethan.launcher.support;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.threethan.launcher.lib.FileLib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+    GroupStore
+
+    This abstract class stores which group each app is in. It uses an append-only log in its own
+    file, rather than shared preferences, which are rewritten whole on every change.
+
+    Changes are queued with put() and remove(), then written together by commit(), which appends
+    only the changed records followed by a commit marker. When the log is read, anything after the
+    last commit marker is discarded, so a crash mid-write can't corrupt previously committed groups.
+
+    Once the log has grown well past the number of apps, it's compacted into a fresh file.
+
+    When the log is replaced (by importing settings), nothing more is written until the process
+    restarts, so the imported log can't be mixed with changes made to the groups still in memory.
+ */
+
+public abstract class GroupStore {
+    public static final String FILE_NAME = "group-store.log";
+    private static final int MAGIC = 0x4C4C4753; // "LLGS"
+    private static final int VERSION = 1;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_COMMIT = 3;
+    private static final int MIN_RECORDS_TO_COMPACT = 512;
+    private static final String TAG = "GroupStore";
+
+    private static final Map<String, String> groupByPackage = new ConcurrentHashMap<>();
+    // Queued changes, as {packageName, group}, where a null group means removal
+    private static final List<String[]> pending = new ArrayList<>();
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private static File file;
+    private static boolean existed;
+    // Set once the log has been replaced, until the process restarts
+    private static volatile boolean replaced = false;
+    private static int recordCount; // Only accessed by the write executor after loading
+
+    // Reads the log from disk, if it hasn't already been read this process
+    public static synchronized void load(Context context) {
+        if (file != null) return;
+        file = new File(context.getApplicationInfo().dataDir, FILE_NAME);
+        existed = file.exists();
+        if (!existed) return;
+
+        long validLength = 0;
+        long fileLength = 0;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            fileLength = bytes.length;
+            validLength = read(bytes);
+            // Drop any partially written batch, so new records follow a complete one
+            if (validLength < fileLength) randomAccessFile.setLength(validLength);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read group store", e);
+        }
+        if (validLength < fileLength)
+            Log.w(TAG, "Discarded " + (fileLength - validLength) + " bytes of uncommitted changes");
+        Log.v(TAG, "Loaded " + groupByPackage.size() + " apps from " + recordCount + " records");
+    }
+    // Applies every committed batch of records, returning the length of the valid portion
+    private static long read(byte[] bytes) {
+        ByteArrayInputStream byteStream = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(byteStream);
+        long validLength = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Group store is from an incompatible version and will be rebuilt");
+                return 0;
+            }
+            validLength = bytes.length - byteStream.available();
+            List<String[]> batch = new ArrayList<>();
+            while (byteStream.available() > 0) {
+                final byte type = in.readByte();
+                if (type == RECORD_PUT) batch.add(new String[]{in.readUTF(), in.readUTF()});
+                else if (type == RECORD_REMOVE) batch.add(new String[]{in.readUTF(), null});
+                else if (type == RECORD_COMMIT) {
+                    for (String[] record : batch) apply(record);
+                    recordCount += batch.size() + 1;
+                    batch.clear();
+                    validLength = bytes.length - byteStream.available();
+                } else break; // Garbage, probably from an interrupted write
+            }
+        } catch (IOException ignored) {} // Truncated record
+        return validLength;
+    }
+    private static void apply(String[] record) {
+        if (record[1] == null) groupByPackage.remove(record[0]);
+        else groupByPackage.put(record[0], record[1]);
+    }
+
+    // True if there was no store on disk, so groups should be migrated from shared preferences
+    public static boolean needsMigration() {
+        return file != null && !replaced && (!existed || !file.exists());
+    }
+    // Writes the given groups as the entire store, synchronously, for migrating from old storage
+    public static synchronized void migrate(Map<String, String> groups) {
+        if (replaced) return;
+        groupByPackage.clear();
+        groupByPackage.putAll(groups);
+        synchronized (pending) {
+            pending.clear();
+        }
+        final Map<String, String> snapshot = new HashMap<>(groups);
+        try {
+            writeExecutor.submit(() -> compact(snapshot)).get();
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to write migrated groups", e);
+        }
+        existed = true;
+    }
+
+    public static Map<String, String> getAll() {
+        return Collections.unmodifiableMap(groupByPackage);
+    }
+    // Queues a change; it won't be written until commit() is called
+    public static void put(String packageName, String group) {
+        if (group.equals(groupByPackage.put(packageName, group))) return;
+        synchronized (pending) {
+            pending.add(new String[]{packageName, group});
+        }
+    }
+    public static void remove(String packageName) {
+        if (groupByPackage.remove(packageName) == null) return;
+        synchronized (pending) {
+            pending.add(new String[]{packageName, null});
+        }
+    }
+    public static void clear() {
+        for (String packageName : groupByPackage.keySet()) remove(packageName);
+    }
+    // Queues whatever changes are needed to make the store match the given map
+    public static void putAll(Map<String, String> groups) {
+        for (Map.Entry<String, String> entry : groups.entrySet())
+            if (entry.getValue() != null) put(entry.getKey(), entry.getValue());
+        for (String packageName : groupByPackage.keySet())
+            if (!groups.containsKey(packageName)) remove(packageName);
+    }
+    // Writes all queued changes as a single batch, in the background
+    public static void commit() {
+        final List<String[]> batch;
+        synchronized (pending) {
+            if (pending.isEmpty() || file == null || replaced) return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        writeExecutor.execute(() -> append(batch));
+    }
+
+    // Replaces the log on disk with another (or with nothing, so groups are migrated from
+    // preferences on the next start). The process should be restarted soon after.
+    public static synchronized void replace(Context context, @Nullable File source) {
+        replaced = true;
+        synchronized (pending) {
+            pending.clear();
+        }
+        // Let any write already queued finish first, so it can't land on the new log
+        try {
+            writeExecutor.submit(() -> {}).get();
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to wait for pending writes", e);
+        }
+        final File target = new File(context.getApplicationInfo().dataDir, FILE_NAME);
+        FileLib.delete(target);
+        if (source != null && source.exists()) FileLib.copy(source, target);
+    }
+
+    private static void append(List<String[]> batch) {
+        if (replaced) return;
+        final boolean isNew = !file.exists() || file.length() == 0;
+        try (FileOutputStream fileStream = new FileOutputStream(file, true)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            if (isNew) writeHeader(out);
+            for (String[] record : batch) writeRecord(out, record);
+            out.writeByte(RECORD_COMMIT);
+            out.flush();
+            fileStream.getFD().sync();
+            recordCount += batch.size() + 1;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to append to group store", e);
+            return;
+        }
+        if (recordCount > Math.max(MIN_RECORDS_TO_COMPACT, groupByPackage.size() * 4))
+            compact(new HashMap<>(groupByPackage));
+    }
+    // Replaces the log with a single batch containing only the current groups
+    private static void compact(Map<String, String> groups) {
+        if (replaced) return;
+        final File tempFile = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream fileStream = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            writeHeader(out);
+            for (Map.Entry<String, String> entry : groups.entrySet())
+                writeRecord(out, new String[]{entry.getKey(), entry.getValue()});
+            out.writeByte(RECORD_COMMIT);
+            out.flush();
+            fileStream.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to compact group store", e);
+            return;
+        }
+        // Rename is atomic, so the old log stays intact until the new one is complete
+        if (tempFile.renameTo(file)) recordCount = groups.size() + 1;
+        else Log.w(TAG, "Failed to replace group store file");
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+    private static void writeRecord(DataOutputStream out, String[] record) throws IOException {
+        out.writeByte(record[1] == null ? RECORD_REMOVE : RECORD_PUT);
+        out.writeUTF(record[0]);
+        if (record[1] != null) out.writeUTF(record[1]);
+    }
+}
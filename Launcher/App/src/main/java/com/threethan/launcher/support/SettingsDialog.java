@@ -13,9 +13,11 @@ import android.widget.Switch;
 import android.widget.TextView;
 
 import com.threethan.launcher.R;
+import com.threethan.launcher.browser.WebPrewarm;
 import com.threethan.launcher.helper.App;
 import com.threethan.launcher.helper.Compat;
 import com.threethan.launcher.helper.Dialog;
+import com.threethan.launcher.helper.IconAtlas;
 import com.threethan.launcher.helper.Platform;
 import com.threethan.launcher.helper.Settings;
 import com.threethan.launcher.launcher.LauncherActivity;
@@ -315,15 +317,26 @@ public abstract class SettingsDialog {
         names.setOnCheckedChangeListener((compoundButton, value) -> {
             a.sharedPreferenceEditor.putBoolean(Settings.KEY_SHOW_NAMES_SQUARE, value);
             a.refreshInterfaceAll();
-            if (a.getAdapterSquare() != null) a.getAdapterSquare().setShowNames(value);
+            if (a.getAppsAdapter() != null) a.getAppsAdapter().setShowNames(value,
+                    a.sharedPreferences.getBoolean(Settings.KEY_SHOW_NAMES_BANNER, Settings.DEFAULT_SHOW_NAMES_BANNER));
         });
         Switch wideNames = dialog.findViewById(R.id.nameBannerSwitch);
         wideNames.setChecked(a.sharedPreferences.getBoolean(Settings.KEY_SHOW_NAMES_BANNER, Settings.DEFAULT_SHOW_NAMES_BANNER));
         wideNames.setOnCheckedChangeListener((compoundButton, value) -> {
             a.sharedPreferenceEditor.putBoolean(Settings.KEY_SHOW_NAMES_BANNER, value);
             a.refreshInterfaceAll();
-            if (a.getAdapterBanner() != null) a.getAdapterBanner().setShowNames(value);
-            if (a.getAdapterBanner() != null) a.getAdapterBanner().setShowNames(value);
+            if (a.getAppsAdapter() != null) a.getAppsAdapter().setShowNames(
+                    a.sharedPreferences.getBoolean(Settings.KEY_SHOW_NAMES_SQUARE, Settings.DEFAULT_SHOW_NAMES_SQUARE), value);
+        });
+
+        // Sort mode, cycled by clicking
+        TextView sortModeText = dialog.findViewById(R.id.sortModeText);
+        sortModeText.setText(Settings.sortModeStrings[SettingsManager.getSortMode().ordinal()]);
+        dialog.findViewById(R.id.sortModeButton).setOnClickListener(view -> {
+            final int mode = (SettingsManager.getSortMode().ordinal() + 1) % Settings.sortModeStrings.length;
+            a.sharedPreferenceEditor.putInt(Settings.KEY_SORT_MODE, mode).apply();
+            sortModeText.setText(Settings.sortModeStrings[mode]);
+            a.refreshInterfaceAll();
         });
 
         // Advanced button
@@ -357,6 +370,31 @@ public abstract class SettingsDialog {
             a.sharedPreferenceEditor.putBoolean(Settings.KEY_AUTO_HIDE_EMPTY, value);
             a.refreshInterfaceAll();
         });
+        Switch iconAtlas = dialog.findViewById(R.id.iconAtlasSwitch);
+        iconAtlas.setChecked(IconAtlas.isEnabled());
+        iconAtlas.setOnCheckedChangeListener((compoundButton, value) -> {
+            IconAtlas.setEnabled(a, value);
+            a.launcherService.clearAdapterCachesAll();
+            a.refreshInterfaceAll();
+        });
+        Switch searchFuzzy = dialog.findViewById(R.id.searchFuzzySwitch);
+        searchFuzzy.setChecked(a.sharedPreferences.getBoolean(Settings.KEY_SEARCH_FUZZY, Settings.DEFAULT_SEARCH_FUZZY));
+        searchFuzzy.setOnCheckedChangeListener((compoundButton, value) ->
+                a.sharedPreferenceEditor.putBoolean(Settings.KEY_SEARCH_FUZZY, value).apply());
+        Switch webPrewarm = dialog.findViewById(R.id.webPrewarmSwitch);
+        Switch webPrewarmSession = dialog.findViewById(R.id.webPrewarmSessionSwitch);
+        webPrewarm.setChecked(a.sharedPreferences.getBoolean(Settings.KEY_WEB_PREWARM, Settings.DEFAULT_WEB_PREWARM));
+        webPrewarmSession.setChecked(a.sharedPreferences.getBoolean(Settings.KEY_WEB_PREWARM_SESSION, Settings.DEFAULT_WEB_PREWARM_SESSION));
+        webPrewarmSession.setEnabled(webPrewarm.isChecked());
+        webPrewarm.setOnCheckedChangeListener((compoundButton, value) -> {
+            a.sharedPreferenceEditor.putBoolean(Settings.KEY_WEB_PREWARM, value).apply();
+            webPrewarmSession.setEnabled(value);
+            WebPrewarm.onSettingsChanged(a);
+        });
+        webPrewarmSession.setOnCheckedChangeListener((compoundButton, value) -> {
+            a.sharedPreferenceEditor.putBoolean(Settings.KEY_WEB_PREWARM_SESSION, value).apply();
+            WebPrewarm.onSettingsChanged(a);
+        });
 
         if (Platform.isVr(a)) {
             Switch defaultLaunchOut = dialog.findViewById(R.id.defaultLaunchOutSwitch);
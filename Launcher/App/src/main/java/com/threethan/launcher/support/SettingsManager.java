@@ -8,7 +8,9 @@ import android.os.Build;
 import android.util.Log;
 
 import com.threethan.launcher.helper.App;
+import com.threethan.launcher.helper.AppIndex;
 import com.threethan.launcher.helper.AppData;
+import com.threethan.launcher.helper.LaunchStats;
 import com.threethan.launcher.helper.Platform;
 import com.threethan.launcher.helper.Settings;
 import com.threethan.launcher.launcher.LauncherActivity;
@@ -16,6 +18,7 @@ import com.threethan.launcher.lib.StringLib;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -34,6 +37,7 @@ import java.util.concurrent.ConcurrentHashMap;
     and types which can be stored to shared preferences.
 
     It handles customizable properties (label, launch mode) as well grouping.
+    The group of each app is kept in the GroupStore, rather than in shared preferences.
 
     It also provides a number of static methods which are used by various other classes .
  */
@@ -59,6 +63,7 @@ public class SettingsManager extends Settings {
         anyLauncherActivityRef = new WeakReference<>(activity);
         sharedPreferences = activity.sharedPreferences;
         sharedPreferenceEditor = activity.sharedPreferenceEditor;
+        GroupStore.load(activity);
         // Conditional defaults (hacky)
         Settings.DEFAULT_DETAILS_LONG_PRESS = Platform.isTv(activity);
     }
@@ -95,6 +100,8 @@ public class SettingsManager extends Settings {
                 if (!name.isEmpty()) return StringLib.toTitleCase(name);
             } catch (Exception ignored) {}
         }
+        final String indexedLabel = AppIndex.getLabel(app.packageName);
+        if (indexedLabel != null) return indexedLabel;
         try {
             PackageManager pm =anyLauncherActivityRef.get().getPackageManager();
             String label = app.loadLabel(pm).toString();
@@ -107,6 +114,7 @@ public class SettingsManager extends Settings {
     }
     public static void setAppLabel(ApplicationInfo app, String newName) {
         appLabelCache.put(app, newName);
+        AppIndex.setLabel(app.packageName, newName);
         sharedPreferenceEditor.putString(app.packageName, newName);
     }
     public static boolean getAppLaunchOut(String pkg) {
@@ -123,7 +131,34 @@ public class SettingsManager extends Settings {
     public void setAppGroup(String packageName, String group) {
         getAppGroupMap();
         appGroupMap.put(packageName, group);
-        queueStoreValues();
+        GroupStore.put(packageName, group);
+        GroupStore.commit();
+    }
+    // Moves many apps at once, writing them as a single batch
+    public void moveAppsToGroup(Collection<String> packageNames, String group) {
+        getAppGroupMap();
+        for (String packageName : packageNames) {
+            appGroupMap.put(packageName, group);
+            GroupStore.put(packageName, group);
+        }
+        GroupStore.commit();
+    }
+
+    // Forgets the groups of apps which are no longer installed
+    public static void removeAppsFromGroups(Set<String> packageNames) {
+        if (packageNames.isEmpty()) return;
+        getAppGroupMap();
+        for (String packageName : packageNames) {
+            appGroupMap.remove(packageName);
+            GroupStore.remove(packageName);
+        }
+        GroupStore.commit();
+    }
+    // Forgets the groups of all apps, so they'll be sorted into default groups
+    public static void clearAppGroupMap() {
+        appGroupMap.clear();
+        GroupStore.clear();
+        GroupStore.commit();
     }
 
     public static void setAppGroupMap(Map<String, String> value) {
@@ -171,15 +206,32 @@ public class SettingsManager extends Settings {
         // Create new list of apps
         ArrayList<ApplicationInfo> sortedApps = new ArrayList<>(appMap.values());
         // Compare on app label
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             sortedApps.sort(Comparator.comparing(a -> StringLib.forSort(getAppLabel(a))));
-        else
+            // Then by use, if set; the sort is stable, so ties stay sorted by label
+            final LaunchStats.SortMode sortMode = getSortMode();
+            if (sortMode != LaunchStats.SortMode.NAME) {
+                final long now = System.currentTimeMillis();
+                final Map<String, Double> valueByPackage = new HashMap<>();
+                for (ApplicationInfo app : sortedApps)
+                    valueByPackage.put(app.packageName, LaunchStats.getSortValue(sortMode, app.packageName, now));
+                sortedApps.sort((a, b) -> Double.compare(
+                        Objects.requireNonNull(valueByPackage.get(b.packageName)),
+                        Objects.requireNonNull(valueByPackage.get(a.packageName))));
+            }
+        } else
             Log.w("OLD API", "Your android version is too old so apps will not be sorted.");
 
         // Sort Done!
         return sortedApps;
     }
 
+    public static LaunchStats.SortMode getSortMode() {
+        final int mode = sharedPreferences.getInt(Settings.KEY_SORT_MODE, Settings.DEFAULT_SORT_MODE);
+        final LaunchStats.SortMode[] modes = LaunchStats.SortMode.values();
+        return mode >= 0 && mode < modes.length ? modes[mode] : LaunchStats.SortMode.NAME;
+    }
+
     public static Set<String> getAppGroups() {
         if (appGroupsSet.isEmpty()) readValues();
         return appGroupsSet;
@@ -259,9 +311,8 @@ public class SettingsManager extends Settings {
 
     public void resetGroups(){
         SharedPreferences.Editor editor = sharedPreferenceEditor;
-        for (String group : appGroupsSet) editor.remove(KEY_GROUP_APP_LIST + group);
         appGroupsSet.clear();
-        appGroupMap.clear();
+        clearAppGroupMap();
         editor.remove(KEY_GROUPS);
         editor.remove(KEY_SELECTED_GROUPS);
         for (String group : getAppGroups())
@@ -284,16 +335,29 @@ public class SettingsManager extends Settings {
 
             appGroupsSet.add(Settings.HIDDEN_GROUP);
             appGroupsSet.add(Settings.UNSUPPORTED_GROUP);
-            for (String group : appGroupsSet) {
-                Set<String> appListSet = new HashSet<>();
-                appListSet = sharedPreferences.getStringSet(KEY_GROUP_APP_LIST + group, appListSet);
-                for (String app : appListSet) appGroupMap.put(app, group);
-            }
+            if (GroupStore.needsMigration()) migrateAppGroupMap();
+            for (Map.Entry<String, String> entry : GroupStore.getAll().entrySet())
+                if (appGroupsSet.contains(entry.getValue()))
+                    appGroupMap.put(entry.getKey(), entry.getValue());
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+    // Moves the groups of apps out of shared preferences, where they were kept before GroupStore
+    private static void migrateAppGroupMap() {
+        Map<String, String> migratedMap = new HashMap<>();
+        for (String group : appGroupsSet) {
+            Set<String> appListSet = sharedPreferences.getStringSet(KEY_GROUP_APP_LIST + group,
+                    Collections.emptySet());
+            for (String app : appListSet) migratedMap.put(app, group);
+        }
+        // Only remove the old values once the store has been written
+        GroupStore.migrate(migratedMap);
+        for (String group : appGroupsSet) sharedPreferenceEditor.remove(KEY_GROUP_APP_LIST + group);
+        sharedPreferenceEditor.apply();
+        Log.i("Groups (SettingsManager)", "Migrated " + migratedMap.size() + " apps to GroupStore");
+    }
     synchronized private void queueStoreValues() {
         if (myLauncherActivityRef.get() != null && myLauncherActivityRef.get().mainView != null) {
             myLauncherActivityRef.get().post(SettingsManager::writeValues);
@@ -311,23 +375,11 @@ public class SettingsManager extends Settings {
         try {
             SharedPreferences.Editor editor = sharedPreferenceEditor;
             editor.putStringSet(KEY_GROUPS, appGroupsSet);
-
-            Map<String, Set<String>> appListSetMap = new HashMap<>();
-            for (String group : appGroupsSet) appListSetMap.put(group, new HashSet<>());
-            for (String pkg : appGroupMap.keySet()) {
-                Set<String> group = appListSetMap.get(appGroupMap.get(pkg));
-                if (group == null) group = appListSetMap.get(
-                        App.getDefaultGroupFor(App.Type.TYPE_SUPPORTED));
-                if (group == null) {
-                    Log.e("Group was null", pkg);
-                    return;
-                }
-                group.add(pkg);
-            }
-            for (String group : appGroupsSet) {
-                editor.putStringSet(KEY_GROUP_APP_LIST + group, appListSetMap.get(group));
-            }
             editor.apply();
+
+            // Only apps whose group actually changed are written
+            GroupStore.putAll(appGroupMap);
+            GroupStore.commit();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -391,6 +443,11 @@ public class SettingsManager extends Settings {
             anyLauncherActivityRef.get().browserService.killWebView(pkgName);
         } catch (NullPointerException ignored) {}
     }
+    public static void discardRunning (String pkgName) {
+        try {
+            anyLauncherActivityRef.get().browserService.discardWebView(pkgName);
+        } catch (NullPointerException ignored) {}
+    }
 
     public static boolean getAdvancedLaunching(LauncherActivity activity) {
         return activity.sharedPreferences.getBoolean(Settings.KEY_ADVANCED_SIZING,
@@ -12,6 +12,7 @@ import java.util.Objects;
 
 public abstract class SettingsSaver {
     public static String CONFIG_FILE_NAME = "ExportedConfiguration.xml";
+    public static String GROUPS_FILE_NAME = "ExportedGroups.log";
     public static void save(LauncherActivity activity) {
         File prefs = new File(activity.getFilesDir().getParent()
                 + "/shared_prefs/" +
@@ -23,6 +24,11 @@ public abstract class SettingsSaver {
 
         FileLib.delete(export);
         FileLib.copy(prefs, export);
+        // App groups are kept in their own file
+        File groups = new File(activity.getApplicationInfo().dataDir, GroupStore.FILE_NAME);
+        File exportGroups = new File(exportPath, GROUPS_FILE_NAME);
+        FileLib.delete(exportGroups);
+        if (groups.exists()) FileLib.copy(groups, exportGroups);
 
         Dialog.toast(activity.getString(R.string.saved_settings),
                 "Android/Data/"+activity.getPackageName()+"/"+SettingsSaver.CONFIG_FILE_NAME,
@@ -39,6 +45,8 @@ public abstract class SettingsSaver {
 
         FileLib.delete(prefs);
         FileLib.copy(export, prefs);
+        // Older exports keep groups in preferences, so the store is migrated from those instead
+        GroupStore.replace(activity, new File(exportPath, GROUPS_FILE_NAME));
 
         Dialog.toast(activity.getString(R.string.loaded_settings1),
                 activity.getString(R.string.loaded_settings2),
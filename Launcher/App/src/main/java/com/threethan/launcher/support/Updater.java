@@ -1,20 +1,17 @@
 package com.threethan.launcher.support;
 
 import android.accessibilityservice.AccessibilityServiceInfo;
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ServiceInfo;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.accessibility.AccessibilityManager;
@@ -29,16 +26,26 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.StringRequest;
 import com.android.volley.toolbox.Volley;
 import com.threethan.launcher.R;
+import com.threethan.launcher.browser.WebDownloads;
 import com.threethan.launcher.helper.Dialog;
 import com.threethan.launcher.launcher.LauncherActivity;
 import com.threethan.launcher.lib.FileLib;
+import com.threethan.launcher.lib.SegmentedDownload;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /*
     Updater
@@ -48,6 +55,11 @@ import java.util.Objects;
 
     It also handles downloading/updating/installing addons, though these must be manually checked
 
+    All updaters share one request queue. Release info is checked at most every few hours, and
+    Volley's cache revalidates it with its ETag, so unchanged info costs a 304. Apks are downloaded
+    in resumable segments (see SegmentedDownload), and checked against the release's SHA-256
+    digest, where GitHub provides one, and against the expected package before being installed.
+
     Credit to @Basti for code which checks github for updates
  */
 public class Updater {
@@ -74,11 +86,22 @@ public class Updater {
                     "https://xdaforums.com/attachments/lm-atv-1-0-4-apk.5498333/"),
     };
     private static final String TAG = "LightningLauncher Updater";
+    private static final long MIN_CHECK_INTERVAL_MS = 6 * 60 * 60 * 1000L;
+    private static final int ADDON_STATE_TTL_MS = 2000;
+    private static final int MAX_SEGMENTS = 4;
+    private static RequestQueue sharedRequestQueue;
+    private static final ExecutorService downloadExecutor = Executors.newSingleThreadExecutor();
+    private static final ExecutorService segmentExecutor = Executors.newFixedThreadPool(MAX_SEGMENTS);
+    private static final Map<String, Integer> addonStateByTag = new HashMap<>();
+    private static long addonStatesAt;
     private final RequestQueue requestQueue;
     private final PackageManager packageManager;
     private final Activity activity;
     private static final String KEY_IGNORED_UPDATE_VERSION = "UPDATER_IGNORED_UPDATE_VERSION";
     private static final String KEY_UPDATE_AVAILABLE = "UPDATER_UPDATE_AVAILABLE";
+    private static final String KEY_LATEST_TAG = "UPDATER_LATEST_TAG";
+    private static final String KEY_LAST_CHECK_AT = "UPDATER_LAST_CHECK_AT";
+    private static final String KEY_ASSET_DIGESTS = "UPDATER_ASSET_DIGESTS";
     public static final int STATE_NOT_INSTALLED = 0;
     public static final int STATE_ACTIVE = 1;
     public static final int STATE_HAS_UPDATE = 2;
@@ -88,20 +111,44 @@ public class Updater {
 
     public Updater(Activity activity) {
         this.activity = activity;
-        this.requestQueue = Volley.newRequestQueue(activity);
+        this.requestQueue = getRequestQueue(activity);
         this.packageManager = activity.getPackageManager();
     }
     public Updater(LauncherActivity activity) {
         this.activity = activity;
-        this.requestQueue = Volley.newRequestQueue(activity);
+        this.requestQueue = getRequestQueue(activity);
         this.packageManager = activity.getPackageManager();
 
-        // Clear update files if just updated
+        // Clear update files if just updated, and browser downloads which are no longer needed
         Log.v(TAG, "Clearing Temporary Apk Dir");
-        FileLib.delete(Objects.requireNonNull(activity.getExternalFilesDir(APK_DIR)));
+        deleteFinishedDownloads(Objects.requireNonNull(activity.getExternalFilesDir(APK_DIR)));
+        WebDownloads.deleteStale(activity);
+    }
+    private static synchronized RequestQueue getRequestQueue(Context context) {
+        if (sharedRequestQueue == null) sharedRequestQueue = Volley.newRequestQueue(context.getApplicationContext());
+        return sharedRequestQueue;
+    }
+    // Interrupted downloads are kept, so they can be resumed
+    private static void deleteFinishedDownloads(File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            final String name = file.getName();
+            if (SegmentedDownload.isInProgress(name)) continue;
+            if (new File(file.getPath() + SegmentedDownload.JOURNAL_SUFFIX).exists()) continue;
+            FileLib.delete(file);
+        }
     }
     public void checkForAppUpdate() {
-        checkLatestVersion(this::storeLatestVersionAndPrompt);
+        // Release info is only fetched again once it's a few hours old
+        final SharedPreferences sharedPreferences = getSharedPreferences();
+        final String cachedTag = sharedPreferences.getString(KEY_LATEST_TAG, null);
+        final long checkedAgo = System.currentTimeMillis() - sharedPreferences.getLong(KEY_LAST_CHECK_AT, 0);
+        if (cachedTag != null && checkedAgo >= 0 && checkedAgo < MIN_CHECK_INTERVAL_MS) {
+            if (anyDialogVisible) return;
+            latestVersionTag = cachedTag;
+            storeLatestVersionAndPrompt(cachedTag);
+        } else checkLatestVersion(this::storeLatestVersionAndPrompt);
     }
     @Nullable
     private Addon getAddon(String tag) {
@@ -113,25 +160,41 @@ public class Updater {
     public int getAddonState(String tag) {
         Addon addon = getAddon(tag);
         if (addon == null) return STATE_NOT_INSTALLED;
-        PackageInfo packageInfo;
-        try {
-            packageInfo = packageManager.getPackageInfo(
-                    addon.packageName, PackageManager.GET_ACTIVITIES);
-        } catch (PackageManager.NameNotFoundException e) {
-            return STATE_NOT_INSTALLED;
+        synchronized (addonStateByTag) {
+            // The addon dialog polls every button, so states are worked out together and reused
+            if (addonStateByTag.isEmpty() || SystemClock.uptimeMillis() - addonStatesAt > ADDON_STATE_TTL_MS)
+                refreshAddonStates();
+            final Integer state = addonStateByTag.get(addon.tag);
+            return state == null ? STATE_NOT_INSTALLED : state;
         }
-        if (!packageInfo.versionName.equals(addon.latestVersion)) return STATE_HAS_UPDATE;
-        if (addon.accessibilityService) {
-            AccessibilityManager am = (AccessibilityManager) activity.getSystemService(Context.ACCESSIBILITY_SERVICE);
-            List<AccessibilityServiceInfo> enabledServices = am.getEnabledAccessibilityServiceList(AccessibilityServiceInfo.FEEDBACK_ALL_MASK);
+    }
+    // Gets the state of every addon with one query for packages and one for accessibility services
+    private void refreshAddonStates() {
+        final Set<String> addonPackages = new HashSet<>();
+        for (Addon addon : addons) addonPackages.add(addon.packageName);
+        final Map<String, String> versionByPackage = new HashMap<>();
+        for (PackageInfo packageInfo : packageManager.getInstalledPackages(0))
+            if (addonPackages.contains(packageInfo.packageName))
+                versionByPackage.put(packageInfo.packageName, packageInfo.versionName);
 
-            for (AccessibilityServiceInfo enabledService : enabledServices) {
-                ServiceInfo enabledServiceInfo = enabledService.getResolveInfo().serviceInfo;
-                if (enabledServiceInfo.packageName.equals(addon.packageName))
-                    return STATE_ACTIVE;
-            }
-            return STATE_INACTIVE;
-        } else return STATE_ACTIVE;
+        final Set<String> enabledServicePackages = new HashSet<>();
+        AccessibilityManager am = (AccessibilityManager) activity.getSystemService(Context.ACCESSIBILITY_SERVICE);
+        List<AccessibilityServiceInfo> enabledServices = am.getEnabledAccessibilityServiceList(AccessibilityServiceInfo.FEEDBACK_ALL_MASK);
+        for (AccessibilityServiceInfo enabledService : enabledServices) {
+            ServiceInfo enabledServiceInfo = enabledService.getResolveInfo().serviceInfo;
+            enabledServicePackages.add(enabledServiceInfo.packageName);
+        }
+
+        addonStateByTag.clear();
+        for (Addon addon : addons) {
+            final int state;
+            if (!versionByPackage.containsKey(addon.packageName)) state = STATE_NOT_INSTALLED;
+            else if (!addon.latestVersion.equals(versionByPackage.get(addon.packageName))) state = STATE_HAS_UPDATE;
+            else if (addon.accessibilityService && !enabledServicePackages.contains(addon.packageName)) state = STATE_INACTIVE;
+            else state = STATE_ACTIVE;
+            addonStateByTag.put(addon.tag, state);
+        }
+        addonStatesAt = SystemClock.uptimeMillis();
     }
     public void uninstallAddon(Activity activity, String tag) {
         Addon addon = getAddon(tag);
@@ -144,8 +207,7 @@ public class Updater {
         Addon addon = getAddon(tag);
         if (addon == null) return;
         Log.v(TAG, "Attempting to install addon "+tag);
-        attempts = 3;
-        downloadUpdate(addon.downloadName, ADDON_RELEASE_TAG, addon.overrideUrl);
+        downloadUpdate(addon.downloadName, ADDON_RELEASE_TAG, addon.overrideUrl, addon.packageName);
     }
     private String getUpdateName() {
         final boolean is64bit = Build.SUPPORTED_64_BIT_ABIS.length > 0;
@@ -153,7 +215,6 @@ public class Updater {
     }
     public void updateAppEvenIfSkipped() {
         getSharedPreferences().edit().remove(KEY_IGNORED_UPDATE_VERSION).apply();
-        attempts = 6;
         downloadUpdate(getUpdateName());
     }
     protected void storeLatestVersionAndPrompt(String tagName) {
@@ -185,16 +246,31 @@ public class Updater {
                 Request.Method.GET, UPDATE_URL,
                 (response -> handleUpdateResponse(response, callback)),
                 (this::handleUpdateError));
+        // Cached by Volley, which revalidates it with If-None-Match once it's stale
         requestQueue.add(updateRequest);
-        requestQueue.start();
     }
 
     private void handleUpdateResponse(String response, @Nullable Response.Listener<String> callback) {
         try {
             JSONObject latestReleaseJson = new JSONObject(response);
             String tagName = latestReleaseJson.getString("tag_name");
-            if (callback != null) callback.onResponse(tagName);
+
+            // Digests look like "sha256:<hex>", and aren't given for older releases
+            JSONObject digestByAsset = new JSONObject();
+            JSONArray assets = latestReleaseJson.optJSONArray("assets");
+            if (assets != null) for (int i = 0; i < assets.length(); i++) {
+                JSONObject asset = assets.getJSONObject(i);
+                String digest = asset.optString("digest", "");
+                if (digest.startsWith("sha256:")) digestByAsset.put(asset.getString("name"), digest.substring(7));
+            }
+            getSharedPreferences().edit()
+                    .putString(KEY_LATEST_TAG, tagName)
+                    .putLong(KEY_LAST_CHECK_AT, System.currentTimeMillis())
+                    .putString(KEY_ASSET_DIGESTS, digestByAsset.toString())
+                    .apply();
+
             latestVersionTag = tagName;
+            if (callback != null) callback.onResponse(tagName);
         } catch (JSONException e) {
             Log.w(TAG, "Received invalid JSON", e);
         }
@@ -205,7 +281,6 @@ public class Updater {
 
     private void showAppUpdateDialog(String curName, String newName) {
         try {
-            attempts = 4;
             AlertDialog.Builder updateDialogBuilder = new AlertDialog.Builder(activity, android.R.style.Theme_DeviceDefault_Dialog_Alert);
             updateDialogBuilder.setTitle(R.string.update_title);
             updateDialogBuilder.setMessage(activity.getString(R.string.update_content, curName, newName));
@@ -238,94 +313,98 @@ public class Updater {
         skipDialogBuilder.show();
         anyDialogVisible = true;
     }
-    @SuppressLint("UnspecifiedRegisterReceiverFlag") // Can't be fixed on this android API
     public void downloadUpdate(String apkName) {
-        downloadSucceeded = false;
+        if (latestVersionTag == null) latestVersionTag = getSharedPreferences().getString(KEY_LATEST_TAG, null);
         if (latestVersionTag == null) {
-            Log.w(TAG, "Latest version tag was null!" +
-                    "ill try to get it again, but this download will probably fail");
-            checkLatestVersion(response -> handleUpdateResponse(response, null));
+            Log.w(TAG, "Latest version tag was null! Getting it before downloading");
+            checkLatestVersion(tagName -> downloadUpdate(apkName, tagName, null, activity.getPackageName()));
+            return;
         }
-        downloadUpdate(apkName, latestVersionTag, null);
+        downloadUpdate(apkName, latestVersionTag, null, activity.getPackageName());
     }
-    @SuppressLint("UnspecifiedRegisterReceiverFlag") // Can't be fixed on this API version
-    private void downloadUpdate(String apkName, String tagName, @Nullable String overrideUrl) {
-        downloadSucceeded = false;
-        downloadingName = apkName;
-        downloadingTag = tagName;
-
-        String url = String.format(TEMPLATE_URL, downloadingTag, apkName);
+    private void downloadUpdate(String apkName, String tagName, @Nullable String overrideUrl, String packageName) {
+        String url = String.format(TEMPLATE_URL, tagName, apkName);
         if (overrideUrl != null) url = overrideUrl;
 
         Log.v(TAG, "Downloading from url "+url);
-        DownloadManager.Request request = new DownloadManager.Request(Uri.parse(url));
-        request.setDescription("Downloading Update");   //appears the same in Notification bar while downloading
-        request.setTitle("LightningLauncher Auto-Updater");
-
-        request.setDestinationInExternalFilesDir(activity, APK_DIR, apkName+latestVersionTag+".apk");
-
-        DownloadManager manager = (DownloadManager) activity.getSystemService(Context.DOWNLOAD_SERVICE);
+        final File file = new File(activity.getExternalFilesDir(APK_DIR), apkName + tagName + ".apk");
+        final String expectedSha256 = overrideUrl == null ? getAssetSha256(tagName, apkName + ".apk") : null;
+        // If this was interrupted before, it picks up where it left off
+        final SegmentedDownload download = new SegmentedDownload(url, file, expectedSha256, MAX_SEGMENTS);
 
         if (downloadingDialog == null) {
             AlertDialog.Builder updateDialogBuilder = new AlertDialog.Builder(activity, android.R.style.Theme_DeviceDefault_Dialog_Alert);
             updateDialogBuilder.setTitle(R.string.update_downloading_title);
             updateDialogBuilder.setMessage(R.string.update_downloading_content);
             updateDialogBuilder.setNegativeButton(R.string.update_hide_button, (dialog, which) -> dialog.cancel());
-            updateDialogBuilder.setOnDismissListener(di -> Updater.anyDialogVisible = false);
-            updateDialogBuilder.show();
+            updateDialogBuilder.setOnDismissListener(di -> {
+                Updater.anyDialogVisible = false;
+                // This updater is reused, so the next download needs a dialog of its own
+                downloadingDialog = null;
+            });
+            downloadingDialog = updateDialogBuilder.show();
             anyDialogVisible = true;
-            downloadingDialog = updateAlertDialog;
         }
 
-        activity.registerReceiver(onDownloadComplete, new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE));
-
-        manager.enqueue(request);
+        downloadExecutor.execute(() -> {
+            try {
+                download.run(segmentExecutor, (d, downloaded, total) -> {});
+                // Nothing to prompt with if the activity has gone while downloading
+                if (!activity.isDestroyed()) activity.runOnUiThread(() -> installUpdate(file, packageName));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to download " + file.getName(), e);
+                if (!activity.isDestroyed()) activity.runOnUiThread(this::showDownloadFailedDialog);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
     }
-    String downloadingTag;
-    String downloadingName;
-    boolean downloadSucceeded;
-    AlertDialog updateAlertDialog;
-    BroadcastReceiver onDownloadComplete =new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            if (updateAlertDialog != null) updateAlertDialog.dismiss();
-            installUpdate(downloadingName);
+    // Gets the SHA-256 of an asset of the latest release, if GitHub gave one
+    @Nullable
+    private String getAssetSha256(String tagName, String assetName) {
+        final SharedPreferences sharedPreferences = getSharedPreferences();
+        if (!tagName.equals(sharedPreferences.getString(KEY_LATEST_TAG, null))) return null;
+        try {
+            final String digest = new JSONObject(sharedPreferences.getString(KEY_ASSET_DIGESTS, "{}")).optString(assetName, "");
+            return digest.isEmpty() ? null : digest;
+        } catch (JSONException e) {
+            return null;
         }
-    };
-
-    static int attempts = 8;
-    public void installUpdate(String apkName) {
-        File path = activity.getApplicationContext().getExternalFilesDir(APK_DIR);
-        File file = new File(path, apkName+latestVersionTag+".apk");
-
-        if (downloadSucceeded) return;
-        if (file.exists()) {
-            downloadSucceeded = true;
-            // provider is already included in the imagepicker lib
-            Uri apkURI = FileProvider.getUriForFile(activity, activity.getApplicationContext().getPackageName() + ".imagepicker.provider", file);
-            Intent intent = new Intent(Intent.ACTION_VIEW);
-
-            intent.setDataAndType(apkURI, "application/vnd.android.package-archive");
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-            intent.putExtra(Intent.EXTRA_NOT_UNKNOWN_SOURCE, true);
+    }
 
-            if (downloadingDialog != null) downloadingDialog.dismiss();
-            activity.startActivity(intent);
-        } else {
-            if (attempts > 0) {
-                Log.w(TAG, "Failed to download APK! Will keep trying " + attempts + " more times");
-                downloadUpdate(apkName);
-                attempts --;
-            } else {
-                AlertDialog.Builder failedDownloadDialogBuilder = new AlertDialog.Builder(activity, android.R.style.Theme_DeviceDefault_Dialog_Alert);
-                failedDownloadDialogBuilder.setTitle(R.string.update_failed_title);
-                failedDownloadDialogBuilder.setMessage(R.string.update_failed_content);
-                failedDownloadDialogBuilder.setNegativeButton(R.string.update_hide_button, (dialog, which) -> dialog.cancel());
-                failedDownloadDialogBuilder.setOnDismissListener(di -> Updater.anyDialogVisible = false);
-                failedDownloadDialogBuilder.show();
-                anyDialogVisible = true;
-            }
+    private void installUpdate(File file, String packageName) {
+        if (activity.isDestroyed()) return;
+        if (downloadingDialog != null) downloadingDialog.dismiss();
+        // The checksum was checked while downloading, if there was one; the package is checked here
+        final PackageInfo archiveInfo = packageManager.getPackageArchiveInfo(file.getPath(), 0);
+        if (archiveInfo == null || !packageName.equals(archiveInfo.packageName)) {
+            Log.w(TAG, "Downloaded apk is invalid or not " + packageName);
+            FileLib.delete(file);
+            showDownloadFailedDialog();
+            return;
         }
+        // provider is already included in the imagepicker lib
+        Uri apkURI = FileProvider.getUriForFile(activity, activity.getApplicationContext().getPackageName() + ".imagepicker.provider", file);
+        Intent intent = new Intent(Intent.ACTION_VIEW);
 
+        intent.setDataAndType(apkURI, "application/vnd.android.package-archive");
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        intent.putExtra(Intent.EXTRA_NOT_UNKNOWN_SOURCE, true);
+
+        activity.startActivity(intent);
+    }
+    private void showDownloadFailedDialog() {
+        if (activity.isDestroyed()) return;
+        if (downloadingDialog != null) downloadingDialog.dismiss();
+        try {
+            AlertDialog.Builder failedDownloadDialogBuilder = new AlertDialog.Builder(activity, android.R.style.Theme_DeviceDefault_Dialog_Alert);
+            failedDownloadDialogBuilder.setTitle(R.string.update_failed_title);
+            failedDownloadDialogBuilder.setMessage(R.string.update_failed_content);
+            failedDownloadDialogBuilder.setNegativeButton(R.string.update_hide_button, (dialog, which) -> dialog.cancel());
+            failedDownloadDialogBuilder.setOnDismissListener(di -> Updater.anyDialogVisible = false);
+            failedDownloadDialogBuilder.show();
+            anyDialogVisible = true;
+        } catch (Exception ignored) {} // Activity may have gone while downloading
     }
-}
\ No newline at end of file
+}
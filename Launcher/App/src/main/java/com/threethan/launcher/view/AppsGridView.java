@@ -0,0 +1,102 @@
+package com.threethan.launcher.view;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.threethan.launcher.adapter.AppsAdapter;
+
+/*
+    AppsGridView
+
+    The RecyclerView which shows both banner and square apps in one grid. Banner apps take up twice
+    the width of square apps, so the grid has enough spans for either number of columns.
+
+    Only rows which are on screen have views, which are recycled as the grid scrolls.
+    Like the ScrollView it replaced, it always displays a full-strength fading edge on top, and
+    none on the bottom, to fade apps behind the group bar.
+ */
+public class AppsGridView extends RecyclerView {
+    private final GridLayoutManager gridLayoutManager;
+    private int squareColumns = 1;
+    private int bannerColumns = 1;
+    private int horizontalSpacing = 0;
+    private int verticalSpacingSquare = 0;
+    private int verticalSpacingBanner = 0;
+    private int basePaddingTop = 0;
+    private int extraPaddingTop = 0;
+
+    public AppsGridView(Context context) {
+        this(context, null);
+    }
+    public AppsGridView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+    public AppsGridView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        gridLayoutManager = new GridLayoutManager(context, 1);
+        gridLayoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                final Adapter<?> adapter = getAdapter();
+                if (adapter == null) return 1;
+                switch (adapter.getItemViewType(position)) {
+                    case AppsAdapter.TYPE_BANNER: return squareColumns;
+                    case AppsAdapter.TYPE_SQUARE: return bannerColumns;
+                    default: return squareColumns * bannerColumns; // Divider fills its row
+                }
+            }
+        });
+        setLayoutManager(gridLayoutManager);
+        addItemDecoration(new ItemDecoration() {
+            @Override
+            public void getItemOffsets(@NonNull Rect outRect, @NonNull View view,
+                                       @NonNull RecyclerView parent, @NonNull State state) {
+                final int type = getChildViewHolder(view).getItemViewType();
+                if (type == AppsAdapter.TYPE_DIVIDER) return;
+                final int vertical = type == AppsAdapter.TYPE_BANNER
+                        ? verticalSpacingBanner : verticalSpacingSquare;
+                outRect.set(horizontalSpacing/2, vertical/2, horizontalSpacing/2, vertical/2);
+            }
+        });
+    }
+
+    public void setColumns(int square, int banner) {
+        squareColumns = Math.max(1, square);
+        bannerColumns = Math.max(1, banner);
+        gridLayoutManager.setSpanCount(squareColumns * bannerColumns);
+        gridLayoutManager.getSpanSizeLookup().invalidateSpanIndexCache();
+    }
+    public void setMargin(int margin, boolean namesSquare, boolean namesBanner, int dpOffset) {
+        horizontalSpacing = margin-dpOffset;
+        verticalSpacingSquare = (namesSquare ? margin/2 : margin)-dpOffset;
+        verticalSpacingBanner = (namesBanner ? margin/2 : margin)-dpOffset;
+        invalidateItemDecorations();
+    }
+
+    // Extra top padding is added on top of the grid padding, e.g. to make space for the search bar
+    public void setGridPadding(int left, int top, int right, int bottom) {
+        basePaddingTop = top;
+        setPadding(left, top + extraPaddingTop, right, bottom);
+    }
+    public void setExtraPaddingTop(int padding) {
+        extraPaddingTop = padding;
+        setPadding(getPaddingLeft(), basePaddingTop + padding, getPaddingRight(), getPaddingBottom());
+    }
+    public int getExtraPaddingTop() {
+        return extraPaddingTop;
+    }
+
+    @Override public float getBottomFadingEdgeStrength() {
+        return 0.0f;
+    }
+    @Override public float getTopFadingEdgeStrength() {
+        return 1.0f;
+    }
+}
@@ -0,0 +1,135 @@
+package com.threethan.launcher.browser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    OfflineShellTest
+
+    Runs OfflineShell against a local HTTP server, on the plain JVM: redirects, conditional
+    refreshes, saving and reading copies, and where the <base> tag goes.
+ */
+
+public class OfflineShellTest {
+    private static final String PAGE = "<html><header-ish></header-ish><HEAD><title>Site</title></head>"
+            + "<body><header>Top</header></body></html>";
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/start", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/app/");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/app/", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullResponses.incrementAndGet();
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            respond(exchange, "text/html; charset=utf-8", PAGE);
+        });
+        server.createContext("/headless", exchange ->
+                respond(exchange, "text/html", "<header>Top</header><p>No head</p>"));
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+    private static void respond(HttpExchange exchange, String contentType, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void followsRedirects() throws IOException {
+        final OfflineShell shell = OfflineShell.fetch(base + "/start", null, null, 2000);
+        assertEquals(base + "/start", shell.url);
+        assertEquals(base + "/app/", shell.finalUrl);
+        assertEquals("text/html", shell.getMimeType());
+        assertEquals(ETAG, shell.etag);
+        assertEquals(PAGE, new String(shell.body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void revalidatesWithoutBody() throws IOException {
+        final OfflineShell first = OfflineShell.fetch(base + "/start", null, null, 2000);
+        final OfflineShell second = OfflineShell.fetch(base + "/start", first, null, 2000);
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertSame(first.body, second.body);
+        assertTrue(second.fetchedAt >= first.fetchedAt);
+    }
+
+    @Test
+    public void savesAndReads() throws IOException {
+        final OfflineShell shell = OfflineShell.fetch(base + "/start", null, null, 2000);
+        final File file = OfflineShell.fileFor(folder.getRoot(), shell.url);
+        shell.write(file);
+
+        final OfflineShell read = OfflineShell.read(file, shell.url);
+        assertEquals(shell.finalUrl, read.finalUrl);
+        assertEquals(shell.contentType, read.contentType);
+        assertEquals(shell.etag, read.etag);
+        assertNull(read.lastModified);
+        assertArrayEquals(shell.body, read.body);
+        assertEquals(shell.fetchedAt, OfflineShell.readFetchedAt(file, shell.url));
+
+        // A copy is only used for the url it was saved for
+        assertNull(OfflineShell.read(file, base + "/other"));
+        assertEquals(-1, OfflineShell.readFetchedAt(file, base + "/other"));
+        assertEquals(-1, OfflineShell.readFetchedAt(new File(folder.getRoot(), "missing"), shell.url));
+    }
+
+    @Test
+    public void addsBaseInsideHead() throws IOException {
+        final OfflineShell shell = OfflineShell.fetch(base + "/start", null, null, 2000);
+        final String document = new String(shell.toDocument(), StandardCharsets.UTF_8);
+        assertTrue(document, document.contains("<HEAD><base href=\"" + base + "/app/\"><title>"));
+    }
+
+    @Test
+    public void addsBaseFirstWithoutHead() throws IOException {
+        final OfflineShell shell = OfflineShell.fetch(base + "/headless", null, null, 2000);
+        final String document = new String(shell.toDocument(), StandardCharsets.UTF_8);
+        assertTrue(document, document.startsWith("<base href=\"" + base + "/headless\"><header>"));
+    }
+}
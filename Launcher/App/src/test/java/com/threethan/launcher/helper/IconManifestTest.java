@@ -0,0 +1,158 @@
+package com.threethan.launcher.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    IconManifestTest
+
+    Runs IconManifest against a local HTTP server standing in for the GitHub API, serving git
+    trees for a few fake icon repositories: conditional refreshes, picking the repository which
+    lists an icon, and truncated trees.
+ */
+
+public class IconManifestTest {
+    private static final String ETAG = "\"tree-v1\"";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String base;
+    private final Map<String, AtomicInteger> fullResponsesByRepository = new ConcurrentHashMap<>();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serveTree("test/first", false, "icon/com.example.first.jpg", "banner/com.example.first.jpg");
+        serveTree("test/second", false, "icon/com.example.second.jpg", "icon/com.example.first.jpg");
+        serveTree("test/large", true, "icon/com.example.listed.jpg");
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        IconManifest.setHosts(base, base + "/raw");
+    }
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+    private void serveTree(String repository, boolean truncated, String... paths) {
+        fullResponsesByRepository.put(repository, new AtomicInteger());
+        server.createContext("/repos/" + repository + "/git/trees/", exchange -> {
+            final String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (etag != null) ifNoneMatch.add(etag);
+            if (ETAG.equals(etag)) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fullResponsesByRepository.get(repository).incrementAndGet();
+            final StringBuilder json = new StringBuilder("{\"sha\":\"abc\",\"url\":\"x\",\"tree\":[");
+            json.append("{\"path\":\"icon\",\"mode\":\"040000\",\"type\":\"tree\"}");
+            for (String path : paths)
+                json.append(",{\"path\":\"").append(path).append("\",\"mode\":\"100644\",\"type\":\"blob\",\"size\":1}");
+            json.append("],\"truncated\":").append(truncated).append("}");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            respond(exchange, json.toString());
+        });
+    }
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    private List<String> resolve(String name, IconManifest.Source... sources) {
+        return IconManifest.resolve(folder.getRoot(), sources, name);
+    }
+    private String rawUrl(String repository, String path) {
+        return base + "/raw/" + repository + "/main/" + path;
+    }
+
+    @Test
+    public void revalidatesWithCachedEtag() {
+        final IconManifest.Source source = new IconManifest.Source("test/first", "main", "icon", ".jpg");
+        final List<String> first = resolve("com.example.first", source);
+        assertEquals(1, fullResponsesByRepository.get("test/first").get());
+        assertTrue(ifNoneMatch.isEmpty());
+
+        // Kept in memory, then on disk, until it's invalidated
+        assertEquals(first, resolve("com.example.first", source));
+        IconManifest.setHosts(base, base + "/raw");
+        assertEquals(first, resolve("com.example.first", source));
+        assertEquals(1, fullResponsesByRepository.get("test/first").get());
+
+        IconManifest.invalidate();
+        assertEquals(first, resolve("com.example.first", source));
+        assertEquals(1, fullResponsesByRepository.get("test/first").get());
+        assertEquals(1, notModifiedResponses.get());
+        assertEquals(Collections.singletonList(ETAG), ifNoneMatch);
+    }
+
+    @Test
+    public void resolvesToListingRepository() {
+        final IconManifest.Source[] sources = {
+                new IconManifest.Source("test/first", "main", "icon", ".jpg"),
+                new IconManifest.Source("test/second", "main", "icon", ".jpg"),
+                new IconManifest.Source("test/missing", "main", "icon", ".jpg"),
+        };
+        // Listed by the first source, so the others aren't needed
+        assertEquals(Collections.singletonList(rawUrl("test/first", "icon/com.example.first.jpg")),
+                resolve("com.example.first", sources));
+        // Skips the first source, which doesn't list it
+        assertEquals(Collections.singletonList(rawUrl("test/second", "icon/com.example.second.jpg")),
+                resolve("com.example.second", sources));
+        // Only the source without an index is probed
+        assertEquals(Collections.singletonList(rawUrl("test/missing", "icon/com.example.none.jpg")),
+                resolve("com.example.none", sources));
+        // Directories within a repository are told apart
+        assertEquals(Collections.singletonList(rawUrl("test/first", "banner/com.example.first.jpg")),
+                resolve("com.example.first", new IconManifest.Source("test/first", "main", "banner", ".jpg")));
+    }
+
+    @Test
+    public void keepsTruncatedTree() {
+        final IconManifest.Source[] sources = {
+                new IconManifest.Source("test/large", "main", "icon", ".jpg"),
+                new IconManifest.Source("test/second", "main", "icon", ".jpg"),
+        };
+        // A listed icon is used as is
+        assertEquals(Collections.singletonList(rawUrl("test/large", "icon/com.example.listed.jpg")),
+                resolve("com.example.listed", sources));
+        // An unlisted one may still be there, so it's probed before moving on
+        assertEquals(Arrays.asList(rawUrl("test/large", "icon/com.example.second.jpg"),
+                        rawUrl("test/second", "icon/com.example.second.jpg")),
+                resolve("com.example.second", sources));
+
+        // The partial tree is cached on disk, still marked as truncated, rather than fetched again
+        IconManifest.setHosts(base, base + "/raw");
+        assertEquals(Arrays.asList(rawUrl("test/large", "icon/com.example.unknown.jpg")),
+                resolve("com.example.unknown", sources[0]));
+        assertEquals(1, fullResponsesByRepository.get("test/large").get());
+    }
+}
@@ -0,0 +1,210 @@
+package com.threethan.launcher.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/*
+    SearchIndexTest
+
+    Checks how SearchIndex ranks and narrows matches, including fuzzy matches by acronym, word start
+    edit distance and subsequence, and times it against its latency target: under 2ms per keystroke
+    with 1000 apps, typed one character at a time.
+ */
+
+public class SearchIndexTest {
+    private static final double TARGET_MS_PER_KEYSTROKE = 2;
+
+    @After
+    public void clearUsage() {
+        SearchIndex.setUsage(null);
+    }
+
+    private static SearchIndex<String> indexOf(String... labels) {
+        final List<String> keys = new ArrayList<>();
+        for (String label : labels)
+            keys.add("com.example." + label.replaceAll("[^A-Za-z]", "").toLowerCase(Locale.ROOT));
+        return new SearchIndex<>(Arrays.asList(labels), Arrays.asList(labels), keys);
+    }
+    private static List<String> itemsOf(SearchIndex.Result<String> result) {
+        final List<String> items = new ArrayList<>();
+        for (int i = 0; i < result.size(); i++) items.add(result.get(i));
+        return items;
+    }
+    private static List<String> search(SearchIndex<String> index, String query) {
+        return itemsOf(index.query(query, null, false));
+    }
+    private static List<String> searchFuzzy(SearchIndex<String> index, String query) {
+        return itemsOf(index.query(query, null, true));
+    }
+
+    @Test
+    public void ranksPrefixThenWordStartThenSubstringThenKey() {
+        final SearchIndex<String> index = indexOf("Lightsaber", "Beat Saber", "Saber Duel", "Tools");
+        assertEquals(Arrays.asList("Saber Duel", "Beat Saber", "Lightsaber"), search(index, "saber"));
+        // Equal matches keep their order in the index
+        assertEquals(Arrays.asList("Tools", "Lightsaber", "Beat Saber"), search(index, "t"));
+        // Tools only matches by its package name
+        assertEquals(Arrays.asList("Tools"), search(index, "example.to"));
+    }
+
+    @Test
+    public void boostsStarredAndRecentWithinTheirTier() {
+        final SearchIndex<String> index = indexOf("Saber Duel", "Saber Arena", "★Saber Tag", "Beat Saber");
+        // Starred comes first among prefix matches, but not above them
+        assertEquals(Arrays.asList("★Saber Tag", "Saber Duel", "Saber Arena", "Beat Saber"),
+                search(index, "saber"));
+
+        SearchIndex.setUsage(key -> key.equals("com.example.saberarena") || key.equals("com.example.beatsaber") ? 50 : 0);
+        final SearchIndex<String> used = indexOf("Saber Duel", "Saber Arena", "★Saber Tag", "Beat Saber");
+        // Recently launched comes before unused, still below starred, and can't leave its tier
+        assertEquals(Arrays.asList("★Saber Tag", "Saber Arena", "Saber Duel", "Beat Saber"),
+                search(used, "saber"));
+    }
+
+    @Test
+    public void narrowingMatchesFreshSearch() {
+        final SearchIndex<String> index = generate(1000);
+        for (String query : new String[]{"beat saber", "gorilla tag", "room 12", "com.moss", "echo a"}) {
+            SearchIndex.Result<String> previous = null;
+            for (int length = 1; length <= query.length(); length++) {
+                final String typed = query.substring(0, length);
+                previous = index.query(typed, previous, false);
+                assertEquals(typed, itemsOf(index.query(typed, null, false)), itemsOf(previous));
+            }
+            // Deleting a character can't narrow, so it searches again
+            final String shorter = query.substring(0, query.length() - 1);
+            assertEquals(shorter, search(index, shorter), itemsOf(index.query(shorter, previous, false)));
+        }
+    }
+
+    @Test
+    public void matchesAcronyms() {
+        final SearchIndex<String> index = indexOf("Beat Saber", "Blade & Sorcery", "Pistol Whip");
+        assertEquals(Arrays.asList("Beat Saber", "Blade & Sorcery"), searchFuzzy(index, "bs"));
+        assertEquals(Arrays.asList("Pistol Whip"), searchFuzzy(index, "pw"));
+        assertEquals(Arrays.asList(), search(index, "bs"));
+    }
+
+    @Test
+    public void matchesWordStartsWithinEditDistance() {
+        final SearchIndex<String> index = indexOf("Beat Saber", "Gorilla Tag", "Walking Dead");
+        // One edit is allowed from four characters, two from six
+        assertEquals(Arrays.asList("Beat Saber"), searchFuzzy(index, "saver"));
+        assertEquals(Arrays.asList("Gorilla Tag"), searchFuzzy(index, "gorila"));
+        assertEquals(Arrays.asList("Walking Dead"), searchFuzzy(index, "wakling"));
+        assertEquals(Arrays.asList(), searchFuzzy(index, "wlak"));
+        assertEquals(Arrays.asList(), searchFuzzy(index, "sxb"));
+        assertEquals(Arrays.asList(), search(index, "saver"));
+    }
+
+    @Test
+    public void scoresSubsequencesByWhereLettersFall() {
+        final SearchIndex<String> index = indexOf("Observer", "Beat Saber");
+        // Beat Saber's letters fall on word starts, while Observer's are scattered
+        assertEquals(Arrays.asList("Beat Saber", "Observer"), searchFuzzy(index, "bsr"));
+        assertEquals("Beat Saber", index.query("bsaber", null, true).get(0));
+        assertEquals(Arrays.asList(), search(index, "bsr"));
+    }
+
+    @Test
+    public void ranksSubstringThenAcronymThenEditThenSubsequence() {
+        final SearchIndex<String> index = indexOf("Sea Bear", "Beat Saber", "Super Action Bomb Run", "Tsabra");
+        final SearchIndex.Result<String> result = index.query("sabr", null, true);
+        assertEquals(Arrays.asList("Tsabra", "Super Action Bomb Run", "Beat Saber", "Sea Bear"), itemsOf(result));
+        // The top result is what gets launched from the search bar
+        assertEquals(3, result.entryAt(0));
+    }
+
+    @Test
+    public void repeatsFuzzyResults() {
+        // Edit distance rows are reused between queries, and grow for longer ones
+        final SearchIndex<String> index = generate(1000);
+        final List<String> first = searchFuzzy(index, "gorila");
+        assertTrue(first.size() > 0);
+        searchFuzzy(index, "a much longer query than the edit rows start with");
+        searchFuzzy(index, "wakl");
+        assertEquals(first, searchFuzzy(index, "gorila"));
+    }
+
+    @Test
+    public void scoresFuzzyWithoutAllocatingPerEntry() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        final int entries = 1000;
+        final SearchIndex<String> index = generate(entries);
+        for (int i = 0; i < 100; i++) index.query("gorila", null, true);
+        final long thread = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(thread);
+        index.query("gorila", null, true);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        // The result's arrays take about 24 bytes an entry, so anything per entry would show
+        assertTrue("Fuzzy query allocated " + allocated + " bytes", allocated < 32L * entries);
+    }
+
+    @Test
+    public void meetsLatencyTarget() {
+        final SearchIndex<String> index = generate(1000);
+        for (boolean fuzzy : new boolean[]{false, true}) {
+            final double averageMs = averageKeystrokeMs(index, fuzzy);
+            System.out.println(String.format(Locale.ROOT, "1000 entries, %s: %.3fms per keystroke",
+                    fuzzy ? "fuzzy" : "exact", averageMs));
+            assertTrue((fuzzy ? "Fuzzy" : "Exact") + " search took " + averageMs + "ms per keystroke",
+                    averageMs < TARGET_MS_PER_KEYSTROKE);
+        }
+    }
+    // Times queries as if typed one character at a time. The first round warms up the JIT.
+    private static double averageKeystrokeMs(SearchIndex<String> index, boolean fuzzy) {
+        final String[] queries = {"beat saber", "gorilla tag", "alyx", "room 12", "com.moss",
+                "bsaber", "gorila", "hla"};
+        long totalNs = 0;
+        int keystrokes = 0;
+        for (int round = 0; round < 10; round++) {
+            for (String query : queries) {
+                SearchIndex.Result<String> previous = null;
+                for (int length = 1; length <= query.length(); length++) {
+                    final long start = System.nanoTime();
+                    previous = index.query(query.substring(0, length), previous, fuzzy);
+                    if (round == 0) continue;
+                    totalNs += System.nanoTime() - start;
+                    keystrokes++;
+                }
+            }
+        }
+        return totalNs / 1e6 / keystrokes;
+    }
+    // Builds an index of made up apps, with labels of one to three words
+    private static SearchIndex<String> generate(int entries) {
+        final String[] words = {"beat", "saber", "super", "hot", "vr", "pistol", "whip", "walking",
+                "dead", "blade", "sorcery", "gorilla", "tag", "rec", "room", "echo", "arena",
+                "moss", "resident", "evil", "half", "life", "alyx", "population", "one"};
+        final Random random = new Random(42);
+        final List<String> labels = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            final StringBuilder label = new StringBuilder();
+            final int wordCount = 1 + random.nextInt(3);
+            for (int w = 0; w < wordCount; w++) {
+                final String word = words[random.nextInt(words.length)];
+                if (w > 0) label.append(' ');
+                label.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+            labels.add(label + " " + i);
+            keys.add("com." + words[random.nextInt(words.length)] + ".app" + i);
+        }
+        return new SearchIndex<>(labels, labels, keys);
+    }
+}